@@ -13,13 +13,13 @@ import org.springframework.security.config.annotation.method.configuration.Enabl
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 
+import ir.darkdeveloper.anbarinoo.model.Authority;
 import ir.darkdeveloper.anbarinoo.security.exception.RestAuthenticationEntryPoint;
 import ir.darkdeveloper.anbarinoo.security.jwt.JwtFilter;
 import ir.darkdeveloper.anbarinoo.security.oauth2.OAuth2FailureHandler;
@@ -39,17 +39,20 @@ public class AppSecurityConfig extends WebSecurityConfigurerAdapter{
     private final OAuth2SuccessHandler oAuth2SuccessHandler;
     private final OAuth2RequestRepo  oAuth2RequestRepo;
     private final OAuth2FailureHandler oAuth2FailureHandler;
+    private final PasswordEncoder passwordEncoder;
 
     @Autowired
     public AppSecurityConfig(@Lazy UserService userService, JwtFilter jwtFilter,
                          OAuth2UserService oAuth2UserService, OAuth2SuccessHandler oAuth2SuccessHandler,
-                         OAuth2RequestRepo  oAuth2RequestRepo, OAuth2FailureHandler oAuth2FailureHandler) {
+                         OAuth2RequestRepo  oAuth2RequestRepo, OAuth2FailureHandler oAuth2FailureHandler,
+                         PasswordEncoder passwordEncoder) {
         this.userService = userService;
         this.jwtFilter = jwtFilter;
         this.oAuth2UserService = oAuth2UserService;
         this.oAuth2SuccessHandler = oAuth2SuccessHandler;
         this.oAuth2RequestRepo = oAuth2RequestRepo;
         this.oAuth2FailureHandler = oAuth2FailureHandler;
+        this.passwordEncoder = passwordEncoder;
     }
 
 
@@ -73,6 +76,8 @@ public class AppSecurityConfig extends WebSecurityConfigurerAdapter{
                                 "/webjars/**",
                                 "/forbidden")
                         .permitAll()
+                    .antMatchers("/actuator/metrics/**")
+                        .hasAuthority(Authority.OP_ACCESS_ADMIN.getAuthority())
                     .anyRequest()
                         .authenticated()
                 .and()
@@ -103,7 +108,7 @@ public class AppSecurityConfig extends WebSecurityConfigurerAdapter{
 
     @Override
     protected void configure(AuthenticationManagerBuilder auth) throws Exception {
-        auth.userDetailsService(userService).passwordEncoder(passEncode());
+        auth.userDetailsService(userService).passwordEncoder(passwordEncoder);
     }
 
     @Override
@@ -113,11 +118,6 @@ public class AppSecurityConfig extends WebSecurityConfigurerAdapter{
     }
 
 
-    @Bean
-    public PasswordEncoder passEncode() {
-        return new BCryptPasswordEncoder(12);
-    }
-
     @Bean
     CorsConfigurationSource corsConfigurationSource() {
         var configuration = new CorsConfiguration();
@@ -0,0 +1,25 @@
+package ir.darkdeveloper.anbarinoo.config;
+
+import ir.darkdeveloper.anbarinoo.service.Financial.DailyFinancialSummaryService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+/**
+ * Backfills daily financial summaries when the application is started with --rebuild-financial-summary
+ */
+@Component
+@RequiredArgsConstructor
+public class FinancialSummaryRebuildRunner implements ApplicationRunner {
+
+    public static final String REBUILD_OPTION = "rebuild-financial-summary";
+
+    private final DailyFinancialSummaryService summaryService;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (args.containsOption(REBUILD_OPTION))
+            summaryService.rebuildAll();
+    }
+}
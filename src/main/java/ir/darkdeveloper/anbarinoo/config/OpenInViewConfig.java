@@ -0,0 +1,31 @@
+package ir.darkdeveloper.anbarinoo.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.orm.jpa.support.OpenEntityManagerInViewInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Keeps an entity manager open while the response of a request is written, like the default of spring boot, but
+ * not for login and signup. The entity manager of a request holds the connection it has used until the request
+ * ends, so the connection of the user lookup would be held while the password waits for the encoder, and many
+ * logins would take all connections of the pool before the queue of the encoder rejects any of them
+ */
+@Configuration
+public class OpenInViewConfig implements WebMvcConfigurer {
+
+    private static final String[] PASSWORD_HASHING_PATHS = {"/api/user/login/", "/api/user/signup/"};
+
+    // spring boot doesn't register its own interceptor when there is one
+    @Bean
+    public OpenEntityManagerInViewInterceptor openEntityManagerInViewInterceptor() {
+        return new OpenEntityManagerInViewInterceptor();
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addWebRequestInterceptor(openEntityManagerInViewInterceptor())
+                .excludePathPatterns(PASSWORD_HASHING_PATHS);
+    }
+}
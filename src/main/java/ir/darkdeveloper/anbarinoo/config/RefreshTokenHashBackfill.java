@@ -0,0 +1,27 @@
+package ir.darkdeveloper.anbarinoo.config;
+
+import ir.darkdeveloper.anbarinoo.service.RefreshService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Component;
+
+/**
+ * Refresh tokens are found by their hash. Hashes the tokens that are saved before the hash column was added on
+ * startup, before the web server starts, so no request looks up a token that isn't hashed yet. There are none
+ * after the first run
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RefreshTokenHashBackfill implements SmartInitializingSingleton {
+
+    private final RefreshService refreshService;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        var hashed = refreshService.hashUnhashedTokens();
+        if (hashed > 0)
+            log.info("Hashed {} refresh tokens", hashed);
+    }
+}
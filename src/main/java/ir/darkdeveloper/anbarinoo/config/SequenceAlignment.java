@@ -0,0 +1,52 @@
+package ir.darkdeveloper.anbarinoo.config;
+
+import ir.darkdeveloper.anbarinoo.model.BuyModel;
+import ir.darkdeveloper.anbarinoo.model.ProductModel;
+import ir.darkdeveloper.anbarinoo.model.SellModel;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.DatabaseMetaData;
+import java.util.Map;
+
+/**
+ * Tables that moved from the shared hibernate_sequence to their own pooled sequence already have ids the new
+ * sequence would hand out again. Moves these sequences past the biggest id of their tables on startup, after the
+ * schema is updated and before the web server starts, so no request gets an id that is taken
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SequenceAlignment implements SmartInitializingSingleton {
+
+    private static final Map<String, String> TABLES_OF_SEQUENCES = Map.of(BuyModel.BUYS_SEQUENCE, "buys",
+            ProductModel.PRODUCTS_SEQUENCE, "products", SellModel.SELLS_SEQUENCE, "sells");
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        // other databases only run in tests, with a newly created schema
+        String database;
+        try {
+            database = JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName);
+        } catch (MetaDataAccessException e) {
+            throw new IllegalStateException("Can't read the database product name", e);
+        }
+        if (!"PostgreSQL".equals(database))
+            return;
+        TABLES_OF_SEQUENCES.forEach((sequence, table) -> {
+            var value = jdbcTemplate.queryForObject("select setval('" + sequence + "', greatest(" +
+                    "(select coalesce(max(id), 1) from " + table + "), (select last_value from " + sequence + ")))",
+                    Long.class);
+            log.info("Sequence {} of table {} is at {}", sequence, table, value);
+        });
+    }
+}
@@ -4,7 +4,14 @@ import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
 
+import ir.darkdeveloper.anbarinoo.security.jwt.JwtProperties;
+import ir.darkdeveloper.anbarinoo.security.jwt.RefreshTokenIndexProperties;
+import ir.darkdeveloper.anbarinoo.security.jwt.UserPrincipalCacheProperties;
+import ir.darkdeveloper.anbarinoo.security.password.PasswordHashingProperties;
 import ir.darkdeveloper.anbarinoo.util.AdminUserProperties;
+import ir.darkdeveloper.anbarinoo.util.Financial.FinancialReportProperties;
+import ir.darkdeveloper.anbarinoo.util.email.EmailOutboxProperties;
+import ir.darkdeveloper.anbarinoo.util.export.ExportJobProperties;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
@@ -12,6 +19,7 @@ import org.springframework.boot.context.properties.EnableConfigurationProperties
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 import ir.darkdeveloper.anbarinoo.model.Authority;
 import ir.darkdeveloper.anbarinoo.model.UserRole;
@@ -19,7 +27,11 @@ import ir.darkdeveloper.anbarinoo.service.UserRolesService;
 
 @Configuration
 @RequiredArgsConstructor
-@EnableConfigurationProperties(AdminUserProperties.class)
+@EnableScheduling
+@EnableConfigurationProperties({AdminUserProperties.class, FinancialReportProperties.class,
+        ExportJobProperties.class, UserPrincipalCacheProperties.class, PasswordHashingProperties.class,
+        JwtProperties.class, RefreshTokenIndexProperties.class,
+        EmailOutboxProperties.class})
 public class StartupConfig {
 
     private final UserRolesService rolesService;
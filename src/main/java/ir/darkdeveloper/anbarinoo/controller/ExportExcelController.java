@@ -1,104 +1,92 @@
 package ir.darkdeveloper.anbarinoo.controller;
 
-import ir.darkdeveloper.anbarinoo.dto.mapper.ProductMapper;
-import ir.darkdeveloper.anbarinoo.model.ProductModel;
-import ir.darkdeveloper.anbarinoo.service.ProductService;
+import ir.darkdeveloper.anbarinoo.dto.FinancialDto;
+import ir.darkdeveloper.anbarinoo.util.Financial.FinancialUtils;
+import ir.darkdeveloper.anbarinoo.util.JwtUtils;
+import ir.darkdeveloper.anbarinoo.util.export.ExportFormat;
+import ir.darkdeveloper.anbarinoo.util.export.ExportSources;
+import ir.darkdeveloper.anbarinoo.util.export.ExportType;
+import ir.darkdeveloper.anbarinoo.util.export.ExportWriter;
 import lombok.RequiredArgsConstructor;
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-import org.springframework.core.io.InputStreamResource;
-import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.servlet.http.HttpServletRequest;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Optional;
 
 @Controller
 @RequestMapping("/api/export/excel")
 @RequiredArgsConstructor
 public class ExportExcelController {
 
+    private static final MediaType GZIP = new MediaType("application", "gzip");
 
-    private final ProductService productService;
-    private final ProductMapper productMapper;
+    private final ExportSources exportSources;
+    private final JwtUtils jwtUtils;
+    private final FinancialUtils fUtils;
 
+    /**
+     * Rows are added while products are read from the database, then the file is written straight to the
+     * response. Nothing is kept in a shared file
+     *
+     * @param format one of xlsx, csv or ndjson. Without it, the format is chosen by the accept header
+     * @param gzip   compresses the file with gzip
+     */
     @GetMapping(value = "/products")
     @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER', 'OP_ACCESS_ADMIN')")
-    public ResponseEntity<Resource> productsExcel(HttpServletRequest req) throws IOException {
-
-        var workBook = new XSSFWorkbook();
-        var sheet = workBook.createSheet("products");
-        int rowNum = 0;
-
-        var products = productService.getAllProducts(req);
-        var row = sheet.createRow(rowNum++);
-        createColumns(row, new String[]
-                {"ردیف", "نام", "توضیحات", "قیمت", "تعداد", "مالیات", "تاریخ خرید", "تاریخ ویرایش"});
-        for (var pr : products) {
-            row = sheet.createRow(rowNum++);
-            createList(pr, row, rowNum - 1);
-        }
-
-        var file = new File("ProductsReport.xlsx");
-        var out = new FileOutputStream(file);
-        workBook.write(out);
-        out.close();
-
-        var resource = new InputStreamResource(new FileInputStream(file));
-
-        return ResponseEntity.ok()
-                .header("Content-disposition", "attachment; filename=" + file.getName())
-                .contentLength(file.length())
-                .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .body(resource);
+    public ResponseEntity<StreamingResponseBody> productsExcel(@RequestParam(required = false) String format,
+                                                               @RequestParam(defaultValue = "false") Boolean gzip,
+                                                               @RequestHeader(value = HttpHeaders.ACCEPT,
+                                                                       required = false) String accept,
+                                                               HttpServletRequest req) {
+        var userId = jwtUtils.getUserId(req);
+        return export(ExportType.PRODUCTS, ExportFormat.of(format, accept), gzip, "ProductsReport", userId,
+                null, null);
     }
 
-    private void createList(ProductModel productModel, Row row, int rowNum) {
-
-        var product = productMapper.productToDto(productModel);
-
-        var cell = row.createCell(0);
-        cell.setCellValue(rowNum);
-
-        cell = row.createCell(1);
-        cell.setCellValue(product.name());
-
-        cell = row.createCell(2);
-        cell.setCellValue(product.description());
-
-        cell = row.createCell(3);
-        cell.setCellValue(product.price().toString());
-
-        cell = row.createCell(4);
-        cell.setCellValue(product.totalCount().toString());
-
-        cell = row.createCell(5);
-        cell.setCellValue(product.tax().toString());
-
-        cell = row.createCell(6);
-        cell.setCellValue(product.createdAt());
+    /**
+     * Buys, sells, debts and demands and cheques between the dates, each one on its own sheet. Records are
+     * streamed from the database while the sheets are written, a sheet with too many rows continues on the next
+     * sheet
+     *
+     * @param gzip compresses the file with gzip
+     */
+    @PostMapping(value = "/ledger")
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER', 'OP_ACCESS_ADMIN')")
+    public ResponseEntity<StreamingResponseBody> ledgerExcel(@RequestBody FinancialDto financial,
+                                                             @RequestParam(defaultValue = "false") Boolean gzip,
+                                                             HttpServletRequest req) {
+        var userId = jwtUtils.getUserId(req);
+        var from = fUtils.getFromDate(Optional.ofNullable(financial));
+        var to = fUtils.getToDate(Optional.ofNullable(financial));
+        return export(ExportType.LEDGER, ExportFormat.XLSX, gzip, "LedgerReport", userId, from, to);
+    }
 
-        cell = row.createCell(7);
-        cell.setCellValue(product.updatedAt());
+    private ResponseEntity<StreamingResponseBody> export(ExportType type, ExportFormat format, boolean gzip,
+                                                         String fileName, Long userId, LocalDateTime from,
+                                                         LocalDateTime to) {
+        var sources = exportSources.of(type);
+        ExportWriter.checkFormat(format, sources);
 
-    }
+        StreamingResponseBody body = out -> ExportWriter.write(format, gzip, out, sources, userId, from, to,
+                () -> {
+                });
 
-    private void createColumns(Row row, String[] columns) {
-        Cell cell;
-        for (int i = 0; i < columns.length; i++) {
-            cell = row.createCell(i);
-            cell.setCellValue(columns[i]);
-        }
+        return ResponseEntity.ok()
+                .header("Content-disposition", "attachment; filename=" + format.fileName(fileName, gzip))
+                .contentType(gzip ? GZIP : format.getMediaType())
+                .body(body);
     }
 
-
 }
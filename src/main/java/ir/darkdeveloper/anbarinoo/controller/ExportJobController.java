@@ -0,0 +1,62 @@
+package ir.darkdeveloper.anbarinoo.controller;
+
+import ir.darkdeveloper.anbarinoo.dto.ExportJobDto;
+import ir.darkdeveloper.anbarinoo.dto.FinancialDto;
+import ir.darkdeveloper.anbarinoo.service.ExportService;
+import ir.darkdeveloper.anbarinoo.util.export.ExportFormat;
+import ir.darkdeveloper.anbarinoo.util.export.ExportType;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Optional;
+
+@RestController
+@RequestMapping("/api/export/jobs")
+@RequiredArgsConstructor
+public class ExportJobController {
+
+    private static final MediaType GZIP = new MediaType("application", "gzip");
+
+    private final ExportService service;
+
+    /**
+     * @param type      one of PRODUCTS, BUYS, SELLS, DODS, CHEQUES or LEDGER
+     * @param format    one of xlsx, csv or ndjson, xlsx by default. Ledger is only exported as xlsx
+     * @param gzip      compresses the file with gzip
+     * @param financial optional date range of the records
+     * @return the queued job, its status can be polled until it is done
+     */
+    @PostMapping("/{type}/")
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_ADMIN','OP_ACCESS_USER')")
+    public ResponseEntity<ExportJobDto> submitJob(@PathVariable ExportType type,
+                                                  @RequestParam(required = false) String format,
+                                                  @RequestParam(defaultValue = "false") Boolean gzip,
+                                                  @RequestBody(required = false) FinancialDto financial,
+                                                  HttpServletRequest req) {
+        return new ResponseEntity<>(service.submitJob(type, ExportFormat.of(format, null), gzip,
+                Optional.ofNullable(financial), req), HttpStatus.ACCEPTED);
+    }
+
+    @GetMapping("/{id}/")
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_ADMIN','OP_ACCESS_USER')")
+    public ResponseEntity<ExportJobDto> getJob(@PathVariable String id, HttpServletRequest req) {
+        return ResponseEntity.ok(service.getJob(id, req));
+    }
+
+    @GetMapping("/{id}/file/")
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_ADMIN','OP_ACCESS_USER')")
+    public ResponseEntity<Resource> downloadJobFile(@PathVariable String id, HttpServletRequest req) {
+        var job = service.getDoneJob(id, req);
+        return ResponseEntity.ok()
+                .header("Content-disposition", "attachment; filename=" + job.getFile().getFileName())
+                .contentType(job.isGzip() ? GZIP : job.getFormat().getMediaType())
+                .body(new FileSystemResource(job.getFile()));
+    }
+}
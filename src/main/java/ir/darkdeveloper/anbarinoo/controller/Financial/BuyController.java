@@ -1,17 +1,19 @@
 package ir.darkdeveloper.anbarinoo.controller.Financial;
 
 import ir.darkdeveloper.anbarinoo.dto.BuyDto;
+import ir.darkdeveloper.anbarinoo.dto.CursorPage;
 import ir.darkdeveloper.anbarinoo.dto.FinancialDto;
 import ir.darkdeveloper.anbarinoo.dto.mapper.BuySellMapper;
 import ir.darkdeveloper.anbarinoo.model.BuyModel;
 import ir.darkdeveloper.anbarinoo.service.Financial.BuyService;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.Optional;
@@ -31,41 +33,84 @@ public class BuyController {
                 HttpStatus.CREATED);
     }
 
+    /**
+     * Imports buys of an xlsx file, either all rows are imported or none
+     */
+    @PostMapping("/import/")
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
+    public ResponseEntity<String> importBuys(@RequestParam("file") MultipartFile file, HttpServletRequest req) {
+        return new ResponseEntity<>("Imported " + service.importBuys(file, req) + " buy records",
+                HttpStatus.CREATED);
+    }
+
     @PutMapping("/update/{id}/")
     @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
     public ResponseEntity<BuyDto> updateBuy(@RequestBody BuyModel buy, @PathVariable Long id, HttpServletRequest req) {
         return ResponseEntity.ok(mapper.buyToDto(service.updateBuy(Optional.ofNullable(buy), id, req)));
     }
 
+    /**
+     * @param count false returns a slice, which only tells if there is a next page and skips the count query
+     */
     @GetMapping("/get-by-product/{id}/")
     @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
-    public ResponseEntity<Page<BuyDto>> getAllBuyRecordsOfProduct(@PathVariable("id") Long productId,
-                                                                  HttpServletRequest req, Pageable pageable) {
-        return ResponseEntity.ok(service.getAllBuyRecordsOfProduct(productId, req, pageable).map(mapper::buyToDto));
+    public ResponseEntity<Slice<BuyDto>> getAllBuyRecordsOfProduct(@PathVariable("id") Long productId,
+                                                                   @RequestParam(defaultValue = "true") Boolean count,
+                                                                   HttpServletRequest req, Pageable pageable) {
+        var records = count ? service.getAllBuyRecordsOfProduct(productId, req, pageable)
+                : service.getBuyRecordsSliceOfProduct(productId, req, pageable);
+        return ResponseEntity.ok(records.map(mapper::buyToDto));
     }
 
     @GetMapping("/get-by-user/{id}/")
     @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
-    public ResponseEntity<Page<BuyDto>> getAllBuyRecordsOfUser(@PathVariable("id") Long userId, HttpServletRequest req,
-                                                               Pageable pageable) {
-        return ResponseEntity.ok(service.getAllBuyRecordsOfUser(userId, req, pageable).map(mapper::buyToDto));
+    public ResponseEntity<Slice<BuyDto>> getAllBuyRecordsOfUser(@PathVariable("id") Long userId,
+                                                                @RequestParam(defaultValue = "true") Boolean count,
+                                                                HttpServletRequest req, Pageable pageable) {
+        var records = count ? service.getAllBuyRecordsOfUser(userId, req, pageable)
+                : service.getBuyRecordsSliceOfUser(userId, req, pageable);
+        return ResponseEntity.ok(records.map(mapper::buyToDto));
+    }
+
+    /**
+     * Buys of product after the cursor, next of response is the cursor of the following buys
+     */
+    @GetMapping("/get-by-product/{id}/cursor/")
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
+    public ResponseEntity<CursorPage<BuyDto>> getBuyRecordsOfProductAfter(
+            @PathVariable("id") Long productId, @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") Integer size, HttpServletRequest req) {
+        return ResponseEntity.ok(service.getAllBuyRecordsOfProduct(productId, cursor, size, req)
+                .map(mapper::buyToDto));
+    }
+
+    @GetMapping("/get-by-user/{id}/cursor/")
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
+    public ResponseEntity<CursorPage<BuyDto>> getBuyRecordsOfUserAfter(
+            @PathVariable("id") Long userId, @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") Integer size, HttpServletRequest req) {
+        return ResponseEntity.ok(service.getAllBuyRecordsOfUser(userId, cursor, size, req).map(mapper::buyToDto));
     }
 
     @PostMapping("/get-by-product/date/{id}/")
     @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
-    public ResponseEntity<Page<BuyDto>> getAllBuyRecordsOfProductFromDateTo(@PathVariable("id") Long productId,
-                                                                            @RequestBody FinancialDto financial,
-                                                                            HttpServletRequest req, Pageable pageable) {
-        return ResponseEntity.ok(service.getAllBuyRecordsOfProductFromDateTo(productId, Optional.ofNullable(financial),
-                req, pageable).map(mapper::buyToDto));
+    public ResponseEntity<Slice<BuyDto>> getAllBuyRecordsOfProductFromDateTo(
+            @PathVariable("id") Long productId, @RequestBody FinancialDto financial,
+            @RequestParam(defaultValue = "true") Boolean count, HttpServletRequest req, Pageable pageable) {
+        var dates = Optional.ofNullable(financial);
+        var records = count ? service.getAllBuyRecordsOfProductFromDateTo(productId, dates, req, pageable)
+                : service.getBuyRecordsSliceOfProductFromDateTo(productId, dates, req, pageable);
+        return ResponseEntity.ok(records.map(mapper::buyToDto));
     }
 
     @PostMapping("/get-by-user/date/{id}/")
-    public ResponseEntity<Page<BuyDto>> getAllBuyRecordsOfUserFromDateTo(@PathVariable("id") Long userId,
-                                                                         @RequestBody FinancialDto financial,
-                                                                         HttpServletRequest req, Pageable pageable) {
-        return ResponseEntity.ok(service.getAllBuyRecordsOfUserFromDateTo(userId, Optional.ofNullable(financial),
-                req, pageable).map(mapper::buyToDto));
+    public ResponseEntity<Slice<BuyDto>> getAllBuyRecordsOfUserFromDateTo(
+            @PathVariable("id") Long userId, @RequestBody FinancialDto financial,
+            @RequestParam(defaultValue = "true") Boolean count, HttpServletRequest req, Pageable pageable) {
+        var dates = Optional.ofNullable(financial);
+        var records = count ? service.getAllBuyRecordsOfUserFromDateTo(userId, dates, req, pageable)
+                : service.getBuyRecordsSliceOfUserFromDateTo(userId, dates, req, pageable);
+        return ResponseEntity.ok(records.map(mapper::buyToDto));
     }
 
     @GetMapping("/{id}/")
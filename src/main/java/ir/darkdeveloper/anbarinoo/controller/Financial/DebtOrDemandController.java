@@ -1,12 +1,13 @@
 package ir.darkdeveloper.anbarinoo.controller.Financial;
 
+import ir.darkdeveloper.anbarinoo.dto.CursorPage;
 import ir.darkdeveloper.anbarinoo.dto.DebtOrDemandDto;
 import ir.darkdeveloper.anbarinoo.dto.mapper.DebtOrDemandMapper;
 import ir.darkdeveloper.anbarinoo.model.DebtOrDemandModel;
 import ir.darkdeveloper.anbarinoo.service.Financial.DebtOrDemandService;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -39,10 +40,25 @@ public class DebtOrDemandController {
 
     @GetMapping("/get-by-user/{id}/")
     @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
-    public ResponseEntity<Page<DebtOrDemandDto>> getAllDODRecordsOfUser(
-            @PathVariable("id") Long userId, HttpServletRequest request,
-            Pageable pageable) {
-        return ResponseEntity.ok(service.getAllDODRecordsOfUser(userId, request, pageable).map(mapper::dodToDto));
+    public ResponseEntity<Slice<DebtOrDemandDto>> getAllDODRecordsOfUser(
+            @PathVariable("id") Long userId, @RequestParam(defaultValue = "true") Boolean count,
+            HttpServletRequest request, Pageable pageable) {
+        // a slice skips the count query
+        var records = count ? service.getAllDODRecordsOfUser(userId, request, pageable)
+                : service.getDODRecordsSliceOfUser(userId, request, pageable);
+        return ResponseEntity.ok(records.map(mapper::dodToDto));
+    }
+
+    /**
+     * Debts and demands of user after the cursor, next of response is the cursor of the following records
+     */
+    @GetMapping("/get-by-user/{id}/cursor/")
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
+    public ResponseEntity<CursorPage<DebtOrDemandDto>> getDODRecordsOfUserAfter(
+            @PathVariable("id") Long userId, @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") Integer size, HttpServletRequest request) {
+        return ResponseEntity.ok(service.getAllDODRecordsOfUser(userId, cursor, size, request)
+                .map(mapper::dodToDto));
     }
 
     @GetMapping("/{id}/")
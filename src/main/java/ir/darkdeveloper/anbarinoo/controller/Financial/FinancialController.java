@@ -1,9 +1,9 @@
 package ir.darkdeveloper.anbarinoo.controller.Financial;
 
+import ir.darkdeveloper.anbarinoo.dto.FinancialBucket;
 import ir.darkdeveloper.anbarinoo.dto.FinancialDto;
 import ir.darkdeveloper.anbarinoo.service.Financial.FinancialService;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.domain.Pageable;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -21,21 +21,32 @@ public class FinancialController {
     @PostMapping("/costs/")
     @PreAuthorize("hasAuthority('OP_ACCESS_USER')")
     public ResponseEntity<?> getCosts(@RequestBody FinancialDto financial,
-                                      HttpServletRequest req, Pageable pageable) {
-        return ResponseEntity.ok(service.getCosts(Optional.ofNullable(financial), req, pageable));
+                                      HttpServletRequest req) {
+        return ResponseEntity.ok(service.getCosts(Optional.ofNullable(financial), req));
     }
 
     @PostMapping("/incomes/")
     @PreAuthorize("hasAuthority('OP_ACCESS_USER')")
     public ResponseEntity<?> getIncomes(@RequestBody FinancialDto financial,
-                                        HttpServletRequest req, Pageable pageable) {
-        return ResponseEntity.ok(service.getIncomes(Optional.ofNullable(financial), req, pageable));
+                                        HttpServletRequest req) {
+        return ResponseEntity.ok(service.getIncomes(Optional.ofNullable(financial), req));
     }
 
     @PostMapping("/profit-loss/")
     @PreAuthorize("hasAuthority('OP_ACCESS_USER')")
     public ResponseEntity<?> getProfitOrLoss(@RequestBody FinancialDto financial,
-                                             HttpServletRequest req, Pageable pageable) {
-        return ResponseEntity.ok(service.getProfitOrLoss(Optional.ofNullable(financial), req, pageable));
+                                             HttpServletRequest req) {
+        return ResponseEntity.ok(service.getProfitOrLoss(Optional.ofNullable(financial), req));
+    }
+
+    /**
+     * @param bucket one of DAY, WEEK or MONTH
+     */
+    @PostMapping("/series/")
+    @PreAuthorize("hasAuthority('OP_ACCESS_USER')")
+    public ResponseEntity<?> getSeries(@RequestBody FinancialDto financial,
+                                       @RequestParam(defaultValue = "DAY") FinancialBucket bucket,
+                                       HttpServletRequest req) {
+        return ResponseEntity.ok(service.getSeries(Optional.ofNullable(financial), bucket, req));
     }
 }
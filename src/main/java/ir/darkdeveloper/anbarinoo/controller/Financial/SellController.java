@@ -1,19 +1,21 @@
 package ir.darkdeveloper.anbarinoo.controller.Financial;
 
+import ir.darkdeveloper.anbarinoo.dto.CursorPage;
 import ir.darkdeveloper.anbarinoo.dto.FinancialDto;
 import ir.darkdeveloper.anbarinoo.dto.SellDto;
 import ir.darkdeveloper.anbarinoo.dto.mapper.BuySellMapper;
 import ir.darkdeveloper.anbarinoo.model.SellModel;
 import ir.darkdeveloper.anbarinoo.service.Financial.SellService;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.List;
 import java.util.Optional;
 
 @RestController
@@ -31,6 +33,17 @@ public class SellController {
                 HttpStatus.CREATED);
     }
 
+    /**
+     * Saves all lines of a receipt at once, either all of them are saved or none
+     */
+    @PostMapping("/save-all/")
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
+    public ResponseEntity<List<SellDto>> saveAllSells(@RequestBody List<SellModel> sells,
+                                                      HttpServletRequest request) {
+        return new ResponseEntity<>(service.saveAllSells(sells, request).stream().map(mapper::sellToDto).toList(),
+                HttpStatus.CREATED);
+    }
+
     @PutMapping("/update/{id}/")
     @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
     public ResponseEntity<SellDto> updateSell(@RequestBody SellModel sell, @PathVariable Long id,
@@ -38,41 +51,74 @@ public class SellController {
         return ResponseEntity.ok(mapper.sellToDto(service.updateSell(Optional.ofNullable(sell), id, request)));
     }
 
+    /**
+     * @param count false returns a slice, which only tells if there is a next page and skips the count query
+     */
     @GetMapping("/get-by-product/{id}/")
     @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
-    public ResponseEntity<Page<SellDto>> getAllSellRecordsOfProduct(
+    public ResponseEntity<Slice<SellDto>> getAllSellRecordsOfProduct(
             @PathVariable("id") Long productId,
+            @RequestParam(defaultValue = "true") Boolean count,
             HttpServletRequest request, Pageable pageable) {
-        return ResponseEntity.ok(service.getAllSellRecordsOfProduct(productId, request, pageable)
-                .map(mapper::sellToDto));
+        var records = count ? service.getAllSellRecordsOfProduct(productId, request, pageable)
+                : service.getSellRecordsSliceOfProduct(productId, request, pageable);
+        return ResponseEntity.ok(records.map(mapper::sellToDto));
     }
 
     @GetMapping("/get-by-user/{id}/")
     @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
-    public ResponseEntity<Page<SellDto>> getAllSellRecordsOfUser(
-            @PathVariable("id") Long userId, HttpServletRequest request,
-            Pageable pageable) {
-        return ResponseEntity.ok(service.getAllSellRecordsOfUser(userId, request, pageable)
+    public ResponseEntity<Slice<SellDto>> getAllSellRecordsOfUser(
+            @PathVariable("id") Long userId, @RequestParam(defaultValue = "true") Boolean count,
+            HttpServletRequest request, Pageable pageable) {
+        var records = count ? service.getAllSellRecordsOfUser(userId, request, pageable)
+                : service.getSellRecordsSliceOfUser(userId, request, pageable);
+        return ResponseEntity.ok(records.map(mapper::sellToDto));
+    }
+
+    /**
+     * Sells of product after the cursor, next of response is the cursor of the following sells
+     */
+    @GetMapping("/get-by-product/{id}/cursor/")
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
+    public ResponseEntity<CursorPage<SellDto>> getSellRecordsOfProductAfter(
+            @PathVariable("id") Long productId, @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") Integer size, HttpServletRequest request) {
+        return ResponseEntity.ok(service.getAllSellRecordsOfProduct(productId, cursor, size, request)
+                .map(mapper::sellToDto));
+    }
+
+    @GetMapping("/get-by-user/{id}/cursor/")
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
+    public ResponseEntity<CursorPage<SellDto>> getSellRecordsOfUserAfter(
+            @PathVariable("id") Long userId, @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") Integer size, HttpServletRequest request) {
+        return ResponseEntity.ok(service.getAllSellRecordsOfUser(userId, cursor, size, request)
                 .map(mapper::sellToDto));
     }
 
     @PostMapping("/get-by-product/date/{id}/")
     @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
-    public ResponseEntity<Page<SellDto>> getAllSellRecordsOfProductFromDateTo(
+    public ResponseEntity<Slice<SellDto>> getAllSellRecordsOfProductFromDateTo(
             @PathVariable("id") Long productId,
             @RequestBody FinancialDto financial,
+            @RequestParam(defaultValue = "true") Boolean count,
             HttpServletRequest req, Pageable pageable) {
-        return ResponseEntity.ok(service.getAllSellRecordsOfProductFromDateTo(productId,
-                Optional.ofNullable(financial), req, pageable).map(mapper::sellToDto));
+        var dates = Optional.ofNullable(financial);
+        var records = count ? service.getAllSellRecordsOfProductFromDateTo(productId, dates, req, pageable)
+                : service.getSellRecordsSliceOfProductFromDateTo(productId, dates, req, pageable);
+        return ResponseEntity.ok(records.map(mapper::sellToDto));
     }
 
     @PostMapping("/get-by-user/date/{id}/")
-    public ResponseEntity<Page<SellDto>> getAllSellRecordsOfUserFromDateTo(
+    public ResponseEntity<Slice<SellDto>> getAllSellRecordsOfUserFromDateTo(
             @PathVariable("id") Long userId,
             @RequestBody FinancialDto financial,
+            @RequestParam(defaultValue = "true") Boolean count,
             HttpServletRequest req, Pageable pageable) {
-        return ResponseEntity.ok(service.getAllSellRecordsOfUserFromDateTo(userId,
-                Optional.ofNullable(financial), req, pageable).map(mapper::sellToDto));
+        var dates = Optional.ofNullable(financial);
+        var records = count ? service.getAllSellRecordsOfUserFromDateTo(userId, dates, req, pageable)
+                : service.getSellRecordsSliceOfUserFromDateTo(userId, dates, req, pageable);
+        return ResponseEntity.ok(records.map(mapper::sellToDto));
     }
 
 
@@ -1,5 +1,7 @@
 package ir.darkdeveloper.anbarinoo.controller;
 
+import ir.darkdeveloper.anbarinoo.dto.CursorPage;
+import ir.darkdeveloper.anbarinoo.dto.ImportResultDto;
 import ir.darkdeveloper.anbarinoo.dto.ProductDto;
 import ir.darkdeveloper.anbarinoo.dto.mapper.ProductMapper;
 import ir.darkdeveloper.anbarinoo.model.ProductModel;
@@ -7,10 +9,12 @@ import ir.darkdeveloper.anbarinoo.service.ProductService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.Optional;
@@ -31,6 +35,16 @@ public class ProductController {
                 HttpStatus.CREATED);
     }
 
+    /**
+     * Imports products of an xlsx or csv file, rows that fail are reported and the rest are imported
+     */
+    @PostMapping("/import/")
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_ADMIN','OP_ACCESS_USER')")
+    public ResponseEntity<ImportResultDto> importProducts(@RequestParam("file") MultipartFile file,
+                                                          HttpServletRequest request) {
+        return new ResponseEntity<>(service.importProducts(file, request), HttpStatus.CREATED);
+    }
+
     @GetMapping("/search/")
     @PreAuthorize("hasAnyAuthority('OP_ACCESS_ADMIN','OP_ACCESS_USER')")
     public ResponseEntity<Page<ProductDto>> findByNameContains(@RequestParam String name, Pageable pageable,
@@ -73,9 +87,23 @@ public class ProductController {
 
     @GetMapping("/user/")
     @PreAuthorize("hasAnyAuthority('OP_ACCESS_ADMIN','OP_ACCESS_USER')")
-    public ResponseEntity<Page<ProductDto>> getAllProducts(Pageable pageable,
-                                                           HttpServletRequest request) {
-        return ResponseEntity.ok(service.getAllProducts(pageable, request).map(mapper::productToDto));
+    public ResponseEntity<Slice<ProductDto>> getAllProducts(Pageable pageable,
+                                                            @RequestParam(defaultValue = "true") Boolean count,
+                                                            HttpServletRequest request) {
+        // a slice skips the count query
+        var products = count ? service.getAllProducts(pageable, request) : service.getProductsSlice(pageable, request);
+        return ResponseEntity.ok(products.map(mapper::productToDto));
+    }
+
+    /**
+     * Products of user after the cursor, next of response is the cursor of the following products
+     */
+    @GetMapping("/user/cursor/")
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_ADMIN','OP_ACCESS_USER')")
+    public ResponseEntity<CursorPage<ProductDto>> getProductsAfter(@RequestParam(required = false) String cursor,
+                                                                   @RequestParam(defaultValue = "20") Integer size,
+                                                                   HttpServletRequest request) {
+        return ResponseEntity.ok(service.getAllProducts(cursor, size, request).map(mapper::productToDto));
     }
 
     @DeleteMapping("/{id}/")
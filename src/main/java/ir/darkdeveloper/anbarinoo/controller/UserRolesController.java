@@ -1,6 +1,7 @@
 package ir.darkdeveloper.anbarinoo.controller;
 
 import java.util.List;
+import java.util.Set;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -9,6 +10,7 @@ import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -44,6 +46,13 @@ public class UserRolesController {
 
     }
 
+    @PutMapping("/user/{userId}/")
+    @PreAuthorize("hasAuthority('OP_ADD_ROLE')")
+    public ResponseEntity<String> setRolesOfUser(@PathVariable("userId") Long userId,
+                                                 @RequestBody Set<Long> roleIds) {
+        return ResponseEntity.ok(service.setRolesOfUser(userId, roleIds));
+    }
+
     @DeleteMapping("/{id}/")
     @PreAuthorize("hasAuthority('OP_DELETE_ROLE')")
     public ResponseEntity<String> deleteRole(@PathVariable("id") Long id) {
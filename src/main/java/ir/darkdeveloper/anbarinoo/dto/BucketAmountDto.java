@@ -0,0 +1,20 @@
+package ir.darkdeveloper.anbarinoo.dto;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+/**
+ * Sum of a time series bucket
+ *
+ * @param bucket start of the bucket
+ */
+public record BucketAmountDto(LocalDateTime bucket, BigDecimal amount) {
+
+    /**
+     * @param row bucket timestamp and amount, selected by a native query
+     */
+    public static BucketAmountDto fromRow(Object[] row) {
+        return new BucketAmountDto(((Timestamp) row[0]).toLocalDateTime(), (BigDecimal) row[1]);
+    }
+}
@@ -0,0 +1,52 @@
+package ir.darkdeveloper.anbarinoo.dto;
+
+import ir.darkdeveloper.anbarinoo.exception.BadRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position of a record in (createdAt, id) order. Clients get it as an opaque token, and send it back for the
+ * records after it
+ */
+public record Cursor(LocalDateTime createdAt, Long id) {
+
+    /**
+     * Before every record, records are created after it and ids of sequences are bigger
+     */
+    public static final Cursor START = new Cursor(LocalDateTime.of(1970, 1, 1, 0, 0), Long.MIN_VALUE);
+
+    /**
+     * Keeps the records of a query with alias m after the :createdAt and :id parameters. The first condition lets
+     * the database seek an index that starts with the filtered column and then (createdAt, id), like buys of a
+     * product or debts of a user. Queries that filter through a join, like buys of a user, have no such index and
+     * the database sorts all records of the filter on every page. They only save the count query and the offset
+     */
+    public static final String AFTER = " and m.createdAt >= :createdAt " +
+            "and (m.createdAt > :createdAt or m.id > :id) ";
+
+    public static final String ORDER = " order by m.createdAt, m.id";
+
+    /**
+     * @param token of {@link #encode()}, or null for the first records
+     */
+    public static Cursor decode(String token) {
+        if (token == null || token.isBlank())
+            return START;
+        try {
+            var value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            var separator = value.lastIndexOf(',');
+            return new Cursor(LocalDateTime.parse(value.substring(0, separator)),
+                    Long.parseLong(value.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new BadRequestException("Cursor is not valid");
+        }
+    }
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((createdAt + "," + id).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,45 @@
+package ir.darkdeveloper.anbarinoo.dto;
+
+import ir.darkdeveloper.anbarinoo.exception.BadRequestException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Records after a {@link Cursor}, without a total count. next is the token of the following records, null on
+ * the last page
+ *
+ * @param <T> type of records
+ */
+public record CursorPage<T>(List<T> content, Integer size, String next) {
+
+    public static final int MAX_SIZE = 2000;
+
+    /**
+     * One more record than the size is fetched, to know whether there is a next page without counting
+     */
+    public static Pageable fetchOf(Integer size) {
+        if (size == null || size < 1 || size > MAX_SIZE)
+            throw new BadRequestException("Size must be between 1 and " + MAX_SIZE);
+        return PageRequest.of(0, size + 1);
+    }
+
+    /**
+     * @param records fetched with {@link #fetchOf(Integer)}
+     */
+    public static <T> CursorPage<T> of(List<T> records, Integer size, Function<T, LocalDateTime> createdAt,
+                                       Function<T, Long> id) {
+        if (records.size() <= size)
+            return new CursorPage<>(records, size, null);
+        var content = records.subList(0, size);
+        var last = content.get(size - 1);
+        return new CursorPage<>(content, size, new Cursor(createdAt.apply(last), id.apply(last)).encode());
+    }
+
+    public <R> CursorPage<R> map(Function<? super T, ? extends R> mapper) {
+        return new CursorPage<>(content.stream().<R>map(mapper).toList(), size, next);
+    }
+}
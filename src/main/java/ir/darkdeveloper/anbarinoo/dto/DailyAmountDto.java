@@ -0,0 +1,13 @@
+package ir.darkdeveloper.anbarinoo.dto;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * Amount of a day, grouped in the database
+ *
+ * @param day is a java.sql.Date when created by a query
+ */
+public record DailyAmountDto(Date day, BigDecimal amount) {
+
+}
@@ -0,0 +1,10 @@
+package ir.darkdeveloper.anbarinoo.dto;
+
+import ir.darkdeveloper.anbarinoo.util.export.ExportFormat;
+import ir.darkdeveloper.anbarinoo.util.export.ExportType;
+
+public record ExportJobDto(String id, ExportType type,
+                           ExportFormat format, String status,
+                           Long rows, String error,
+                           String createdAt, String finishedAt) {
+}
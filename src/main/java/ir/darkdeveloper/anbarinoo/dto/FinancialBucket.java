@@ -0,0 +1,53 @@
+package ir.darkdeveloper.anbarinoo.dto;
+
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Bucket size of financial time series. Buckets start like date_trunc of the database, weeks start on monday
+ */
+public enum FinancialBucket {
+    DAY, WEEK, MONTH;
+
+    /**
+     * @return unit name of date_trunc
+     */
+    public String unit() {
+        return name().toLowerCase();
+    }
+
+    public LocalDateTime truncate(LocalDateTime date) {
+        var day = date.toLocalDate();
+        return switch (this) {
+            case DAY -> day.atStartOfDay();
+            case WEEK -> day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).atStartOfDay();
+            case MONTH -> day.withDayOfMonth(1).atStartOfDay();
+        };
+    }
+
+    /**
+     * @return number of buckets between the dates, without creating them
+     */
+    public long count(LocalDateTime from, LocalDateTime to) {
+        var start = truncate(from);
+        if (!start.isBefore(to))
+            return 0;
+        var unit = switch (this) {
+            case DAY -> ChronoUnit.DAYS;
+            case WEEK -> ChronoUnit.WEEKS;
+            case MONTH -> ChronoUnit.MONTHS;
+        };
+        var count = unit.between(start, to);
+        return start.plus(count, unit).isBefore(to) ? count + 1 : count;
+    }
+
+    public LocalDateTime next(LocalDateTime bucket) {
+        return switch (this) {
+            case DAY -> bucket.plusDays(1);
+            case WEEK -> bucket.plusWeeks(1);
+            case MONTH -> bucket.plusMonths(1);
+        };
+    }
+}
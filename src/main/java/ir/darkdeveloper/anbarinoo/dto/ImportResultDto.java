@@ -0,0 +1,9 @@
+package ir.darkdeveloper.anbarinoo.dto;
+
+import java.util.List;
+
+/**
+ * @param errors rows that are not imported, index of an error is its row number in the file
+ */
+public record ImportResultDto(Integer imported, List<LineErrorDto> errors) {
+}
@@ -0,0 +1,9 @@
+package ir.darkdeveloper.anbarinoo.dto;
+
+/**
+ * Error of a single line of a batch request
+ *
+ * @param index position of the line in the request starting from 0, or the row number of an imported file
+ */
+public record LineErrorDto(Integer index, Long productId, String message) {
+}
@@ -0,0 +1,10 @@
+package ir.darkdeveloper.anbarinoo.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.http.HttpStatus;
+
+public record LinesExceptionDto(String message, HttpStatus httpStatus,
+                                LocalDateTime timestamp, List<LineErrorDto> lines) {
+}
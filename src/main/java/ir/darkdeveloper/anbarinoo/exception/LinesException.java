@@ -0,0 +1,24 @@
+package ir.darkdeveloper.anbarinoo.exception;
+
+import ir.darkdeveloper.anbarinoo.dto.LineErrorDto;
+import lombok.Getter;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.util.List;
+
+/**
+ * A batch request failed as a whole, lines contain the reason of every failed line
+ */
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+@Getter
+public class LinesException extends BadRequestException {
+
+    private final List<LineErrorDto> lines;
+
+    public LinesException(String msg, List<LineErrorDto> lines) {
+        super(msg);
+        this.lines = List.copyOf(lines);
+    }
+
+}
@@ -6,12 +6,14 @@ import java.time.LocalDateTime;
 import ir.darkdeveloper.anbarinoo.exception.*;
 import org.hibernate.exception.DataException;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 
 import ir.darkdeveloper.anbarinoo.dto.ExceptionDto;
+import ir.darkdeveloper.anbarinoo.dto.LinesExceptionDto;
 import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 
 @ControllerAdvice
@@ -33,6 +35,13 @@ public class ApiExceptionHandler {
         return new ResponseEntity<>(ed, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(LinesException.class)
+    public ResponseEntity<LinesExceptionDto> handleLineErrors(LinesException e) {
+        var ed = new LinesExceptionDto(e.getLocalizedMessage(), HttpStatus.BAD_REQUEST, LocalDateTime.now(),
+                e.getLines());
+        return new ResponseEntity<>(ed, HttpStatus.BAD_REQUEST);
+    }
+
     @ExceptionHandler(ForbiddenException.class)
     public ResponseEntity<ExceptionDto> handleForbiddenRequests(ForbiddenException e) {
         var ed = new ExceptionDto(e.getLocalizedMessage(), HttpStatus.FORBIDDEN, LocalDateTime.now());
@@ -49,6 +58,14 @@ public class ApiExceptionHandler {
     }
 
 
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public ResponseEntity<ExceptionDto> handleServiceUnavailable(ServiceUnavailableException e) {
+        var ed = new ExceptionDto(e.getLocalizedMessage(), HttpStatus.SERVICE_UNAVAILABLE, LocalDateTime.now());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfter().toSeconds())))
+                .body(ed);
+    }
+
     @ExceptionHandler(NoContentException.class)
     public ResponseEntity<ExceptionDto> handleNoContent(NoContentException e) {
         var ed = new ExceptionDto(e.getLocalizedMessage(), HttpStatus.NO_CONTENT, LocalDateTime.now());
@@ -13,14 +13,18 @@ import java.time.LocalDateTime;
 @Setter
 @ToString
 @Entity
-@Table(name = "buys")
+@Table(name = "buys", indexes = @Index(columnList = "product_id, createdAt, id"))
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
 public class BuyModel implements UpdateModel<BuyModel> {
 
+    public static final String BUYS_SEQUENCE = "buys_seq";
+
+    // pooled, so a batch insert fetches the ids of a whole jdbc batch with a single sequence call
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = BUYS_SEQUENCE)
+    @SequenceGenerator(name = BUYS_SEQUENCE, sequenceName = BUYS_SEQUENCE, allocationSize = 50)
     private Long id;
 
     @Column(nullable = false, precision = 19, scale = 4)
@@ -45,6 +49,14 @@ public class BuyModel implements UpdateModel<BuyModel> {
     @UpdateTimestamp
     private LocalDateTime updatedAt;
 
+    /**
+     * Used by the streaming queries, product is only a reference to its id
+     */
+    public BuyModel(Long id, BigDecimal count, BigDecimal price, Integer tax, Long productId,
+                    LocalDateTime createdAt, LocalDateTime updatedAt) {
+        this(id, count, price, tax, new ProductModel(productId), createdAt, updatedAt);
+    }
+
     @Override
     public void update(BuyModel model) {
         price = model.price != null || price == null ? model.price : price;
@@ -62,6 +62,16 @@ public class ChequeModel implements UpdateModel<ChequeModel> {
     private LocalDateTime updatedAt;
 
 
+    /**
+     * Used by the streaming queries, user is only a reference to its id
+     */
+    public ChequeModel(Long id, String nameOf, String payTo, BigDecimal amount, Boolean isDebt,
+                       Boolean isCheckedOut, Long userId, LocalDateTime issuedAt, LocalDateTime validTill,
+                       LocalDateTime createdAt, LocalDateTime updatedAt) {
+        this(id, nameOf, payTo, amount, isDebt, isCheckedOut, new UserModel(userId), issuedAt, validTill,
+                createdAt, updatedAt);
+    }
+
     @Override
     public void update(ChequeModel mode) {
         id = mode.id != null || id == null ? mode.id : id;
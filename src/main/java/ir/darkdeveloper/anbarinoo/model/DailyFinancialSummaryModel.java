@@ -0,0 +1,71 @@
+package ir.darkdeveloper.anbarinoo.model;
+
+import lombok.*;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Pre-summed financial values of a user for one day. Kept up to date by buy, sell and debt or demand writes
+ */
+@Getter
+@Setter
+@ToString
+@Entity
+@Table(name = "daily_financial_summary",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"user_id", "summary_day"}))
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailyFinancialSummaryModel {
+
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "summary_day", nullable = false)
+    private LocalDate day;
+
+    // buy costs including tax
+    @Column(nullable = false, precision = 19, scale = 4)
+    @Builder.Default
+    private BigDecimal buyCost = BigDecimal.ZERO;
+
+    @Column(nullable = false, precision = 19, scale = 4)
+    @Builder.Default
+    private BigDecimal buyTax = BigDecimal.ZERO;
+
+    // sell incomes excluding tax
+    @Column(nullable = false, precision = 19, scale = 4)
+    @Builder.Default
+    private BigDecimal sellIncome = BigDecimal.ZERO;
+
+    @Column(nullable = false, precision = 19, scale = 4)
+    @Builder.Default
+    private BigDecimal sellTax = BigDecimal.ZERO;
+
+    // checked out debts
+    @Column(nullable = false, precision = 19, scale = 4)
+    @Builder.Default
+    private BigDecimal dodDebt = BigDecimal.ZERO;
+
+    // checked out demands
+    @Column(nullable = false, precision = 19, scale = 4)
+    @Builder.Default
+    private BigDecimal dodDemand = BigDecimal.ZERO;
+
+    public DailyFinancialSummaryModel(Long userId, LocalDate day) {
+        this.userId = userId;
+        this.day = day;
+        this.buyCost = BigDecimal.ZERO;
+        this.buyTax = BigDecimal.ZERO;
+        this.sellIncome = BigDecimal.ZERO;
+        this.sellTax = BigDecimal.ZERO;
+        this.dodDebt = BigDecimal.ZERO;
+        this.dodDemand = BigDecimal.ZERO;
+    }
+}
@@ -7,6 +7,7 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
@@ -23,7 +24,8 @@ import org.hibernate.annotations.UpdateTimestamp;
 @Setter
 @ToString
 @Entity
-@Table(name = "debts_demands")
+@Table(name = "debts_demands", indexes = {@Index(columnList = "user_id, isDebt, isCheckedOut, createdAt"),
+        @Index(columnList = "user_id, createdAt, id")})
 @JsonDeserialize(using = DebtOrDemandDeserializer.class)
 @JsonSerialize(using = DebtOrDemandSerializer.class)
 @AllArgsConstructor
@@ -71,6 +73,16 @@ public class DebtOrDemandModel implements UpdateModel<DebtOrDemandModel> {
     @UpdateTimestamp
     private LocalDateTime updatedAt;
 
+    /**
+     * Used by the streaming queries, user is only a reference to its id
+     */
+    public DebtOrDemandModel(Long id, String nameOf, String payTo, Boolean isDebt, Boolean isCheckedOut,
+                             BigDecimal amount, Long chequeId, Long userId, LocalDateTime issuedAt,
+                             LocalDateTime validTill, LocalDateTime createdAt, LocalDateTime updatedAt) {
+        this(id, nameOf, payTo, isDebt, isCheckedOut, amount, chequeId, new UserModel(userId), issuedAt, validTill,
+                createdAt, updatedAt);
+    }
+
     @Override
     public void update(DebtOrDemandModel model) {
         nameOf = model.nameOf != null || nameOf == null ? model.nameOf : nameOf;
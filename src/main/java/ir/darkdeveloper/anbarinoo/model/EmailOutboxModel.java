@@ -0,0 +1,65 @@
+package ir.darkdeveloper.anbarinoo.model;
+
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * An email that is saved in the transaction of its sender and sent later by
+ * {@link ir.darkdeveloper.anbarinoo.util.email.EmailOutboxDispatcher}
+ */
+@Getter
+@Setter
+@ToString
+@Entity
+@Table(name = "email_outbox", indexes = @Index(columnList = "status, nextAttemptAt"))
+@NoArgsConstructor
+public class EmailOutboxModel {
+
+    public enum Status {PENDING, SENT, DEAD}
+
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    @Column(nullable = false)
+    private String recipient;
+
+    @Column(nullable = false)
+    private String subject;
+
+    @Column(nullable = false, columnDefinition = "text")
+    @ToString.Exclude
+    private String body;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 10)
+    private Status status;
+
+    @Column(nullable = false)
+    private Integer attempts;
+
+    // pending emails are sent after it, it is moved forward while an email is being sent and after failures
+    @Column(nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    @Column(length = 1000)
+    private String lastError;
+
+    @CreationTimestamp
+    @Column(updatable = false)
+    private LocalDateTime createdAt;
+
+    private LocalDateTime sentAt;
+
+    public EmailOutboxModel(String recipient, String subject, String body) {
+        this.recipient = recipient;
+        this.subject = subject;
+        this.body = body;
+        status = Status.PENDING;
+        attempts = 0;
+        nextAttemptAt = LocalDateTime.now();
+    }
+}
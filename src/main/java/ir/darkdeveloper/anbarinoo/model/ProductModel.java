@@ -24,8 +24,12 @@ import org.springframework.web.multipart.MultipartFile;
 @ToString
 public class ProductModel implements UpdateModel<ProductModel> {
 
+    public static final String PRODUCTS_SEQUENCE = "products_seq";
+
+    // pooled, so a batch insert fetches the ids of a whole jdbc batch with a single sequence call
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = PRODUCTS_SEQUENCE)
+    @SequenceGenerator(name = PRODUCTS_SEQUENCE, sequenceName = PRODUCTS_SEQUENCE, allocationSize = 50)
     private Long id;
 
     private Long firstBuyId;
@@ -80,6 +84,21 @@ public class ProductModel implements UpdateModel<ProductModel> {
         this.id = id;
     }
 
+    /**
+     * Used by the queries that only read the columns of the product itself
+     */
+    public ProductModel(Long id, String name, String description, BigDecimal price, Integer tax,
+                        BigDecimal totalCount, LocalDateTime createdAt, LocalDateTime updatedAt) {
+        this.id = id;
+        this.name = name;
+        this.description = description;
+        this.price = price;
+        this.tax = tax;
+        this.totalCount = totalCount;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+    }
+
     @Override
     public void update(ProductModel model) {
         id = model.id != null || id == null ? model.id : id;
@@ -4,15 +4,23 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
 import javax.persistence.Table;
 
 import lombok.*;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
 @Getter
 @Setter
 @ToString
 @Entity
-@Table(name = "tokens")
+@Table(name = "tokens", indexes = {@Index(columnList = "refreshTokenHash"), @Index(columnList = "user_id")})
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
@@ -28,4 +36,31 @@ public class RefreshModel {
     private String accessToken;
 
     private String refreshToken;
+
+    // tokens are long, so they are found by their hash
+    @Column(length = 43)
+    @ToString.Exclude
+    private String refreshTokenHash;
+
+    public RefreshModel(RefreshModel model) {
+        this(model.id, model.userId, model.accessToken, model.refreshToken, model.refreshTokenHash);
+    }
+
+    @PrePersist
+    @PreUpdate
+    private void hashRefreshToken() {
+        refreshTokenHash = refreshToken == null ? null : hashToken(refreshToken);
+    }
+
+    /**
+     * @return url safe base64 of the sha-256 of token
+     */
+    public static String hashToken(String token) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
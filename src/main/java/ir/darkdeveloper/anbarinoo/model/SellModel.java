@@ -12,14 +12,18 @@ import java.time.LocalDateTime;
 @Setter
 @ToString
 @Entity
-@Table(name = "sells")
+@Table(name = "sells", indexes = @Index(columnList = "product_id, createdAt, id"))
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
 public class SellModel implements UpdateModel<SellModel> {
 
+    public static final String SELLS_SEQUENCE = "sells_seq";
+
+    // pooled, so the sells of a receipt get their ids with a single sequence call
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = SELLS_SEQUENCE)
+    @SequenceGenerator(name = SELLS_SEQUENCE, sequenceName = SELLS_SEQUENCE, allocationSize = 50)
     private Long id;
 
     @Column(nullable = false, precision = 19, scale = 4)
@@ -44,6 +48,14 @@ public class SellModel implements UpdateModel<SellModel> {
     @UpdateTimestamp
     private LocalDateTime updatedAt;
 
+    /**
+     * Used by the streaming queries, product is only a reference to its id
+     */
+    public SellModel(Long id, BigDecimal count, BigDecimal price, Integer tax, Long productId,
+                     LocalDateTime createdAt, LocalDateTime updatedAt) {
+        this(id, count, price, tax, new ProductModel(productId), createdAt, updatedAt);
+    }
+
     @Override
     public void update(SellModel model) {
         count = model.count != null || count == null ? model.count : count;
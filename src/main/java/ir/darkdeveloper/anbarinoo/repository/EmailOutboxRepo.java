@@ -0,0 +1,33 @@
+package ir.darkdeveloper.anbarinoo.repository;
+
+import ir.darkdeveloper.anbarinoo.model.EmailOutboxModel;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface EmailOutboxRepo extends JpaRepository<EmailOutboxModel, Long> {
+
+    // skips the rows that other instances are claiming (lock timeout -2 is skip locked), on databases that support it
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "javax.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT m FROM EmailOutboxModel m " +
+            "WHERE m.status = ir.darkdeveloper.anbarinoo.model.EmailOutboxModel$Status.PENDING " +
+            "AND m.nextAttemptAt <= :now ORDER BY m.nextAttemptAt")
+    List<EmailOutboxModel> findDue(@Param("now") LocalDateTime now, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM EmailOutboxModel m " +
+            "WHERE m.status = ir.darkdeveloper.anbarinoo.model.EmailOutboxModel$Status.SENT AND m.sentAt < :before")
+    int deleteSentBefore(@Param("before") LocalDateTime before);
+}
@@ -1,12 +1,24 @@
 package ir.darkdeveloper.anbarinoo.repository.Financial;
 
+import ir.darkdeveloper.anbarinoo.dto.BucketAmountDto;
+import ir.darkdeveloper.anbarinoo.dto.Cursor;
 import ir.darkdeveloper.anbarinoo.model.BuyModel;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static ir.darkdeveloper.anbarinoo.repository.Financial.DebtOrDemandRepo.BUCKET_OF_CREATED_AT;
 
 @Repository
 public interface BuyRepo extends JpaRepository<BuyModel, Long> {
@@ -16,6 +28,14 @@ public interface BuyRepo extends JpaRepository<BuyModel, Long> {
 
     Page<BuyModel> findAllByProductCategoryUserId(Long userId, Pageable pageable);
 
+    @Query("select m from BuyModel m where m.product.id = :productId" + Cursor.AFTER + Cursor.ORDER)
+    List<BuyModel> findAllByProductIdAfter(Long productId, LocalDateTime createdAt, Long id, Pageable pageable);
+
+    // no index of the user and (createdAt, id), so every page sorts all buys of the user
+    @Query("select m from BuyModel m where m.product.category.user.id = :userId" + Cursor.AFTER + Cursor.ORDER)
+    List<BuyModel> findAllByProductCategoryUserIdAfter(Long userId, LocalDateTime createdAt, Long id,
+                                                      Pageable pageable);
+
     Page<BuyModel> findAllByProductCategoryUserIdAndCreatedAtAfterAndCreatedAtBefore(
             Long userId,
             LocalDateTime from,
@@ -28,6 +48,87 @@ public interface BuyRepo extends JpaRepository<BuyModel, Long> {
             LocalDateTime to,
             Pageable pageable);
 
+    // slices fetch one more record than the page size instead of counting all of them
+    Slice<BuyModel> findSliceByProductId(Long productId, Pageable pageable);
+
+    Slice<BuyModel> findSliceByProductCategoryUserId(Long userId, Pageable pageable);
+
+    Slice<BuyModel> findSliceByProductCategoryUserIdAndCreatedAtAfterAndCreatedAtBefore(
+            Long userId,
+            LocalDateTime from,
+            LocalDateTime to,
+            Pageable pageable);
+
+    Slice<BuyModel> findSliceByProductIdAndCreatedAtAfterAndCreatedAtBefore(
+            Long productId,
+            LocalDateTime from,
+            LocalDateTime to,
+            Pageable pageable);
+
+    /**
+     * Sum of count * price * (100 + tax) of buys. tax is a percentage, so the result is 100 times the real cost
+     */
+    @Query("select coalesce(sum(m.count * m.price * (100 + m.tax)), 0) from BuyModel m " +
+            "where m.product.category.user.id = :userId and m.createdAt > :from and m.createdAt < :to")
+    BigDecimal sumCostsPercentOfUserFromDateTo(Long userId, LocalDateTime from, LocalDateTime to);
+
+    /**
+     * @return sum of count * price of buys including their tax
+     */
+    default BigDecimal sumCostsOfUserFromDateTo(Long userId, LocalDateTime from, LocalDateTime to) {
+        return sumCostsPercentOfUserFromDateTo(userId, from, to).movePointLeft(2);
+    }
+
+    /**
+     * Costs of user per day, week or month. Amounts are 100 times the real value
+     */
+    @Query(nativeQuery = true, value = "select t.bucket, sum(t.amount) from (" +
+            "select " + BUCKET_OF_CREATED_AT + " as bucket, m.count * m.price * (100 + m.tax) as amount " +
+            "from buys m join products p on p.id = m.product_id join categories c on c.id = p.cat_id " +
+            "where c.user_id = :userId and m.created_at > :from and m.created_at < :to) t " +
+            "group by t.bucket order by t.bucket")
+    List<Object[]> sumCostsPercentRowsOfUserByBucket(Long userId, LocalDateTime from, LocalDateTime to, String unit);
+
+    default List<BucketAmountDto> sumCostsOfUserByBucket(Long userId, LocalDateTime from, LocalDateTime to,
+                                                          String unit) {
+        return sumCostsPercentRowsOfUserByBucket(userId, from, to, unit).stream()
+                .map(BucketAmountDto::fromRow)
+                .map(amount -> new BucketAmountDto(amount.bucket(), amount.amount().movePointLeft(2)))
+                .toList();
+    }
+
+    /**
+     * Records of user between the dates in creation order. Rows are read from a database cursor, a fetch size at a
+     * time, and are not managed, so memory doesn't grow with the history. Needs a surrounding transaction
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select new ir.darkdeveloper.anbarinoo.model.BuyModel(m.id, m.count, m.price, m.tax, m.product.id, m.createdAt, m.updatedAt) " +
+            "from BuyModel m where m.product.category.user.id = :userId and m.createdAt > :from and m.createdAt < :to " +
+            "order by m.createdAt, m.id")
+    Stream<BuyModel> streamAllOfUserFromDateTo(Long userId, LocalDateTime from, LocalDateTime to);
+
+    /**
+     * All records of user, read like {@link #streamAllOfUserFromDateTo}. Needs a surrounding transaction
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select new ir.darkdeveloper.anbarinoo.model.BuyModel(m.id, m.count, m.price, m.tax, m.product.id, m.createdAt, m.updatedAt) " +
+            "from BuyModel m where m.product.category.user.id = :userId")
+    Stream<BuyModel> streamAllOfUser(Long userId);
 
+    /**
+     * All records of the product, read like {@link #streamAllOfUserFromDateTo}. Needs a surrounding transaction
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select new ir.darkdeveloper.anbarinoo.model.BuyModel(m.id, m.count, m.price, m.tax, m.product.id, m.createdAt, m.updatedAt) " +
+            "from BuyModel m where m.product.id = :productId")
+    Stream<BuyModel> streamAllOfProduct(Long productId);
 
+    /**
+     * All records of the products of the categories, read like {@link #streamAllOfUserFromDateTo}. Needs a
+     * surrounding transaction
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select new ir.darkdeveloper.anbarinoo.model.BuyModel(m.id, m.count, m.price, m.tax, m.product.id, m.createdAt, m.updatedAt) " +
+            "from BuyModel m where m.product.category.id in :categoryIds")
+    Stream<BuyModel> streamAllOfCategories(Collection<Long> categoryIds);
 }
@@ -1,8 +1,14 @@
 package ir.darkdeveloper.anbarinoo.repository.Financial;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import ir.darkdeveloper.anbarinoo.model.ChequeModel;
@@ -15,6 +21,17 @@ public interface ChequeRepo extends JpaRepository<ChequeModel, Long> {
 
     List<ChequeModel> findChequeModelByPayToContains(String payTo);
 
+    /**
+     * Cheques of user between the dates in creation order. Rows are read from a database cursor, a fetch size at a
+     * time, and are not managed, so memory doesn't grow with the history. Needs a surrounding transaction
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select new ir.darkdeveloper.anbarinoo.model.ChequeModel(m.id, m.nameOf, m.payTo, m.amount, m.isDebt, " +
+            "m.isCheckedOut, m.user.id, m.issuedAt, m.validTill, m.createdAt, m.updatedAt) " +
+            "from ChequeModel m where m.user.id = :userId and m.createdAt > :from and m.createdAt < :to " +
+            "order by m.createdAt, m.id")
+    Stream<ChequeModel> streamAllOfUserFromDateTo(Long userId, LocalDateTime from, LocalDateTime to);
+
 //    @Query("SELECT model FROM ChequeModel model WHERE model.user.id = :id")
 //    List<ChequeModel> findChequeModelByUserId(@Param("id") Long id);
 }
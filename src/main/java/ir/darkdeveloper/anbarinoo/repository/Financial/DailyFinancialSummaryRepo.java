@@ -0,0 +1,54 @@
+package ir.darkdeveloper.anbarinoo.repository.Financial;
+
+import ir.darkdeveloper.anbarinoo.model.DailyFinancialSummaryModel;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Optional;
+
+@Repository
+public interface DailyFinancialSummaryRepo extends JpaRepository<DailyFinancialSummaryModel, Long> {
+
+    Optional<DailyFinancialSummaryModel> findByUserIdAndDay(Long userId, LocalDate day);
+
+    /**
+     * Adds the values to the day row of user in a single statement, so concurrent writes won't lose updates
+     *
+     * @return affected rows. 0 means the day row does not exist yet
+     */
+    @Transactional
+    @Modifying
+    @Query("update DailyFinancialSummaryModel m set m.buyCost = m.buyCost + :buyCost, " +
+            "m.buyTax = m.buyTax + :buyTax, m.sellIncome = m.sellIncome + :sellIncome, " +
+            "m.sellTax = m.sellTax + :sellTax, m.dodDebt = m.dodDebt + :dodDebt, " +
+            "m.dodDemand = m.dodDemand + :dodDemand " +
+            "where m.userId = :userId and m.day = :day")
+    int addToDay(Long userId, LocalDate day, BigDecimal buyCost, BigDecimal buyTax, BigDecimal sellIncome,
+                 BigDecimal sellTax, BigDecimal dodDebt, BigDecimal dodDemand);
+
+    @Transactional
+    @Modifying
+    @Query("delete from DailyFinancialSummaryModel m where m.userId = :userId")
+    void deleteAllByUserId(Long userId);
+
+    @Query("select coalesce(sum(m.buyCost), 0) from DailyFinancialSummaryModel m " +
+            "where m.userId = :userId and m.day between :fromDay and :toDay")
+    BigDecimal sumBuyCostsOfUserBetweenDays(Long userId, LocalDate fromDay, LocalDate toDay);
+
+    @Query("select coalesce(sum(m.sellIncome), 0) from DailyFinancialSummaryModel m " +
+            "where m.userId = :userId and m.day between :fromDay and :toDay")
+    BigDecimal sumSellIncomesOfUserBetweenDays(Long userId, LocalDate fromDay, LocalDate toDay);
+
+    @Query("select coalesce(sum(m.dodDebt), 0) from DailyFinancialSummaryModel m " +
+            "where m.userId = :userId and m.day between :fromDay and :toDay")
+    BigDecimal sumDodDebtsOfUserBetweenDays(Long userId, LocalDate fromDay, LocalDate toDay);
+
+    @Query("select coalesce(sum(m.dodDemand), 0) from DailyFinancialSummaryModel m " +
+            "where m.userId = :userId and m.day between :fromDay and :toDay")
+    BigDecimal sumDodDemandsOfUserBetweenDays(Long userId, LocalDate fromDay, LocalDate toDay);
+}
@@ -1,19 +1,42 @@
 package ir.darkdeveloper.anbarinoo.repository.Financial;
 
+import ir.darkdeveloper.anbarinoo.dto.BucketAmountDto;
+import ir.darkdeveloper.anbarinoo.dto.Cursor;
+import ir.darkdeveloper.anbarinoo.dto.DailyAmountDto;
 import ir.darkdeveloper.anbarinoo.model.DebtOrDemandModel;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface DebtOrDemandRepo extends JpaRepository<DebtOrDemandModel, Long> {
 
+    /**
+     * Start of the day, week or month of created_at of a native query record aliased m, the unit is a date_trunc unit
+     */
+    String BUCKET_OF_CREATED_AT = "case when :unit = 'week' then date_trunc('week', m.created_at) " +
+            "when :unit = 'month' then date_trunc('month', m.created_at) " +
+            "else date_trunc('day', m.created_at) end";
+
     Page<DebtOrDemandModel> findAllByUserId(Long userId, Pageable pageable);
 
+    // fetches one more record than the page size instead of counting all of them
+    Slice<DebtOrDemandModel> findSliceByUserId(Long userId, Pageable pageable);
+
+    @Query("select m from DebtOrDemandModel m where m.user.id = :userId" + Cursor.AFTER + Cursor.ORDER)
+    List<DebtOrDemandModel> findAllByUserIdAfter(Long userId, LocalDateTime createdAt, Long id, Pageable pageable);
+
     Optional<DebtOrDemandModel> findByChequeId(Long chequeId);
 
     Page<DebtOrDemandModel> findAllByUserIdAndIsDebtAndIsCheckedOutAndCreatedAtAfterAndCreatedAtBefore(
@@ -23,4 +46,45 @@ public interface DebtOrDemandRepo extends JpaRepository<DebtOrDemandModel, Long>
             LocalDateTime from,
             LocalDateTime to,
             Pageable pageable);
+
+    @Query("select coalesce(sum(m.amount), 0) from DebtOrDemandModel m " +
+            "where m.user.id = :userId and m.isDebt = :isDebt and m.isCheckedOut = :isCheckedOut " +
+            "and m.createdAt > :from and m.createdAt < :to")
+    BigDecimal sumAmountByUserIdAndIsDebtAndIsCheckedOutFromDateTo(Long userId,
+                                                                   Boolean isDebt,
+                                                                   Boolean isCheckedOut,
+                                                                   LocalDateTime from,
+                                                                   LocalDateTime to);
+
+    @Query("select new ir.darkdeveloper.anbarinoo.dto.DailyAmountDto(cast(m.createdAt as date), sum(m.amount)) " +
+            "from DebtOrDemandModel m where m.user.id = :userId and m.isDebt = :isDebt and m.isCheckedOut = true " +
+            "group by cast(m.createdAt as date)")
+    List<DailyAmountDto> sumCheckedOutAmountOfUserGroupedByDay(Long userId, Boolean isDebt);
+
+    // grouped by the alias of a subquery, so the unit parameter isn't repeated in group by
+    @Query(nativeQuery = true, value = "select t.bucket, sum(t.amount) from (" +
+            "select " + BUCKET_OF_CREATED_AT + " as bucket, m.amount as amount from debts_demands m " +
+            "where m.user_id = :userId and m.is_debt = :isDebt and m.is_checked_out = true " +
+            "and m.created_at > :from and m.created_at < :to) t group by t.bucket order by t.bucket")
+    List<Object[]> sumCheckedOutAmountRowsOfUserByBucket(Long userId, Boolean isDebt, LocalDateTime from,
+                                                         LocalDateTime to, String unit);
+
+    default List<BucketAmountDto> sumCheckedOutAmountOfUserByBucket(Long userId, Boolean isDebt,
+                                                                    LocalDateTime from, LocalDateTime to,
+                                                                    String unit) {
+        return sumCheckedOutAmountRowsOfUserByBucket(userId, isDebt, from, to, unit).stream()
+                .map(BucketAmountDto::fromRow)
+                .toList();
+    }
+
+    /**
+     * Records of user between the dates in creation order. Rows are read from a database cursor, a fetch size at a
+     * time, and are not managed, so memory doesn't grow with the history. Needs a surrounding transaction
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select new ir.darkdeveloper.anbarinoo.model.DebtOrDemandModel(m.id, m.nameOf, m.payTo, m.isDebt, " +
+            "m.isCheckedOut, m.amount, m.chequeId, m.user.id, m.issuedAt, m.validTill, m.createdAt, m.updatedAt) " +
+            "from DebtOrDemandModel m where m.user.id = :userId and m.createdAt > :from and m.createdAt < :to " +
+            "order by m.createdAt, m.id")
+    Stream<DebtOrDemandModel> streamAllOfUserFromDateTo(Long userId, LocalDateTime from, LocalDateTime to);
 }
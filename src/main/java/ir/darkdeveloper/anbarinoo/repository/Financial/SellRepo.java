@@ -1,14 +1,27 @@
 package ir.darkdeveloper.anbarinoo.repository.Financial;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.stereotype.Repository;
 
+import ir.darkdeveloper.anbarinoo.dto.BucketAmountDto;
+import ir.darkdeveloper.anbarinoo.dto.Cursor;
 import ir.darkdeveloper.anbarinoo.model.SellModel;
 
+import static ir.darkdeveloper.anbarinoo.repository.Financial.DebtOrDemandRepo.BUCKET_OF_CREATED_AT;
+
 @Repository
 public interface SellRepo extends PagingAndSortingRepository<SellModel, Long> {
 
@@ -16,6 +29,14 @@ public interface SellRepo extends PagingAndSortingRepository<SellModel, Long> {
 
     Page<SellModel> findAllByProductCategoryUserId(Long userId, Pageable pageable);
 
+    @Query("select m from SellModel m where m.product.id = :productId" + Cursor.AFTER + Cursor.ORDER)
+    List<SellModel> findAllByProductIdAfter(Long productId, LocalDateTime createdAt, Long id, Pageable pageable);
+
+    // no index of the user and (createdAt, id), so every page sorts all sells of the user
+    @Query("select m from SellModel m where m.product.category.user.id = :userId" + Cursor.AFTER + Cursor.ORDER)
+    List<SellModel> findAllByProductCategoryUserIdAfter(Long userId, LocalDateTime createdAt, Long id,
+                                                        Pageable pageable);
+
 
     Page<SellModel> findAllByProductCategoryUserIdAndCreatedAtAfterAndCreatedAtBefore(
             Long userId,
@@ -29,5 +50,87 @@ public interface SellRepo extends PagingAndSortingRepository<SellModel, Long> {
             LocalDateTime to,
             Pageable pageable);
 
+    // slices fetch one more record than the page size instead of counting all of them
+    Slice<SellModel> findSliceByProductId(Long productId, Pageable pageable);
+
+    Slice<SellModel> findSliceByProductCategoryUserId(Long userId, Pageable pageable);
+
+    Slice<SellModel> findSliceByProductCategoryUserIdAndCreatedAtAfterAndCreatedAtBefore(
+            Long userId,
+            LocalDateTime from,
+            LocalDateTime to,
+            Pageable pageable);
+
+    Slice<SellModel> findSliceByProductIdAndCreatedAtAfterAndCreatedAtBefore(
+            Long productId,
+            LocalDateTime from,
+            LocalDateTime to,
+            Pageable pageable);
+
+    /**
+     * Sum of count * price * (100 - tax) of sells. tax is a percentage, so the result is 100 times the real income
+     */
+    @Query("select coalesce(sum(m.count * m.price * (100 - m.tax)), 0) from SellModel m " +
+            "where m.product.category.user.id = :userId and m.createdAt > :from and m.createdAt < :to")
+    BigDecimal sumIncomesPercentOfUserFromDateTo(Long userId, LocalDateTime from, LocalDateTime to);
+
+    /**
+     * @return sum of count * price of sells excluding their tax
+     */
+    default BigDecimal sumIncomesOfUserFromDateTo(Long userId, LocalDateTime from, LocalDateTime to) {
+        return sumIncomesPercentOfUserFromDateTo(userId, from, to).movePointLeft(2);
+    }
+
+    /**
+     * Incomes of user per day, week or month. Amounts are 100 times the real value
+     */
+    @Query(nativeQuery = true, value = "select t.bucket, sum(t.amount) from (" +
+            "select " + BUCKET_OF_CREATED_AT + " as bucket, m.count * m.price * (100 - m.tax) as amount " +
+            "from sells m join products p on p.id = m.product_id join categories c on c.id = p.cat_id " +
+            "where c.user_id = :userId and m.created_at > :from and m.created_at < :to) t " +
+            "group by t.bucket order by t.bucket")
+    List<Object[]> sumIncomesPercentRowsOfUserByBucket(Long userId, LocalDateTime from, LocalDateTime to, String unit);
+
+    default List<BucketAmountDto> sumIncomesOfUserByBucket(Long userId, LocalDateTime from, LocalDateTime to,
+                                                          String unit) {
+        return sumIncomesPercentRowsOfUserByBucket(userId, from, to, unit).stream()
+                .map(BucketAmountDto::fromRow)
+                .map(amount -> new BucketAmountDto(amount.bucket(), amount.amount().movePointLeft(2)))
+                .toList();
+    }
+
+    /**
+     * Records of user between the dates in creation order. Rows are read from a database cursor, a fetch size at a
+     * time, and are not managed, so memory doesn't grow with the history. Needs a surrounding transaction
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select new ir.darkdeveloper.anbarinoo.model.SellModel(m.id, m.count, m.price, m.tax, m.product.id, m.createdAt, m.updatedAt) " +
+            "from SellModel m where m.product.category.user.id = :userId and m.createdAt > :from and m.createdAt < :to " +
+            "order by m.createdAt, m.id")
+    Stream<SellModel> streamAllOfUserFromDateTo(Long userId, LocalDateTime from, LocalDateTime to);
+
+    /**
+     * All records of user, read like {@link #streamAllOfUserFromDateTo}. Needs a surrounding transaction
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select new ir.darkdeveloper.anbarinoo.model.SellModel(m.id, m.count, m.price, m.tax, m.product.id, m.createdAt, m.updatedAt) " +
+            "from SellModel m where m.product.category.user.id = :userId")
+    Stream<SellModel> streamAllOfUser(Long userId);
+
+    /**
+     * All records of the product, read like {@link #streamAllOfUserFromDateTo}. Needs a surrounding transaction
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select new ir.darkdeveloper.anbarinoo.model.SellModel(m.id, m.count, m.price, m.tax, m.product.id, m.createdAt, m.updatedAt) " +
+            "from SellModel m where m.product.id = :productId")
+    Stream<SellModel> streamAllOfProduct(Long productId);
 
+    /**
+     * All records of the products of the categories, read like {@link #streamAllOfUserFromDateTo}. Needs a
+     * surrounding transaction
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select new ir.darkdeveloper.anbarinoo.model.SellModel(m.id, m.count, m.price, m.tax, m.product.id, m.createdAt, m.updatedAt) " +
+            "from SellModel m where m.product.category.id in :categoryIds")
+    Stream<SellModel> streamAllOfCategories(Collection<Long> categoryIds);
 }
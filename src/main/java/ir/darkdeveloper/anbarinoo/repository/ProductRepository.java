@@ -2,13 +2,23 @@ package ir.darkdeveloper.anbarinoo.repository;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import ir.darkdeveloper.anbarinoo.dto.Cursor;
 import ir.darkdeveloper.anbarinoo.model.ProductModel;
 
+import javax.persistence.QueryHint;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 
 @Repository
@@ -23,8 +33,69 @@ public interface ProductRepository extends PagingAndSortingRepository<ProductMod
             "where m.category.user.id = :userId")
     Page<ProductModel> findAllByUserId(Long userId, Pageable pageable);
 
+    // fetches one more product than the page size instead of counting all of them
+    @Query("select m from ProductModel m " +
+            "where m.category.user.id = :userId")
+    Slice<ProductModel> findSliceByUserId(Long userId, Pageable pageable);
+
+    // no index of the user and (createdAt, id), so every page sorts all products of the user
+    @Query("select m from ProductModel m where m.category.user.id = :userId" + Cursor.AFTER + Cursor.ORDER)
+    List<ProductModel> findAllByUserIdAfter(Long userId, LocalDateTime createdAt, Long id, Pageable pageable);
+
     @Query("select m from ProductModel m " +
             "where m.category.user.id = :userId")
     List<ProductModel> findAllByUserId(Long userId);
 
+    /**
+     * Products of user in id order, without their category and images. Rows are read from a database cursor, a
+     * fetch size at a time, and products are not managed, so the persistence context doesn't grow while streaming.
+     * Needs a surrounding transaction
+     */
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select new ir.darkdeveloper.anbarinoo.model.ProductModel(m.id, m.name, m.description, m.price, " +
+            "m.tax, m.totalCount, m.createdAt, m.updatedAt) from ProductModel m " +
+            "where m.category.user.id = :userId order by m.id")
+    Stream<ProductModel> streamAllByUserId(Long userId);
+
+    /**
+     * Takes the count out of the stock of user's product in a single statement, only if there is enough left.
+     * Persistence context is flushed before, but a loaded product keeps its old total count until it is refreshed
+     *
+     * @return affected rows. 0 means the product doesn't exist, belongs to another user or is out of stock
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query("update ProductModel m set m.totalCount = m.totalCount - :count, m.canUpdate = false, " +
+            "m.updatedAt = current_timestamp " +
+            "where m.id = :id and m.totalCount >= :count " +
+            "and m.category.id in (select c.id from CategoryModel c where c.user.id = :userId)")
+    int decreaseTotalCount(Long id, Long userId, BigDecimal count);
+
+    /**
+     * Adds the count to the stock of user's product in a single statement, like {@link #decreaseTotalCount}
+     *
+     * @return affected rows. 0 means the product doesn't exist or belongs to another user
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query("update ProductModel m set m.totalCount = m.totalCount + :count, m.canUpdate = false, " +
+            "m.updatedAt = current_timestamp " +
+            "where m.id = :id " +
+            "and m.category.id in (select c.id from CategoryModel c where c.user.id = :userId)")
+    int increaseTotalCount(Long id, Long userId, BigDecimal count);
+
+    /**
+     * Sets first buy of the new products in a single statement, instead of an update per product. Persistence
+     * context is flushed before and cleared afterwards, so imports don't keep the saved rows in memory
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update ProductModel m set m.firstBuyId = " +
+            "(select min(b.id) from BuyModel b where b.product.id = m.id) " +
+            "where m.id in :ids")
+    int setFirstBuyIds(List<Long> ids);
+
+    @Query("select m.id from ProductModel m where m.id in :ids and m.category.user.id = :userId")
+    List<Long> findIdsOfUser(Collection<Long> ids, Long userId);
+
 }
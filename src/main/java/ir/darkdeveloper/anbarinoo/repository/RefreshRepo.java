@@ -9,6 +9,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import ir.darkdeveloper.anbarinoo.model.RefreshModel;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -27,8 +28,9 @@ public interface RefreshRepo extends JpaRepository<RefreshModel, Long> {
     @Query("SELECT model.id FROM RefreshModel model WHERE model.userId=:id")
     Long getIdByUserId(@Param("id") Long adminId);
 
-    @Query("SELECT model.userId FROM RefreshModel model WHERE model.refreshToken = ?1")
-    Optional<Long> findUserIdByRefreshToken(String refreshToken);
+    Optional<RefreshModel> findByRefreshTokenHash(String refreshTokenHash);
+
+    List<RefreshModel> findAllByRefreshTokenHashIsNullAndRefreshTokenIsNotNull();
 
 
 }
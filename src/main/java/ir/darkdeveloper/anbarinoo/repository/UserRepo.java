@@ -1,5 +1,6 @@
 package ir.darkdeveloper.anbarinoo.repository;
 
+import java.util.List;
 import java.util.Optional;
 
 import org.springframework.data.domain.Page;
@@ -28,10 +29,17 @@ public interface UserRepo extends PagingAndSortingRepository<UserModel, Long> {
     @Query("update UserModel m set m.enabled = :value where m.id = :id")
     void updateEnabledById(Long id, Boolean value);
 
+    @Modifying
+    @Query("update UserModel m set m.password = :password where m.id = :id")
+    void updatePasswordById(Long id, String password);
+
     @Query("select new UserModel (model.id, model.email, model.userName, model.enabled, model.shopImage," +
             " model.profileImage, model.shopName, model.createdAt, model.updatedAt, model.address," +
             " model.description, model.provider)" +
             " from UserModel as model where model.id = :id")
     Optional<UserModel> getSimpleUserInfo(@Param("id") Long id);
 
+    @Query("select model.id from UserModel model")
+    List<Long> findAllIds();
+
 }
@@ -0,0 +1,98 @@
+package ir.darkdeveloper.anbarinoo.security.jwt;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.SignatureException;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Signs and verifies tokens with keys that are derived once from the configured secrets. The same secrets give
+ * the same keys, so tokens stay valid after a restart. New tokens have the kid of the active key in their header,
+ * the parser picks the key of a token by its kid
+ */
+@Component
+public class JwtCodec {
+
+    private static final String NO_KID = "";
+    // the default secret that was committed to the repository
+    private static final String PUBLIC_SECRET = "RandomSecret";
+    public static final int MIN_SECRET_BYTES = 32;
+    private static final SignatureAlgorithm ALGORITHM = SignatureAlgorithm.HS256;
+
+    private final Map<String, Key> keys = new HashMap<>();
+    private final String activeKid;
+    private final Key activeKey;
+    // configured parsers don't change, so it is shared by all threads
+    private final JwtParser parser;
+
+    public JwtCodec(JwtProperties properties) {
+        if (properties.secretKey() != null && !properties.secretKey().isEmpty())
+            keys.put(NO_KID, deriveKey("jwt.secret-key", properties.secretKey()));
+        properties.keys().forEach((kid, secret) -> keys.put(kid, deriveKey("jwt.keys." + kid, secret)));
+        activeKid = properties.keys().isEmpty() ? NO_KID : properties.activeKey();
+        activeKey = keys.get(activeKid);
+        if (activeKey == null)
+            throw new IllegalStateException("jwt.active-key should be one of jwt.keys, or jwt.secret-key be set. " +
+                    "Set the JWT_SECRET_KEY environment variable to a random secret of at least " +
+                    MIN_SECRET_BYTES + " bytes");
+
+        parser = Jwts.parser().setSigningKeyResolver(new SigningKeyResolverAdapter() {
+            @Override
+            @SuppressWarnings("rawtypes")
+            public Key resolveSigningKey(JwsHeader header, Claims claims) {
+                var kid = header.getKeyId() == null ? NO_KID : header.getKeyId();
+                var key = keys.get(kid);
+                if (key == null)
+                    throw new SignatureException("Unknown key of token: " + kid);
+                return key;
+            }
+        });
+    }
+
+    /**
+     * @return a builder that signs with the active key
+     */
+    public JwtBuilder builder() {
+        var builder = Jwts.builder().signWith(ALGORITHM, activeKey);
+        if (!activeKid.equals(NO_KID))
+            builder.setHeaderParam(JwsHeader.KEY_ID, activeKid);
+        return builder;
+    }
+
+    /**
+     * Verifies the signature and expiration of token
+     */
+    public Claims parse(String token) throws JwtException {
+        return parser.parseClaimsJws(token).getBody();
+    }
+
+    /**
+     * Keys are only as strong as their secrets, so the public default and short secrets are rejected
+     */
+    private static Key deriveKey(String name, String secret) {
+        if (secret == null || PUBLIC_SECRET.equals(secret)
+                || secret.getBytes(StandardCharsets.UTF_8).length < MIN_SECRET_BYTES)
+            throw new IllegalStateException(name + " should be a random secret of at least " + MIN_SECRET_BYTES +
+                    " bytes, and not the default one");
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(secret.getBytes(StandardCharsets.UTF_8));
+            return new SecretKeySpec(digest, ALGORITHM.getJcaName());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,16 +1,18 @@
 package ir.darkdeveloper.anbarinoo.security.jwt;
 
+import io.jsonwebtoken.Claims;
 import ir.darkdeveloper.anbarinoo.exception.ForbiddenException;
 import ir.darkdeveloper.anbarinoo.exception.NoContentException;
 import ir.darkdeveloper.anbarinoo.model.RefreshModel;
-import ir.darkdeveloper.anbarinoo.model.UserModel;
 import ir.darkdeveloper.anbarinoo.service.RefreshService;
 import ir.darkdeveloper.anbarinoo.util.JwtUtils;
 import ir.darkdeveloper.anbarinoo.util.UserUtils.UserAuthUtils;
-import lombok.AllArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -20,79 +22,134 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.List;
 import java.util.Optional;
 
 @Service
-@AllArgsConstructor(onConstructor = @__(@Lazy))
 public class JwtFilter extends OncePerRequestFilter {
 
-    @Lazy
     private final JwtUtils jwtUtils;
     private final UserAuthUtils userAuthUtils;
     private final RefreshService refreshService;
+    private final UserPrincipalCache principalCache;
+    private final TokenRevocations revocations;
+    private final JwtProperties jwtProperties;
+
+    @Autowired
+    public JwtFilter(@Lazy JwtUtils jwtUtils, @Lazy UserAuthUtils userAuthUtils, @Lazy RefreshService refreshService,
+                     @Lazy UserPrincipalCache principalCache, @Lazy TokenRevocations revocations,
+                     JwtProperties jwtProperties) {
+        this.jwtUtils = jwtUtils;
+        this.userAuthUtils = userAuthUtils;
+        this.refreshService = refreshService;
+        this.principalCache = principalCache;
+        this.revocations = revocations;
+        this.jwtProperties = jwtProperties;
+    }
 
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, @NonNull HttpServletResponse response,
                                     @NonNull FilterChain filterChain) throws ServletException, IOException {
 
-        var refreshToken = Optional.ofNullable(request.getHeader("refresh_token"));
         var accessToken = Optional.ofNullable(request.getHeader("access_token"));
+        var accessClaims = accessToken.flatMap(jwtUtils::getValidClaims);
+        var revoked = accessClaims.filter(this::isRevoked).isPresent();
 
-        if (refreshToken.isPresent() && accessToken.isPresent()
-                && !jwtUtils.isTokenExpired(refreshToken.get())) {
+        if (jwtProperties.statelessAccess() && accessClaims.isPresent() && !revoked
+                && authenticateStateless(request, accessClaims.get())) {
+            filterChain.doFilter(request, response);
+            return;
+        }
 
-            var username = jwtUtils.getUsername(refreshToken.get());
-            var userId = ((Integer) jwtUtils.getAllClaimsFromToken(refreshToken.get())
-                    .get("user_id")).longValue();
-            authenticateUser(username, userId);
-            setUpHeader(response, refreshToken.get(), accessToken.get(), username, userId);
+        // the refresh token is parsed only here, services get the principal from the request
+        var principal = accessToken.flatMap(token -> jwtUtils.getPrincipal(request));
+        if (principal.isPresent()) {
+            authenticateUser(principal.get().username(), principal.get().userId());
+            // expired, invalid and revoked access tokens are compared with the stored ones
+            if (accessClaims.isEmpty() || revoked)
+                setUpHeader(request, response, principal.get(), accessToken.get());
         }
         filterChain.doFilter(request, response);
     }
 
+    /**
+     * Authenticates with the id and authorities in a valid access token, without querying the database
+     *
+     * @return false if the token doesn't have them, like the ones that are issued before they were added
+     */
+    private boolean authenticateStateless(HttpServletRequest request, Claims claims) {
+        if (!(claims.get(JwtUtils.USER_ID_CLAIM) instanceof Number id)
+                || !(claims.get(JwtUtils.AUTHORITIES_CLAIM) instanceof List<?> names))
+            return false;
+        var userId = id.longValue();
+        // services get the user from the refresh token, it should be of the same user
+        jwtUtils.getPrincipal(request)
+                .filter(refreshPrincipal -> !refreshPrincipal.userId().equals(userId))
+                .ifPresent(refreshPrincipal -> {
+                    throw new ForbiddenException("Do not change token. I'm watching you");
+                });
+        if (SecurityContextHolder.getContext().getAuthentication() == null) {
+            var authorities = names.stream()
+                    .<GrantedAuthority>map(name -> new SimpleGrantedAuthority(name.toString()))
+                    .toList();
+            var principal = new UserPrincipal(userId, claims.getSubject(), null, authorities, true);
+            var upToken = new UsernamePasswordAuthenticationToken(principal, null, authorities);
+            SecurityContextHolder.getContext().setAuthentication(upToken);
+        }
+        return true;
+    }
+
+    private boolean isRevoked(Claims claims) {
+        return claims.get(JwtUtils.USER_ID_CLAIM) instanceof Number id
+                && revocations.isRevoked(id.longValue(), claims.getIssuedAt());
+    }
 
     private void authenticateUser(String username, Long userId) {
         var auth = SecurityContextHolder.getContext().getAuthentication();
         if (username != null && auth == null) {
-            //db query
-            var userDetails = userAuthUtils.loadUserByUsername(username)
-                    .orElseThrow(() -> new NoContentException("User does not exist"));
-            var userModel = (UserModel) userDetails;
-            if (!userModel.getId().equals(userId))
-                throw new ForbiddenException("Do not change token. I'm watching you");
-
-            var upToken = new UsernamePasswordAuthenticationToken(userDetails, null,
-                    userDetails.getAuthorities());
+            var principal = loadPrincipal(username, userId);
+            var upToken = new UsernamePasswordAuthenticationToken(principal, null, principal.authorities());
             SecurityContextHolder.getContext().setAuthentication(upToken);
         }
     }
 
-    private void setUpHeader(HttpServletResponse response, String refreshToken,
-                             String accessToken, String username, Long userId) {
-
-
-        // if this didn't execute, it means the access token is still valid
-        if (jwtUtils.isTokenExpired(accessToken)) {
-            //db query
-            var storedRefreshModel = refreshService.getRefreshByUserId(userId);
-            var storedAccessToken = storedRefreshModel.getAccessToken();
-            var storedRefreshToken = storedRefreshModel.getRefreshToken();
-            if (accessToken.equals(storedAccessToken) && storedRefreshToken.equals(refreshToken)) {
-                var newAccessToken = jwtUtils.generateAccessToken(username);
-                var refreshModel = new RefreshModel();
-                refreshModel.setAccessToken(newAccessToken);
-                refreshModel.setRefreshToken(storedRefreshToken);
-                refreshModel.setUserId(userId);
-                refreshModel.setId(storedRefreshModel.getId());
-                // db query
-                refreshService.saveToken(refreshModel);
-                response.addHeader("access_token", newAccessToken);
-            } else
-                //if stored token is not equal with user send token, it will return 403
-                SecurityContextHolder.getContext().setAuthentication(null);
+    private UserPrincipal loadPrincipal(String username, Long userId) {
+        // db query when the principal of user is not cached
+        var principal = principalCache.get(userId, () -> userAuthUtils.loadUserByUsername(username)
+                        .map(userAuthUtils::toPrincipal))
+                .orElseThrow(() -> new NoContentException("User does not exist"));
+        if (!principal.userId().equals(userId) || !principal.hasName(username))
+            throw new ForbiddenException("Do not change token. I'm watching you");
+        return principal;
+    }
 
-        }
+    private void setUpHeader(HttpServletRequest request, HttpServletResponse response, RequestPrincipal principal,
+                             String accessToken) {
+        var refreshToken = principal.refreshToken();
+        var username = principal.username();
+        var userId = principal.userId();
+
+        //db query
+        var storedRefreshModel = refreshService.getRefreshByUserId(userId);
+        var storedAccessToken = storedRefreshModel.getAccessToken();
+        var storedRefreshToken = storedRefreshModel.getRefreshToken();
+        // ownership checks of this request don't need to query the stored token again
+        jwtUtils.setPrincipal(request, principal.withTokenBound(storedRefreshToken.equals(refreshToken)));
+        if (accessToken.equals(storedAccessToken) && storedRefreshToken.equals(refreshToken)) {
+            var newAccessToken = jwtUtils.generateAccessToken(username, userId,
+                    loadPrincipal(username, userId).authorities());
+            var refreshModel = new RefreshModel();
+            refreshModel.setAccessToken(newAccessToken);
+            refreshModel.setRefreshToken(storedRefreshToken);
+            refreshModel.setUserId(userId);
+            refreshModel.setId(storedRefreshModel.getId());
+            // db query
+            refreshService.saveToken(refreshModel);
+            response.addHeader("access_token", newAccessToken);
+        } else
+            //if stored token is not equal with user send token, it will return 403
+            SecurityContextHolder.getContext().setAuthentication(null);
     }
 
 }
@@ -0,0 +1,22 @@
+package ir.darkdeveloper.anbarinoo.security.jwt;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.util.Map;
+
+/**
+ * @param secretKey       secret of the tokens that have no kid header, and of the new tokens when keys is empty
+ * @param activeKey       kid of the key in keys that signs the new tokens
+ * @param keys            secrets by kid. Tokens of all of them are verified, so a key can be rotated by adding a
+ *                        new one and making it active, and removed when the tokens of the old one are expired
+ * @param statelessAccess valid access tokens authenticate users with their claims, without querying the database
+ */
+@ConfigurationProperties(prefix = "jwt")
+public record JwtProperties(String secretKey, String activeKey, Map<String, String> keys,
+                            @DefaultValue("true") Boolean statelessAccess) {
+
+    public JwtProperties {
+        keys = keys == null ? Map.of() : keys;
+    }
+}
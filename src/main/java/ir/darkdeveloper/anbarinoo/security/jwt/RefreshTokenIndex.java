@@ -0,0 +1,171 @@
+package ir.darkdeveloper.anbarinoo.security.jwt;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import ir.darkdeveloper.anbarinoo.model.RefreshModel;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Size and time bounded copy of the tokens table, found by user id or by the hash of refresh token. Writes of
+ * the table go through it, a token that is loaded while a write happens isn't cached
+ */
+@Component
+public class RefreshTokenIndex {
+
+    private record Entry(RefreshModel token, long expiresAt) {
+    }
+
+    private final Map<Long, Entry> byUserId;
+    private final Map<String, Long> userIdsByHash = new HashMap<>();
+    // increased by every write, loads that started before a write may have read old data
+    private final AtomicLong writeCount = new AtomicLong();
+    private final long ttlNanos;
+    private final Counter hits;
+    private final Counter misses;
+
+    public RefreshTokenIndex(RefreshTokenIndexProperties properties, MeterRegistry meterRegistry) {
+        ttlNanos = properties.ttl().toNanos();
+        hits = meterRegistry.counter("refresh.token.index", "result", "hit");
+        misses = meterRegistry.counter("refresh.token.index", "result", "miss");
+        var maxSize = properties.size();
+        byUserId = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                var full = size() > maxSize;
+                if (full)
+                    userIdsByHash.remove(eldest.getValue().token().getRefreshTokenHash());
+                return full;
+            }
+        };
+        Gauge.builder("refresh.token.index.size", this, RefreshTokenIndex::size).register(meterRegistry);
+    }
+
+    /**
+     * @param token loads the token of user when it is not cached
+     * @return a copy, so callers can change it
+     */
+    public Optional<RefreshModel> getByUserId(Long userId, Supplier<Optional<RefreshModel>> token) {
+        synchronized (byUserId) {
+            var cached = find(userId);
+            if (cached.isPresent())
+                return cached;
+        }
+        return load(token);
+    }
+
+    /**
+     * @param token loads the token by its hash when it is not cached
+     * @return a copy, so callers can change it
+     */
+    public Optional<RefreshModel> getByHash(String hash, Supplier<Optional<RefreshModel>> token) {
+        synchronized (byUserId) {
+            var userId = userIdsByHash.get(hash);
+            var cached = userId == null ? Optional.<RefreshModel>empty() : find(userId);
+            if (cached.isPresent())
+                return cached;
+        }
+        return load(token);
+    }
+
+    /**
+     * Caches the saved token of user. Inside a transaction it is cached after commit, and evicted until then
+     */
+    public void put(RefreshModel token) {
+        var copy = new RefreshModel(token);
+        evict(copy.getUserId());
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    write(copy.getUserId(), copy);
+                }
+            });
+        else
+            write(copy.getUserId(), copy);
+    }
+
+    /**
+     * Evicts the token of user. Inside a transaction, it happens after commit too
+     */
+    public void evictUser(Long userId) {
+        evict(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(userId);
+                }
+            });
+    }
+
+    public int size() {
+        synchronized (byUserId) {
+            return byUserId.size();
+        }
+    }
+
+    // callers hold the lock
+    private Optional<RefreshModel> find(Long userId) {
+        var entry = byUserId.get(userId);
+        if (entry != null && entry.expiresAt() - System.nanoTime() > 0) {
+            hits.increment();
+            return Optional.of(new RefreshModel(entry.token()));
+        }
+        if (entry != null)
+            remove(userId);
+        return Optional.empty();
+    }
+
+    private Optional<RefreshModel> load(Supplier<Optional<RefreshModel>> token) {
+        misses.increment();
+        var writes = writeCount.get();
+        var loaded = token.get();
+        loaded.filter(t -> t.getUserId() != null).ifPresent(t -> {
+            synchronized (byUserId) {
+                if (writeCount.get() == writes)
+                    cache(new RefreshModel(t));
+            }
+        });
+        return loaded;
+    }
+
+    private void evict(Long userId) {
+        write(userId, null);
+    }
+
+    private void write(Long userId, RefreshModel token) {
+        synchronized (byUserId) {
+            writeCount.incrementAndGet();
+            remove(userId);
+            if (token != null)
+                cache(token);
+        }
+    }
+
+    // callers hold the lock
+    private void cache(RefreshModel token) {
+        if (token.getRefreshTokenHash() == null && token.getRefreshToken() != null)
+            token.setRefreshTokenHash(RefreshModel.hashToken(token.getRefreshToken()));
+        remove(token.getUserId());
+        byUserId.put(token.getUserId(), new Entry(token, System.nanoTime() + ttlNanos));
+        if (token.getRefreshTokenHash() != null)
+            userIdsByHash.put(token.getRefreshTokenHash(), token.getUserId());
+    }
+
+    // callers hold the lock
+    private void remove(Long userId) {
+        var entry = byUserId.remove(userId);
+        if (entry != null && entry.token().getRefreshTokenHash() != null)
+            userIdsByHash.remove(entry.token().getRefreshTokenHash());
+    }
+}
@@ -0,0 +1,16 @@
+package ir.darkdeveloper.anbarinoo.security.jwt;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * @param size max cached tokens of users, least recently used ones are evicted first
+ * @param ttl  time a cached token is valid since it is loaded, for changes that are made by other instances of app
+ */
+@ConfigurationProperties(prefix = "security.refresh-index")
+public record RefreshTokenIndexProperties(@DefaultValue("10000") Integer size,
+                                          @DefaultValue("10m") Duration ttl) {
+
+}
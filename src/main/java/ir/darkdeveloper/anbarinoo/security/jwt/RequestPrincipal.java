@@ -0,0 +1,17 @@
+package ir.darkdeveloper.anbarinoo.security.jwt;
+
+/**
+ * Verified refresh token of a request. It is parsed once, by {@link JwtFilter} or the first ownership check, and
+ * kept as an attribute of the request for the rest of it
+ *
+ * @param tokenBound whether the token is the one stored for the user, null until it is checked against the
+ *                   stored tokens
+ */
+public record RequestPrincipal(Long userId, String username, String refreshToken, Boolean tokenBound) {
+
+    public static final String ATTRIBUTE = RequestPrincipal.class.getName();
+
+    public RequestPrincipal withTokenBound(Boolean tokenBound) {
+        return new RequestPrincipal(userId, username, refreshToken, tokenBound);
+    }
+}
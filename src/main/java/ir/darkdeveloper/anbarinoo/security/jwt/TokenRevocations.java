@@ -0,0 +1,56 @@
+package ir.darkdeveloper.anbarinoo.security.jwt;
+
+import ir.darkdeveloper.anbarinoo.util.JwtUtils;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Access tokens that are issued before a logout or password change of user, or before a change of roles. They
+ * are not trusted on their own anymore, so {@link JwtFilter} compares them with the stored tokens. An access token
+ * lives a short time, so a revocation is kept only as long as the tokens it revokes can be valid
+ */
+@Component
+public class TokenRevocations {
+
+    private final JwtUtils jwtUtils;
+    private final Map<Long, Long> revokedAtOfUsers = new ConcurrentHashMap<>();
+    private volatile long allRevokedAt;
+
+    public TokenRevocations(@Lazy JwtUtils jwtUtils) {
+        this.jwtUtils = jwtUtils;
+    }
+
+    public void revokeUser(Long userId) {
+        revokedAtOfUsers.put(userId, System.currentTimeMillis());
+    }
+
+    public void revokeAll() {
+        allRevokedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Issue dates of tokens are in seconds, so a token issued in the same second as a revocation is revoked too
+     */
+    public boolean isRevoked(Long userId, Date issuedAt) {
+        if (issuedAt == null)
+            return true;
+        var revokedAt = Math.max(allRevokedAt, revokedAtOfUsers.getOrDefault(userId, 0L));
+        return issuedAt.getTime() <= revokedAt;
+    }
+
+    public int size() {
+        return revokedAtOfUsers.size();
+    }
+
+    @Scheduled(fixedDelay = 60_000)
+    public void deleteExpiredRevocations() {
+        // one more second for the issue dates that are rounded down
+        var validSince = System.currentTimeMillis() - jwtUtils.getAccessExpire() - 1000;
+        revokedAtOfUsers.values().removeIf(revokedAt -> revokedAt < validSince);
+    }
+}
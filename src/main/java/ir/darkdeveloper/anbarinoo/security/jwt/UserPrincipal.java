@@ -0,0 +1,32 @@
+package ir.darkdeveloper.anbarinoo.security.jwt;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.List;
+
+/**
+ * What the filter needs to authenticate a user, without the password and the other columns of user
+ *
+ * @param username email of user, or username of admin
+ * @param userName the other name that a user can log in with, null for admin
+ */
+public record UserPrincipal(Long userId, String username, String userName, List<GrantedAuthority> authorities,
+                            boolean enabled) {
+
+    public UserPrincipal {
+        authorities = List.copyOf(authorities);
+    }
+
+    public static UserPrincipal of(Long userId, UserDetails details, String userName) {
+        return new UserPrincipal(userId, details.getUsername(), userName,
+                List.copyOf(details.getAuthorities()), details.isEnabled());
+    }
+
+    /**
+     * @param name the name that is in the token, user could log in with email or user name
+     */
+    public boolean hasName(String name) {
+        return name.equals(username) || name.equals(userName);
+    }
+}
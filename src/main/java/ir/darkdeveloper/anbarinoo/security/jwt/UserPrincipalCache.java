@@ -0,0 +1,114 @@
+package ir.darkdeveloper.anbarinoo.security.jwt;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Size and time bounded cache of the principals that {@link JwtFilter} authenticates, keyed by user id. Changes of
+ * users and roles evict them, a principal that is loaded while an eviction happens isn't cached
+ */
+@Component
+public class UserPrincipalCache {
+
+    private record Entry(UserPrincipal principal, long expiresAt) {
+    }
+
+    private final Map<Long, Entry> principals;
+    // increased by every eviction, loads that started before an eviction may have read old data
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final long ttlNanos;
+    private final Counter hits;
+    private final Counter misses;
+
+    public UserPrincipalCache(UserPrincipalCacheProperties properties, MeterRegistry meterRegistry) {
+        ttlNanos = properties.ttl().toNanos();
+        hits = meterRegistry.counter("user.principal.cache", "result", "hit");
+        misses = meterRegistry.counter("user.principal.cache", "result", "miss");
+        var maxSize = properties.size();
+        principals = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+        Gauge.builder("user.principal.cache.size", this, UserPrincipalCache::size).register(meterRegistry);
+    }
+
+    /**
+     * @param principal loads the principal when it is not cached
+     */
+    public Optional<UserPrincipal> get(Long userId, Supplier<Optional<UserPrincipal>> principal) {
+        var now = System.nanoTime();
+        synchronized (principals) {
+            var entry = principals.get(userId);
+            if (entry != null && entry.expiresAt() - now > 0) {
+                hits.increment();
+                return Optional.of(entry.principal());
+            }
+            if (entry != null)
+                principals.remove(userId);
+        }
+        misses.increment();
+        var evictions = evictionCount.get();
+        var loaded = principal.get();
+        loaded.ifPresent(p -> {
+            synchronized (principals) {
+                if (evictionCount.get() == evictions)
+                    principals.put(userId, new Entry(p, now + ttlNanos));
+            }
+        });
+        return loaded;
+    }
+
+    /**
+     * Evicts the principal of user. Inside a transaction, it happens after commit too, so a principal that is
+     * loaded before the commit doesn't stay cached
+     */
+    public void evictUser(Long userId) {
+        afterCommitToo(() -> {
+            synchronized (principals) {
+                evictionCount.incrementAndGet();
+                principals.remove(userId);
+            }
+        });
+    }
+
+    /**
+     * Roles are shared by users, so a change of a role evicts all of the principals
+     */
+    public void evictAll() {
+        afterCommitToo(() -> {
+            synchronized (principals) {
+                evictionCount.incrementAndGet();
+                principals.clear();
+            }
+        });
+    }
+
+    public int size() {
+        synchronized (principals) {
+            return principals.size();
+        }
+    }
+
+    private void afterCommitToo(Runnable eviction) {
+        eviction.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    eviction.run();
+                }
+            });
+    }
+}
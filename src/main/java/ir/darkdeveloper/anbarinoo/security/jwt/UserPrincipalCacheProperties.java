@@ -0,0 +1,16 @@
+package ir.darkdeveloper.anbarinoo.security.jwt;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * @param size max cached principals, least recently used ones are evicted first
+ * @param ttl  time a cached principal is valid since it is loaded, for changes that are not made by this app
+ */
+@ConfigurationProperties(prefix = "security.principal-cache")
+public record UserPrincipalCacheProperties(@DefaultValue("10000") Integer size,
+                                           @DefaultValue("10m") Duration ttl) {
+
+}
@@ -71,7 +71,7 @@ public class OAuth2SuccessHandler extends SimpleUrlAuthenticationSuccessHandler
     private void headerSetup(HttpServletResponse response, Authentication authentication) {
         var user = (UserModel) userService.loadUserByUsername(authentication.getName());
         var refreshToken = jwtUtils.generateRefreshToken(user.getEmail(), user.getId());
-        var accessToken = jwtUtils.generateAccessToken(user.getEmail());
+        var accessToken = jwtUtils.generateAccessToken(user.getEmail(), user.getId(), user.getAuthorities());
 
         userAuthUtils.setupHeader(response, accessToken, refreshToken);
     }
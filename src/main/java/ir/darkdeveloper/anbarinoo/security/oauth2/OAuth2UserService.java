@@ -10,15 +10,18 @@ import org.springframework.stereotype.Service;
 import ir.darkdeveloper.anbarinoo.model.AuthProvider;
 import ir.darkdeveloper.anbarinoo.model.UserModel;
 import ir.darkdeveloper.anbarinoo.repository.UserRepo;
+import ir.darkdeveloper.anbarinoo.security.jwt.UserPrincipalCache;
 
 @Service
 public class OAuth2UserService extends DefaultOAuth2UserService {
 
     private final UserRepo repo;
+    private final UserPrincipalCache principalCache;
 
     @Autowired
-    public OAuth2UserService(UserRepo repo) {
+    public OAuth2UserService(UserRepo repo, UserPrincipalCache principalCache) {
         this.repo = repo;
+        this.principalCache = principalCache;
     }
 
     @Override
@@ -34,6 +37,8 @@ public class OAuth2UserService extends DefaultOAuth2UserService {
         user.setProfileImage(oAuth2User.getAttribute("picture"));
         user.setProvider(AuthProvider.GOOGLE);
         repo.save(user);
+        // enabled may be changed
+        principalCache.evictUser(user.getId());
         return user;
     }
 
@@ -0,0 +1,20 @@
+package ir.darkdeveloper.anbarinoo.security.password;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * @param threads       threads that hash and verify passwords, number of cpu cores when it is 0
+ * @param queueCapacity waiting hashes, more are rejected until a thread is free
+ * @param strength      cost of bcrypt, passwords with another cost are hashed again on login
+ * @param retryAfter    sent to the clients whose hashes are rejected
+ */
+@ConfigurationProperties(prefix = "security.password-hashing")
+public record PasswordHashingProperties(@DefaultValue("0") Integer threads,
+                                        @DefaultValue("100") Integer queueCapacity,
+                                        @DefaultValue("12") Integer strength,
+                                        @DefaultValue("2s") Duration retryAfter) {
+
+}
@@ -0,0 +1,105 @@
+package ir.darkdeveloper.anbarinoo.security.password;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import ir.darkdeveloper.anbarinoo.exception.InternalServerException;
+import ir.darkdeveloper.anbarinoo.exception.ServiceUnavailableException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Bcrypt encoder that hashes and verifies passwords on its own pool, sized to the cpu cores. A login storm then
+ * waits in a bounded queue instead of holding all of the request threads, and is rejected with 503 when the queue
+ * is full
+ */
+@Component
+public class PooledPasswordEncoder implements PasswordEncoder, DisposableBean {
+
+    private final BCryptPasswordEncoder encoder;
+    private final ThreadPoolTaskExecutor threadPool;
+    private final int strength;
+    private final Duration retryAfter;
+    private final Timer queueWait;
+    private final Timer encodes;
+    private final Timer matches;
+    private final Counter rejections;
+
+    public PooledPasswordEncoder(PasswordHashingProperties properties, MeterRegistry meterRegistry) {
+        strength = properties.strength();
+        encoder = new BCryptPasswordEncoder(strength);
+        retryAfter = properties.retryAfter();
+        var threads = properties.threads() > 0 ? properties.threads() : Runtime.getRuntime().availableProcessors();
+        threadPool = new ThreadPoolTaskExecutor();
+        threadPool.setCorePoolSize(threads);
+        threadPool.setMaxPoolSize(threads);
+        threadPool.setQueueCapacity(properties.queueCapacity());
+        threadPool.setThreadNamePrefix("password-hashing-");
+        threadPool.initialize();
+        queueWait = meterRegistry.timer("password.hashing.queue.wait");
+        encodes = meterRegistry.timer("password.hashing", "operation", "encode");
+        matches = meterRegistry.timer("password.hashing", "operation", "matches");
+        rejections = meterRegistry.counter("password.hashing.rejections");
+        Gauge.builder("password.hashing.queue.size", threadPool,
+                pool -> pool.getThreadPoolExecutor().getQueue().size()).register(meterRegistry);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return run(encodes, () -> encoder.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return run(matches, () -> encoder.matches(rawPassword, encodedPassword));
+    }
+
+    /**
+     * @return true when the cost of the hash is not the configured one, even if it is higher
+     */
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        // bcrypt hashes are like $2a$12$..., the cost is after the version
+        if (encodedPassword == null || encodedPassword.length() < 7 || encodedPassword.charAt(3) != '$')
+            return false;
+        try {
+            return Integer.parseInt(encodedPassword.substring(4, 6)) != strength;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private <T> T run(Timer timer, Supplier<T> hashing) {
+        var submittedAt = System.nanoTime();
+        try {
+            return threadPool.submit(() -> {
+                queueWait.record(Duration.ofNanos(System.nanoTime() - submittedAt));
+                return timer.record(hashing);
+            }).get();
+        } catch (TaskRejectedException e) {
+            rejections.increment();
+            throw new ServiceUnavailableException("Server is busy, try again later", retryAfter);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalServerException("Password hashing is interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw new InternalServerException(e.getCause().getLocalizedMessage(), e.getCause());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        threadPool.shutdown();
+    }
+}
@@ -5,6 +5,7 @@ import ir.darkdeveloper.anbarinoo.exception.NoContentException;
 import ir.darkdeveloper.anbarinoo.model.CategoryModel;
 import ir.darkdeveloper.anbarinoo.model.UserModel;
 import ir.darkdeveloper.anbarinoo.repository.CategoryRepo;
+import ir.darkdeveloper.anbarinoo.service.Financial.DailyFinancialSummaryService;
 import ir.darkdeveloper.anbarinoo.util.JwtUtils;
 import ir.darkdeveloper.anbarinoo.util.UserUtils.UserAuthUtils;
 import lombok.RequiredArgsConstructor;
@@ -13,6 +14,8 @@ import org.springframework.stereotype.Service;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.transaction.Transactional;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -24,6 +27,7 @@ public class CategoryService {
     private final CategoryRepo repo;
     private final JwtUtils jwtUtils;
     private final UserAuthUtils userAuthUtils;
+    private final DailyFinancialSummaryService summaryService;
 
 
     /**
@@ -34,7 +38,7 @@ public class CategoryService {
         var category = model.orElseThrow(() -> new BadRequestException("Category can't be empty"));
         model.map(CategoryModel::getId).ifPresent(id -> category.setId(null));
         userAuthUtils.checkUserIsSameUserForRequest(null, req, "save a cat");
-        category.setUser(new UserModel(jwtUtils.getUserId(req.getHeader("refresh_token"))));
+        category.setUser(new UserModel(jwtUtils.getUserId(req)));
         return repo.save(category);
     }
 
@@ -46,20 +50,23 @@ public class CategoryService {
         var category = model.orElseThrow(() -> new BadRequestException("Category can't be empty"));
         var fetchedCategory = getCategoryById(parentId, req);
         userAuthUtils.checkUserIsSameUserForRequest(null, req, "save a sub cat");
-        category.setUser(new UserModel(jwtUtils.getUserId(req.getHeader("refresh_token"))));
+        category.setUser(new UserModel(jwtUtils.getUserId(req)));
         category.setParent(fetchedCategory);
         fetchedCategory.addChild(category);
         return repo.save(category);
     }
 
     public List<CategoryModel> getCategoriesByUser(HttpServletRequest req) {
-        var userId = jwtUtils.getUserId(req.getHeader("refresh_token"));
+        var userId = jwtUtils.getUserId(req);
         return repo.findAllByUserId(userId);
     }
 
     @Transactional
     public String deleteCategory(Long categoryId, HttpServletRequest req) {
         userAuthUtils.checkUserIsSameUserForRequest(null, req, "delete the cat");
+        // sub categories, their products, and buys and sells of the products are deleted by cascade
+        repo.findById(categoryId).ifPresent(category ->
+                summaryService.removeCategories(jwtUtils.getUserId(req), categoryIdsOf(category)));
         repo.deleteById(categoryId);
         return "Deleted the category";
     }
@@ -72,5 +79,16 @@ public class CategoryService {
         return category;
     }
 
+    private List<Long> categoryIdsOf(CategoryModel category) {
+        var ids = new ArrayList<Long>();
+        var categories = new ArrayDeque<CategoryModel>(List.of(category));
+        while (!categories.isEmpty()) {
+            var next = categories.poll();
+            ids.add(next.getId());
+            categories.addAll(next.getChildren());
+        }
+        return ids;
+    }
+
 
 }
@@ -0,0 +1,175 @@
+package ir.darkdeveloper.anbarinoo.service;
+
+import ir.darkdeveloper.anbarinoo.config.StartupConfig;
+import ir.darkdeveloper.anbarinoo.dto.ExportJobDto;
+import ir.darkdeveloper.anbarinoo.dto.FinancialDto;
+import ir.darkdeveloper.anbarinoo.exception.BadRequestException;
+import ir.darkdeveloper.anbarinoo.exception.ForbiddenException;
+import ir.darkdeveloper.anbarinoo.exception.NoContentException;
+import ir.darkdeveloper.anbarinoo.exception.ServiceUnavailableException;
+import ir.darkdeveloper.anbarinoo.util.JwtUtils;
+import ir.darkdeveloper.anbarinoo.util.export.ExportFormat;
+import ir.darkdeveloper.anbarinoo.util.export.ExportJob;
+import ir.darkdeveloper.anbarinoo.util.export.ExportJobProperties;
+import ir.darkdeveloper.anbarinoo.util.export.ExportSources;
+import ir.darkdeveloper.anbarinoo.util.export.ExportType;
+import ir.darkdeveloper.anbarinoo.util.export.ExportWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes exports to files in the background, so big exports don't hold a request open. Jobs are kept in memory
+ * and their files are deleted after the ttl
+ */
+@Service
+@Slf4j
+public class ExportService implements DisposableBean {
+
+    private static final LocalDateTime ALL_TIME_FROM = LocalDate.EPOCH.atStartOfDay();
+
+    private final ExportSources sources;
+    private final JwtUtils jwtUtils;
+    private final ExportJobProperties properties;
+    private final ThreadPoolTaskExecutor threadPool;
+    private final Map<String, ExportJob> jobs = new ConcurrentHashMap<>();
+
+    public ExportService(ExportSources sources, JwtUtils jwtUtils, ExportJobProperties properties)
+            throws IOException {
+        this.sources = sources;
+        this.jwtUtils = jwtUtils;
+        this.properties = properties;
+        Files.createDirectories(properties.directory());
+        threadPool = new ThreadPoolTaskExecutor();
+        threadPool.setCorePoolSize(properties.threads());
+        threadPool.setMaxPoolSize(properties.threads());
+        threadPool.setQueueCapacity(properties.queueCapacity());
+        threadPool.setThreadNamePrefix("export-");
+        threadPool.initialize();
+    }
+
+    /**
+     * Dates of the financial are optional, all records until now are exported without them. Products are
+     * not in a date range
+     *
+     * @param gzip compresses the file with gzip
+     */
+    public ExportJobDto submitJob(ExportType type, ExportFormat format, boolean gzip,
+                                  Optional<FinancialDto> financial, HttpServletRequest req) {
+        ExportWriter.checkFormat(format, sources.of(type));
+        var userId = jwtUtils.getUserId(req);
+        var from = financial.map(FinancialDto::fromDate)
+                .map(date -> LocalDateTime.parse(date, StartupConfig.DATE_FORMATTER))
+                .orElse(ALL_TIME_FROM);
+        var to = financial.map(FinancialDto::toDate)
+                .map(date -> LocalDateTime.parse(date, StartupConfig.DATE_FORMATTER))
+                .orElseGet(LocalDateTime::now);
+
+        var id = UUID.randomUUID().toString();
+        var job = new ExportJob(id, userId, type, format, gzip,
+                properties.directory().resolve(format.fileName(id, gzip)));
+        // counting and adding must not interleave with other jobs of the user
+        synchronized (jobs) {
+            var activeJobs = jobs.values().stream()
+                    .filter(j -> j.getUserId().equals(userId) && !j.isFinished())
+                    .count();
+            if (activeJobs >= properties.perUserLimit())
+                throw new BadRequestException("You already have " + activeJobs + " exports running, " +
+                        "wait for them to finish");
+            jobs.put(id, job);
+        }
+        try {
+            threadPool.execute(() -> runJob(job, from, to));
+        } catch (TaskRejectedException e) {
+            jobs.remove(id);
+            throw new ServiceUnavailableException("Too many exports are running, try again later",
+                    properties.retryAfter());
+        }
+        return toDto(job);
+    }
+
+    public ExportJobDto getJob(String id, HttpServletRequest req) {
+        return toDto(getJobOfUser(id, req));
+    }
+
+    /**
+     * @return a done job, its file can be downloaded
+     */
+    public ExportJob getDoneJob(String id, HttpServletRequest req) {
+        var job = getJobOfUser(id, req);
+        if (job.getStatus() != ExportJob.Status.DONE)
+            throw new BadRequestException("Export is not done yet");
+        return job;
+    }
+
+    @Scheduled(fixedDelay = 60_000)
+    public void deleteExpiredJobs() {
+        var expiredAt = LocalDateTime.now().minus(properties.ttl());
+        jobs.values().removeIf(job -> {
+            if (!job.isFinished() || job.getFinishedAt().isAfter(expiredAt))
+                return false;
+            deleteFile(job.getFile());
+            return true;
+        });
+    }
+
+    @Override
+    public void destroy() {
+        threadPool.shutdown();
+        jobs.values().forEach(job -> deleteFile(job.getFile()));
+    }
+
+    private void runJob(ExportJob job, LocalDateTime from, LocalDateTime to) {
+        job.start();
+        try (var out = new BufferedOutputStream(Files.newOutputStream(job.getFile()))) {
+            ExportWriter.write(job.getFormat(), job.isGzip(), out, sources.of(job.getType()), job.getUserId(),
+                    from, to, job::addRow);
+        } catch (Exception e) {
+            log.error("Export {} of user {} failed", job.getId(), job.getUserId(), e);
+            deleteFile(job.getFile());
+            job.fail("Export failed, try again later");
+            return;
+        }
+        job.done();
+    }
+
+    private ExportJob getJobOfUser(String id, HttpServletRequest req) {
+        var job = jobs.get(id);
+        if (job == null)
+            throw new NoContentException("Export does not exist");
+        var userId = jwtUtils.getUserId(req);
+        if (!job.getUserId().equals(userId))
+            throw new ForbiddenException("You can't access another user's exports");
+        return job;
+    }
+
+    private void deleteFile(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Couldn't delete export file {}", file, e);
+        }
+    }
+
+    private ExportJobDto toDto(ExportJob job) {
+        var finishedAt = job.getFinishedAt();
+        return new ExportJobDto(job.getId(), job.getType(), job.getFormat(), job.getStatus().name(),
+                job.getRows().get(), job.getError(), job.getCreatedAt().format(StartupConfig.DATE_FORMATTER),
+                finishedAt != null ? finishedAt.format(StartupConfig.DATE_FORMATTER) : null);
+    }
+}
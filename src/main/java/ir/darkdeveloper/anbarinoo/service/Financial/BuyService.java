@@ -1,11 +1,17 @@
 package ir.darkdeveloper.anbarinoo.service.Financial;
 
+import ir.darkdeveloper.anbarinoo.dto.BucketAmountDto;
+import ir.darkdeveloper.anbarinoo.dto.Cursor;
+import ir.darkdeveloper.anbarinoo.dto.CursorPage;
+import ir.darkdeveloper.anbarinoo.dto.FinancialBucket;
 import ir.darkdeveloper.anbarinoo.dto.FinancialDto;
+import ir.darkdeveloper.anbarinoo.dto.LineErrorDto;
 import ir.darkdeveloper.anbarinoo.exception.*;
 import ir.darkdeveloper.anbarinoo.model.BuyModel;
 import ir.darkdeveloper.anbarinoo.model.ProductModel;
 import ir.darkdeveloper.anbarinoo.repository.Financial.BuyRepo;
 import ir.darkdeveloper.anbarinoo.service.ProductService;
+import ir.darkdeveloper.anbarinoo.util.ExcelUtils;
 import ir.darkdeveloper.anbarinoo.util.Financial.FinancialUtils;
 import ir.darkdeveloper.anbarinoo.util.JwtUtils;
 import lombok.RequiredArgsConstructor;
@@ -14,14 +20,24 @@ import org.springframework.context.annotation.Lazy;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import javax.servlet.http.HttpServletRequest;
 import javax.transaction.Transactional;
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 
@@ -29,12 +45,18 @@ import java.util.function.Supplier;
 @RequiredArgsConstructor(onConstructor = @__(@Lazy))
 public class BuyService {
 
+    private static final int IMPORT_BATCH_SIZE = 500;
+    private static final String NOT_ENOUGH_IN_STOCK = "Not enough product left in stock, it's already sold";
+
     private final BuyRepo repo;
     private final JwtUtils jwtUtils;
     @Lazy
     private final ProductService productService;
     @Lazy
     private final FinancialUtils fUtils;
+    private final DailyFinancialSummaryService summaryService;
+    @PersistenceContext
+    private EntityManager entityManager;
 
     @Transactional
     @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
@@ -44,7 +66,62 @@ public class BuyService {
             if (!isSaveProduct)
                 saveProductCount(buy.orElseThrow(), req);
             // checked buy data validity in checkBuyData, so it is safe to use orElseThrow
-            return repo.save(buy.orElseThrow());
+            var savedBuy = repo.save(buy.orElseThrow());
+            summaryService.addBuy(getUserId(req), savedBuy);
+            return savedBuy;
+        });
+    }
+
+    /**
+     * Imports buys of an xlsx file. After a header row, columns of every row are product id, count, price and
+     * tax, which is optional. The file is read as a stream and buys are saved in batches, stock of every product
+     * is increased once per batch. Nothing is saved if a row fails, and all failed rows are reported at once
+     *
+     * @return count of the imported buys
+     */
+    @Transactional
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
+    public Integer importBuys(MultipartFile file, HttpServletRequest req) {
+        return exceptionHandlers(() -> {
+            if (file == null || file.isEmpty())
+                throw new BadRequestException("File can't be empty");
+
+            var errors = new ArrayList<LineErrorDto>();
+            var batch = new TreeMap<Integer, BuyModel>();
+            var imported = new AtomicInteger();
+            ExcelUtils.readRows(file, (rowNum, cells) -> {
+                // first row is the header
+                if (rowNum == 0)
+                    return;
+                try {
+                    var buy = buyOfRow(cells);
+                    checkBuyData(Optional.of(buy), Optional.empty());
+                    batch.put(rowNum + 1, buy);
+                } catch (BadRequestException e) {
+                    errors.add(new LineErrorDto(rowNum + 1, null, e.getLocalizedMessage()));
+                }
+                if (batch.size() == IMPORT_BATCH_SIZE)
+                    imported.addAndGet(saveImportedBatch(batch, errors, req));
+            });
+            imported.addAndGet(saveImportedBatch(batch, errors, req));
+
+            if (!errors.isEmpty())
+                throw new LinesException("Couldn't import the buy records", errors);
+            return imported.get();
+        });
+    }
+
+    /**
+     * Saves first buys of new products in jdbc batches. Stock of the products already has the count of their
+     * first buy, so it is not increased
+     */
+    @Transactional
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_ADMIN','OP_ACCESS_USER')")
+    public List<BuyModel> saveFirstBuys(List<BuyModel> buys, HttpServletRequest req) {
+        return exceptionHandlers(() -> {
+            var savedBuys = repo.saveAll(buys);
+            summaryService.addBuys(getUserId(req), savedBuys);
+            return savedBuys;
         });
     }
 
@@ -56,7 +133,9 @@ public class BuyService {
                     .orElseThrow(() -> new NoContentException("Buy record doesn't exist"));
             // checked buy data validity in checkBuyData, so it is safe to use orElseThrow
             updateProductCount(buy.orElseThrow(), preBuy, req);
+            summaryService.removeBuy(getUserId(req), preBuy);
             preBuy.update(buy.orElseThrow());
+            summaryService.addBuy(getUserId(req), preBuy);
             return repo.save(preBuy);
         });
     }
@@ -69,6 +148,14 @@ public class BuyService {
         });
     }
 
+    public Slice<BuyModel> getBuyRecordsSliceOfProduct(Long productId, HttpServletRequest req, Pageable pageable) {
+        return exceptionHandlers(() -> {
+            // will be checked the user is same user in getProduct method
+            var product = productService.getProduct(productId, req);
+            return repo.findSliceByProductId(product.getId(), pageable);
+        });
+    }
+
     public Page<BuyModel> getAllBuyRecordsOfUser(Long userId, HttpServletRequest req, Pageable pageable) {
         return exceptionHandlers(() -> {
             checkUserIsSameUserForRequest(null, userId, req, "fetch");
@@ -76,6 +163,41 @@ public class BuyService {
         });
     }
 
+    public Slice<BuyModel> getBuyRecordsSliceOfUser(Long userId, HttpServletRequest req, Pageable pageable) {
+        return exceptionHandlers(() -> {
+            checkUserIsSameUserForRequest(null, userId, req, "fetch");
+            return repo.findSliceByProductCategoryUserId(userId, pageable);
+        });
+    }
+
+    /**
+     * Records of product after the cursor in creation order, without counting all of them
+     */
+    public CursorPage<BuyModel> getAllBuyRecordsOfProduct(Long productId, String cursor, Integer size,
+                                                          HttpServletRequest req) {
+        return exceptionHandlers(() -> {
+            var product = productService.getProduct(productId, req);
+            var after = Cursor.decode(cursor);
+            var records = repo.findAllByProductIdAfter(product.getId(), after.createdAt(), after.id(),
+                    CursorPage.fetchOf(size));
+            return CursorPage.of(records, size, BuyModel::getCreatedAt, BuyModel::getId);
+        });
+    }
+
+    /**
+     * Records of user after the cursor in creation order, without counting all of them
+     */
+    public CursorPage<BuyModel> getAllBuyRecordsOfUser(Long userId, String cursor, Integer size,
+                                                       HttpServletRequest req) {
+        return exceptionHandlers(() -> {
+            checkUserIsSameUserForRequest(null, userId, req, "fetch");
+            var after = Cursor.decode(cursor);
+            var records = repo.findAllByProductCategoryUserIdAfter(userId, after.createdAt(), after.id(),
+                    CursorPage.fetchOf(size));
+            return CursorPage.of(records, size, BuyModel::getCreatedAt, BuyModel::getId);
+        });
+    }
+
     public BuyModel getBuy(Long buyId, HttpServletRequest req) {
         return exceptionHandlers(() -> {
             var foundBuyRecord = repo.findById(buyId)
@@ -92,6 +214,7 @@ public class BuyService {
                     .orElseThrow(() -> new NoContentException("Buy record doesn't exist"));
             checkUserIsSameUserForRequest(buy.getProduct(), null, req, "delete buy record of");
             repo.deleteById(buyId);
+            summaryService.removeBuy(getUserId(req), buy);
             deleteProductCount(buy, req);
             return ResponseEntity.ok("Deleted the buy record");
         });
@@ -109,6 +232,37 @@ public class BuyService {
         });
     }
 
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
+    public Slice<BuyModel> getBuyRecordsSliceOfUserFromDateTo(Long userId, Optional<FinancialDto> financial,
+                                                              HttpServletRequest req, Pageable pageable) {
+        return exceptionHandlers(() -> {
+            var from = fUtils.getFromDate(financial);
+            var to = fUtils.getToDate(financial);
+            checkUserIsSameUserForRequest(null, userId, req, "fetch");
+            return repo.findSliceByProductCategoryUserIdAndCreatedAtAfterAndCreatedAtBefore(userId,
+                    from, to, pageable);
+        });
+    }
+
+    /**
+     * Sum of buy costs of user including tax, calculated in the database.
+     * The caller resolves user id of the request, so it is not checked here and can run on other threads
+     */
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
+    public BigDecimal getBuyCostsOfUserFromDateTo(Long userId, LocalDateTime from, LocalDateTime to) {
+        return exceptionHandlers(() -> repo.sumCostsOfUserFromDateTo(userId, from, to));
+    }
+
+    /**
+     * Buy costs of user including tax per bucket, empty buckets are omitted.
+     * The caller resolves user id of the request, so it is not checked here and can run on other threads
+     */
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
+    public List<BucketAmountDto> getBuyCostsOfUserByBucket(Long userId, LocalDateTime from, LocalDateTime to,
+                                                           FinancialBucket bucket) {
+        return exceptionHandlers(() -> repo.sumCostsOfUserByBucket(userId, from, to, bucket.unit()));
+    }
+
     public Page<BuyModel> getAllBuyRecordsOfProductFromDateTo(Long productId, Optional<FinancialDto> financial,
                                                               HttpServletRequest req, Pageable pageable) {
         return exceptionHandlers(() -> {
@@ -121,9 +275,25 @@ public class BuyService {
         });
     }
 
+    public Slice<BuyModel> getBuyRecordsSliceOfProductFromDateTo(Long productId, Optional<FinancialDto> financial,
+                                                                 HttpServletRequest req, Pageable pageable) {
+        return exceptionHandlers(() -> {
+            var from = fUtils.getFromDate(financial);
+            var to = fUtils.getToDate(financial);
+            var product = productService.getProduct(productId, req);
+            checkUserIsSameUserForRequest(product, null, req, "fetch");
+            return repo.findSliceByProductIdAndCreatedAtAfterAndCreatedAtBefore(productId,
+                    from, to, pageable);
+        });
+    }
+
+    private Long getUserId(HttpServletRequest req) {
+        return jwtUtils.getUserId(req);
+    }
+
     private void checkUserIsSameUserForRequest(ProductModel product, Long userId, HttpServletRequest req,
                                                String operation) {
-        var id = jwtUtils.getUserId(req.getHeader("refresh_token"));
+        var id = jwtUtils.getUserId(req);
         if (userId == null) {
             if (!product.getCategory().getUser().getId().equals(id))
                 throw new ForbiddenException("You can't " + operation + " another user's products");
@@ -134,41 +304,83 @@ public class BuyService {
     }
 
     private void saveProductCount(BuyModel buy, HttpServletRequest req) {
-        var preProduct = productService.getProduct(buy.getProduct().getId(), req);
-        checkUserIsSameUserForRequest(preProduct, null, req, "save buy record of");
-        var product = ProductModel.builder()
-                .totalCount(preProduct.getTotalCount().add(buy.getCount()))
-                .canUpdate(false)
-                .build();
-        productService.updateProductFromBuyOrSell(Optional.of(product), preProduct, req);
-
+        productService.increaseTotalCount(buy.getProduct().getId(), buy.getCount(), req);
     }
 
     private void updateProductCount(BuyModel buy, BuyModel preBuy, HttpServletRequest req) {
-        var preProduct = productService.getProduct(buy.getProduct().getId(), req);
-        checkUserIsSameUserForRequest(preProduct, null, req, "save buy record of");
-        var difference = (BigDecimal) null;
+        var productId = buy.getProduct().getId();
         var product = new ProductModel();
         product.setPrice(buy.getPrice());
-        if (buy.getCount().compareTo(preBuy.getCount()) > 0) {
-            difference = buy.getCount().subtract(preBuy.getCount());
-            product.setTotalCount(preProduct.getTotalCount().add(difference));
-        } else if (buy.getCount().compareTo(preBuy.getCount()) < 0) {
-            difference = preBuy.getCount().subtract(buy.getCount());
-            product.setTotalCount(preProduct.getTotalCount().subtract(difference));
-        }
-        productService.updateProductFromBuyOrSell(Optional.of(product), preProduct, req);
+        productService.updateProductFromBuyOrSell(Optional.of(product),
+                productService.getProduct(productId, req), req);
+
+        var difference = buy.getCount().subtract(preBuy.getCount());
+        if (difference.signum() > 0)
+            productService.increaseTotalCount(productId, difference, req);
+        else if (difference.signum() < 0)
+            productService.decreaseTotalCount(productId, difference.negate(), NOT_ENOUGH_IN_STOCK, req);
     }
 
     private void deleteProductCount(BuyModel buy, HttpServletRequest req) {
-        var preProduct = productService.getProduct(buy.getProduct().getId(), req);
-        var product = ProductModel.builder()
-                .totalCount(preProduct.getTotalCount().subtract(buy.getCount()))
-                .build();
-        productService.updateProductFromBuyOrSell(Optional.of(product), preProduct, req);
+        productService.decreaseTotalCount(buy.getProduct().getId(), buy.getCount(), NOT_ENOUGH_IN_STOCK, req);
     }
 
 
+    private BuyModel buyOfRow(List<String> cells) {
+        try {
+            var productId = cellOf(cells, 0);
+            var count = cellOf(cells, 1);
+            var price = cellOf(cells, 2);
+            var tax = cellOf(cells, 3);
+            return BuyModel.builder()
+                    .product(productId != null ? new ProductModel(new BigDecimal(productId).longValueExact()) : null)
+                    .count(count != null ? new BigDecimal(count) : null)
+                    .price(price != null ? new BigDecimal(price) : null)
+                    .tax(tax != null ? new BigDecimal(tax).intValueExact() : 9)
+                    .build();
+        } catch (ArithmeticException | NumberFormatException e) {
+            throw new BadRequestException("Product id, count, price and tax must be numbers");
+        }
+    }
+
+    private String cellOf(List<String> cells, int column) {
+        if (column >= cells.size() || cells.get(column) == null || cells.get(column).isBlank())
+            return null;
+        return cells.get(column).replace(",", "").trim();
+    }
+
+    /**
+     * Increases stock of every product of the batch once, and saves the buys in jdbc batches. Once a row has
+     * failed the import is going to roll back, so the products of the rest of the batches are only checked and
+     * their rows are not locked. Saved buys are flushed and detached, so the import doesn't keep all of them
+     *
+     * @return count of the saved buys
+     */
+    private int saveImportedBatch(SortedMap<Integer, BuyModel> batch, List<LineErrorDto> errors,
+                                  HttpServletRequest req) {
+        var counts = new TreeMap<Long, BigDecimal>();
+        batch.values().forEach(buy -> counts.merge(buy.getProduct().getId(), buy.getCount(), BigDecimal::add));
+        var failures = errors.isEmpty() ? productService.increaseTotalCounts(counts, req)
+                : productService.checkProductsOfUser(counts.keySet(), req);
+        batch.forEach((rowNum, buy) -> {
+            var productId = buy.getProduct().getId();
+            if (failures.containsKey(productId))
+                errors.add(new LineErrorDto(rowNum, productId, failures.get(productId)));
+        });
+
+        var saved = 0;
+        if (errors.isEmpty()) {
+            var buys = List.copyOf(batch.values());
+            repo.saveAll(buys);
+            summaryService.addBuys(getUserId(req), buys);
+            entityManager.flush();
+            entityManager.clear();
+            saved = buys.size();
+        }
+        batch.clear();
+        return saved;
+    }
+
     private void checkBuyData(Optional<BuyModel> buy, Optional<Long> buyId) {
         buy.map(BuyModel::getProduct)
                 .map(ProductModel::getId)
@@ -189,6 +401,8 @@ public class BuyService {
     private <T> T exceptionHandlers(Supplier<T> supplier) {
         try {
             return supplier.get();
+        } catch (LinesException e) {
+            throw e;
         } catch (DataException | BadRequestException e) {
             throw new BadRequestException(e.getLocalizedMessage());
         } catch (ForbiddenException e) {
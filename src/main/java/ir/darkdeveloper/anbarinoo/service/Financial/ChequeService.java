@@ -40,7 +40,7 @@ public class ChequeService {
         return exceptionHandlers(() -> {
             cheque.orElseThrow(() -> new BadRequestException("Cheque can't be null"));
             checkId(cheque);
-            cheque.get().setUser(new UserModel(jwtUtils.getUserId(req.getHeader("refresh_token"))));
+            cheque.get().setUser(new UserModel(jwtUtils.getUserId(req)));
             var savedCheque = repo.save(cheque.get());
             var dod = createDodFromCheque(savedCheque);
             dodService.saveDOD(Optional.of(dod), req);
@@ -110,7 +110,7 @@ public class ChequeService {
 
 
     private void checkUserIsSameUserForRequest(Long userId, HttpServletRequest req, String operation) {
-        var id = jwtUtils.getUserId(req.getHeader("refresh_token"));
+        var id = jwtUtils.getUserId(req);
         if (!userId.equals(id))
             throw new ForbiddenException("You can't " + operation + " another user's cheques");
     }
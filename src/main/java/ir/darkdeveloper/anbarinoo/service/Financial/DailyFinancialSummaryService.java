@@ -0,0 +1,327 @@
+package ir.darkdeveloper.anbarinoo.service.Financial;
+
+import ir.darkdeveloper.anbarinoo.dto.DailyAmountDto;
+import ir.darkdeveloper.anbarinoo.model.BuyModel;
+import ir.darkdeveloper.anbarinoo.model.DailyFinancialSummaryModel;
+import ir.darkdeveloper.anbarinoo.model.DebtOrDemandModel;
+import ir.darkdeveloper.anbarinoo.model.SellModel;
+import ir.darkdeveloper.anbarinoo.repository.Financial.BuyRepo;
+import ir.darkdeveloper.anbarinoo.repository.Financial.DailyFinancialSummaryRepo;
+import ir.darkdeveloper.anbarinoo.repository.Financial.DebtOrDemandRepo;
+import ir.darkdeveloper.anbarinoo.repository.Financial.SellRepo;
+import ir.darkdeveloper.anbarinoo.repository.UserRepo;
+import ir.darkdeveloper.anbarinoo.util.Financial.FinancialReportCache;
+import ir.darkdeveloper.anbarinoo.util.Financial.Money;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the daily_financial_summary rows of users in sync with their buys, sells and debts or demands.
+ * Writers call the add and remove methods inside their own transaction, so a rolled back write rolls back its
+ * summary delta too
+ */
+@Service
+@Slf4j
+public class DailyFinancialSummaryService {
+
+    private static final int REBUILD_CHUNK_SIZE = 100;
+
+    private final DailyFinancialSummaryRepo repo;
+    private final BuyRepo buyRepo;
+    private final SellRepo sellRepo;
+    private final DebtOrDemandRepo dodRepo;
+    private final UserRepo userRepo;
+    private final FinancialReportCache reportCache;
+    private final TransactionTemplate newTransaction;
+
+    public DailyFinancialSummaryService(DailyFinancialSummaryRepo repo, BuyRepo buyRepo, SellRepo sellRepo,
+                                        DebtOrDemandRepo dodRepo, UserRepo userRepo, FinancialReportCache reportCache,
+                                        PlatformTransactionManager transactionManager) {
+        this.repo = repo;
+        this.buyRepo = buyRepo;
+        this.sellRepo = sellRepo;
+        this.dodRepo = dodRepo;
+        this.userRepo = userRepo;
+        this.reportCache = reportCache;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    public void addBuy(Long userId, BuyModel buy) {
+        var cost = percentOf(buy.getCount(), buy.getPrice(), 100 + buy.getTax());
+        var tax = percentOf(buy.getCount(), buy.getPrice(), buy.getTax());
+        addToDay(userId, dayOf(buy.getCreatedAt()), cost, tax, BigDecimal.ZERO, BigDecimal.ZERO,
+                BigDecimal.ZERO, BigDecimal.ZERO);
+    }
+
+    /**
+     * Adds the buys of a batch with a single write per day instead of one per buy
+     */
+    public void addBuys(Long userId, List<BuyModel> buys) {
+        var costs = new TreeMap<LocalDate, Money>();
+        var taxes = new TreeMap<LocalDate, Money>();
+        buys.forEach(buy -> {
+            var day = dayOf(buy.getCreatedAt());
+            costs.computeIfAbsent(day, d -> Money.zero())
+                    .addPercentOf(buy.getCount(), buy.getPrice(), 100 + buy.getTax());
+            taxes.computeIfAbsent(day, d -> Money.zero())
+                    .addPercentOf(buy.getCount(), buy.getPrice(), buy.getTax());
+        });
+        costs.forEach((day, cost) -> addToDay(userId, day, cost.toBigDecimal(), taxes.get(day).toBigDecimal(),
+                BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO));
+    }
+
+    public void removeBuy(Long userId, BuyModel buy) {
+        var cost = percentOf(buy.getCount(), buy.getPrice(), 100 + buy.getTax());
+        var tax = percentOf(buy.getCount(), buy.getPrice(), buy.getTax());
+        addToDay(userId, dayOf(buy.getCreatedAt()), cost.negate(), tax.negate(), BigDecimal.ZERO,
+                BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO);
+    }
+
+    public void addSell(Long userId, SellModel sell) {
+        var income = percentOf(sell.getCount(), sell.getPrice(), 100 - sell.getTax());
+        var tax = percentOf(sell.getCount(), sell.getPrice(), sell.getTax());
+        addToDay(userId, dayOf(sell.getCreatedAt()), BigDecimal.ZERO, BigDecimal.ZERO, income, tax,
+                BigDecimal.ZERO, BigDecimal.ZERO);
+    }
+
+    /**
+     * Adds the sells of a batch with a single write per day instead of one per sell
+     */
+    public void addSells(Long userId, List<SellModel> sells) {
+        var incomes = new TreeMap<LocalDate, Money>();
+        var taxes = new TreeMap<LocalDate, Money>();
+        sells.forEach(sell -> {
+            var day = dayOf(sell.getCreatedAt());
+            incomes.computeIfAbsent(day, d -> Money.zero())
+                    .addPercentOf(sell.getCount(), sell.getPrice(), 100 - sell.getTax());
+            taxes.computeIfAbsent(day, d -> Money.zero())
+                    .addPercentOf(sell.getCount(), sell.getPrice(), sell.getTax());
+        });
+        incomes.forEach((day, income) -> addToDay(userId, day, BigDecimal.ZERO, BigDecimal.ZERO,
+                income.toBigDecimal(), taxes.get(day).toBigDecimal(), BigDecimal.ZERO, BigDecimal.ZERO));
+    }
+
+    public void removeSell(Long userId, SellModel sell) {
+        var income = percentOf(sell.getCount(), sell.getPrice(), 100 - sell.getTax());
+        var tax = percentOf(sell.getCount(), sell.getPrice(), sell.getTax());
+        addToDay(userId, dayOf(sell.getCreatedAt()), BigDecimal.ZERO, BigDecimal.ZERO, income.negate(),
+                tax.negate(), BigDecimal.ZERO, BigDecimal.ZERO);
+    }
+
+    /**
+     * Only checked out debts or demands take part in financial reports
+     */
+    public void addDOD(Long userId, DebtOrDemandModel dod) {
+        addDODAmount(userId, dod, dod.getAmount());
+    }
+
+    public void removeDOD(Long userId, DebtOrDemandModel dod) {
+        addDODAmount(userId, dod, dod.getAmount().negate());
+    }
+
+    /**
+     * Sums a value between the dates using the summary rows for the whole days in between, and the raw records
+     * for the partial first and last days
+     *
+     * @param daysSum sum of the summary rows between two days, both inclusive
+     * @param rawSum  sum of the raw records between two dates, both exclusive
+     */
+    public BigDecimal sumFromDateTo(LocalDateTime from, LocalDateTime to,
+                                    BiFunction<LocalDate, LocalDate, BigDecimal> daysSum,
+                                    BiFunction<LocalDateTime, LocalDateTime, BigDecimal> rawSum) {
+        var firstFullDay = from.toLocalDate().plusDays(1);
+        var lastFullDay = to.toLocalDate().minusDays(1);
+        if (firstFullDay.isAfter(lastFullDay))
+            return rawSum.apply(from, to);
+
+        var firstDayPart = rawSum.apply(from, firstFullDay.atStartOfDay());
+        var fullDays = daysSum.apply(firstFullDay, lastFullDay);
+        // raw sums exclude their lower bound, a microsecond before midnight includes records of the midnight
+        var lastDayPart = rawSum.apply(to.toLocalDate().atStartOfDay().minus(1, ChronoUnit.MICROS), to);
+        return firstDayPart.add(fullDays).add(lastDayPart);
+    }
+
+    public void deleteAllOfUser(Long userId) {
+        reportCache.evictUser(userId);
+        repo.deleteAllByUserId(userId);
+    }
+
+    /**
+     * Takes the buys and sells of the product out of the summary rows. Call it before deleting the product,
+     * since the delete cascades to them. Needs a surrounding transaction
+     */
+    public void removeProduct(Long userId, Long productId) {
+        removeBuysAndSells(userId, () -> buyRepo.streamAllOfProduct(productId),
+                () -> sellRepo.streamAllOfProduct(productId));
+    }
+
+    /**
+     * Like {@link #removeProduct} for the products of the categories
+     *
+     * @param categoryIds the deleted category and all of its sub categories
+     */
+    public void removeCategories(Long userId, Collection<Long> categoryIds) {
+        removeBuysAndSells(userId, () -> buyRepo.streamAllOfCategories(categoryIds),
+                () -> sellRepo.streamAllOfCategories(categoryIds));
+    }
+
+    /**
+     * Recomputes the summary rows of the user from the raw records, for {@link #rebuildAll}. It rewrites all rows
+     * of the user, so don't use it while the user is writing. Buys and sells are rounded per record like the
+     * writes do, so a rebuild gives the same sums. Needs a surrounding transaction
+     */
+    public void rebuildUser(Long userId) {
+        reportCache.evictUser(userId);
+        repo.deleteAllByUserId(userId);
+        var days = new TreeMap<LocalDate, DaySums>();
+        Function<LocalDate, DaySums> daySums = day -> days.computeIfAbsent(day, d -> new DaySums());
+
+        try (var buys = buyRepo.streamAllOfUser(userId)) {
+            buys.forEach(buy -> {
+                var sums = daySums.apply(dayOf(buy.getCreatedAt()));
+                sums.buyCost().addPercentOf(buy.getCount(), buy.getPrice(), 100 + buy.getTax());
+                sums.buyTax().addPercentOf(buy.getCount(), buy.getPrice(), buy.getTax());
+            });
+        }
+        try (var sells = sellRepo.streamAllOfUser(userId)) {
+            sells.forEach(sell -> {
+                var sums = daySums.apply(dayOf(sell.getCreatedAt()));
+                sums.sellIncome().addPercentOf(sell.getCount(), sell.getPrice(), 100 - sell.getTax());
+                sums.sellTax().addPercentOf(sell.getCount(), sell.getPrice(), sell.getTax());
+            });
+        }
+        dodRepo.sumCheckedOutAmountOfUserGroupedByDay(userId, true)
+                .forEach(amount -> daySums.apply(dayOf(amount)).dodDebt().add(amount.amount()));
+        dodRepo.sumCheckedOutAmountOfUserGroupedByDay(userId, false)
+                .forEach(amount -> daySums.apply(dayOf(amount)).dodDemand().add(amount.amount()));
+
+        var rows = new ArrayList<DailyFinancialSummaryModel>(days.size());
+        days.forEach((day, sums) -> rows.add(sums.toRow(userId, day)));
+        repo.saveAll(rows);
+    }
+
+    /**
+     * Backfills the summary rows of all users. Users are split to chunks and every chunk is rebuilt in its own
+     * transaction, and the chunks run in parallel. Writes of users being rebuilt at the same time might be lost,
+     * so run it while the application is not serving requests
+     */
+    public void rebuildAll() {
+        var userIds = userRepo.findAllIds();
+        var chunks = new ArrayList<List<Long>>();
+        for (int i = 0; i < userIds.size(); i += REBUILD_CHUNK_SIZE)
+            chunks.add(userIds.subList(i, Math.min(i + REBUILD_CHUNK_SIZE, userIds.size())));
+
+        var executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            var futures = chunks.stream()
+                    .map(chunk -> CompletableFuture.runAsync(() -> newTransaction.executeWithoutResult(
+                            status -> chunk.forEach(this::rebuildUser)), executor))
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(futures).join();
+        } finally {
+            executor.shutdown();
+        }
+        log.info("Rebuilt daily financial summaries of {} users in {} chunks", userIds.size(), chunks.size());
+    }
+
+    // every record is rounded like its write did, so the negative sums take back exactly what was added
+    private void removeBuysAndSells(Long userId, Supplier<Stream<BuyModel>> buysOf,
+                                    Supplier<Stream<SellModel>> sellsOf) {
+        var days = new TreeMap<LocalDate, DaySums>();
+        Function<LocalDate, DaySums> daySums = day -> days.computeIfAbsent(day, d -> new DaySums());
+        try (var buys = buysOf.get()) {
+            buys.forEach(buy -> {
+                var sums = daySums.apply(dayOf(buy.getCreatedAt()));
+                sums.buyCost().addPercentOf(buy.getCount(), buy.getPrice(), 100 + buy.getTax());
+                sums.buyTax().addPercentOf(buy.getCount(), buy.getPrice(), buy.getTax());
+            });
+        }
+        try (var sells = sellsOf.get()) {
+            sells.forEach(sell -> {
+                var sums = daySums.apply(dayOf(sell.getCreatedAt()));
+                sums.sellIncome().addPercentOf(sell.getCount(), sell.getPrice(), 100 - sell.getTax());
+                sums.sellTax().addPercentOf(sell.getCount(), sell.getPrice(), sell.getTax());
+            });
+        }
+        days.forEach((day, sums) -> addToDay(userId, day, sums.buyCost().toBigDecimal().negate(),
+                sums.buyTax().toBigDecimal().negate(), sums.sellIncome().toBigDecimal().negate(),
+                sums.sellTax().toBigDecimal().negate(), BigDecimal.ZERO, BigDecimal.ZERO));
+    }
+
+    private void addDODAmount(Long userId, DebtOrDemandModel dod, BigDecimal amount) {
+        if (!Boolean.TRUE.equals(dod.getIsCheckedOut()) || amount == null)
+            return;
+        var isDebt = Boolean.TRUE.equals(dod.getIsDebt());
+        addToDay(userId, dayOf(dod.getCreatedAt()), BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO,
+                BigDecimal.ZERO, isDebt ? amount : BigDecimal.ZERO, isDebt ? BigDecimal.ZERO : amount);
+    }
+
+    private void addToDay(Long userId, LocalDate day, BigDecimal buyCost, BigDecimal buyTax, BigDecimal sellIncome,
+                          BigDecimal sellTax, BigDecimal dodDebt, BigDecimal dodDemand) {
+        // every financial write of user passes here, so cached reports of user are evicted here
+        reportCache.evictUser(userId);
+        if (repo.addToDay(userId, day, buyCost, buyTax, sellIncome, sellTax, dodDebt, dodDemand) > 0)
+            return;
+        // first write of the day. The empty row is committed separately, so a concurrent writer that lost the
+        // insert race doesn't roll back its own transaction and just adds to the existing row
+        try {
+            newTransaction.executeWithoutResult(
+                    status -> repo.saveAndFlush(new DailyFinancialSummaryModel(userId, day)));
+        } catch (DataIntegrityViolationException ignored) {
+        }
+        repo.addToDay(userId, day, buyCost, buyTax, sellIncome, sellTax, dodDebt, dodDemand);
+    }
+
+    private BigDecimal percentOf(BigDecimal count, BigDecimal price, Integer percent) {
+        return Money.percentOf(count, price, percent);
+    }
+
+    // creation timestamp of a record might not be set before flush
+    private LocalDate dayOf(LocalDateTime createdAt) {
+        return createdAt != null ? createdAt.toLocalDate() : LocalDate.now();
+    }
+
+    private LocalDate dayOf(DailyAmountDto amount) {
+        return new java.sql.Date(amount.day().getTime()).toLocalDate();
+    }
+
+    private record DaySums(Money buyCost, Money buyTax, Money sellIncome, Money sellTax, Money dodDebt,
+                           Money dodDemand) {
+
+        DaySums() {
+            this(Money.zero(), Money.zero(), Money.zero(), Money.zero(), Money.zero(), Money.zero());
+        }
+
+        DailyFinancialSummaryModel toRow(Long userId, LocalDate day) {
+            var row = new DailyFinancialSummaryModel(userId, day);
+            row.setBuyCost(buyCost.toBigDecimal());
+            row.setBuyTax(buyTax.toBigDecimal());
+            row.setSellIncome(sellIncome.toBigDecimal());
+            row.setSellTax(sellTax.toBigDecimal());
+            row.setDodDebt(dodDebt.toBigDecimal());
+            row.setDodDemand(dodDemand.toBigDecimal());
+            return row;
+        }
+    }
+
+}
@@ -1,19 +1,27 @@
 package ir.darkdeveloper.anbarinoo.service.Financial;
 
+import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 import java.util.function.Supplier;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.transaction.Transactional;
 
 import org.hibernate.exception.DataException;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
 
+import ir.darkdeveloper.anbarinoo.dto.BucketAmountDto;
+import ir.darkdeveloper.anbarinoo.dto.Cursor;
+import ir.darkdeveloper.anbarinoo.dto.CursorPage;
+import ir.darkdeveloper.anbarinoo.dto.FinancialBucket;
 import ir.darkdeveloper.anbarinoo.exception.BadRequestException;
 import ir.darkdeveloper.anbarinoo.exception.DataExistsException;
 import ir.darkdeveloper.anbarinoo.exception.ForbiddenException;
@@ -31,43 +39,54 @@ public class DebtOrDemandService {
 
     private final DebtOrDemandRepo repo;
     private final JwtUtils jwtUtils;
+    private final DailyFinancialSummaryService summaryService;
 
+    @Transactional
     @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
     public DebtOrDemandModel saveDOD(Optional<DebtOrDemandModel> dodOpt, HttpServletRequest req) {
         return exceptionHandlers(() -> {
             var dod = checkDODAndGet(dodOpt);
-            dod.setUser(new UserModel(jwtUtils.getUserId(req.getHeader("refresh_token"))));
-            return repo.save(dod);
+            dod.setUser(new UserModel(jwtUtils.getUserId(req)));
+            var savedDod = repo.save(dod);
+            summaryService.addDOD(savedDod.getUser().getId(), savedDod);
+            return savedDod;
         });
     }
 
     /**
      * Only id, nameOf, isDebt, payTo, amount, issuedAt, validTill will take effect
      */
+    @Transactional
     public DebtOrDemandModel updateDOD(Optional<DebtOrDemandModel> dodOpt, Long id, HttpServletRequest req) {
         return exceptionHandlers(() -> {
             var dod = checkDODAndGet(dodOpt);
             var foundDod = repo.findById(id)
                     .orElseThrow(() -> new NoContentException("Debt or Demand record does not exist"));
             checkUserIsSameUserForRequest(foundDod.getUser().getId(), req, "update Debt or Demand record");
+            summaryService.removeDOD(foundDod.getUser().getId(), foundDod);
             foundDod.update(dod);
+            summaryService.addDOD(foundDod.getUser().getId(), foundDod);
             return repo.save(foundDod);
         });
     }
 
 
+    @Transactional
     @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
     public void updateDODByChequeId(Optional<DebtOrDemandModel> dodOpt, HttpServletRequest req) {
         exceptionHandlers(() -> {
             var dod = checkDODAndGet(dodOpt);
             var foundDod = repo.findByChequeId(dod.getChequeId()).orElseThrow(() -> new NoContentException("Debt or Demand record do not exist"));
             checkUserIsSameUserForRequest(foundDod.getUser().getId(), req, "update Debt or Demand record");
+            summaryService.removeDOD(foundDod.getUser().getId(), foundDod);
             foundDod.update(dod);
+            summaryService.addDOD(foundDod.getUser().getId(), foundDod);
             repo.save(foundDod);
             return null;
         });
     }
 
+    @Transactional
     @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
     public void deleteDODByChequeId(Long chequeId, HttpServletRequest req) {
         exceptionHandlers(() -> {
@@ -76,6 +95,7 @@ public class DebtOrDemandService {
             checkUserIsSameUserForRequest(foundDod.getUser().getId(), req,
                     "delete Debt or Demand record");
             repo.deleteById(foundDod.getId());
+            summaryService.removeDOD(foundDod.getUser().getId(), foundDod);
             return null;
         });
     }
@@ -87,6 +107,26 @@ public class DebtOrDemandService {
         });
     }
 
+    public Slice<DebtOrDemandModel> getDODRecordsSliceOfUser(Long userId, HttpServletRequest req, Pageable pageable) {
+        return exceptionHandlers(() -> {
+            checkUserIsSameUserForRequest(userId, req, "fetch Debt or Demand record");
+            return repo.findSliceByUserId(userId, pageable);
+        });
+    }
+
+    /**
+     * Records of user after the cursor in creation order, without counting all of them
+     */
+    public CursorPage<DebtOrDemandModel> getAllDODRecordsOfUser(Long userId, String cursor, Integer size,
+                                                                HttpServletRequest req) {
+        return exceptionHandlers(() -> {
+            checkUserIsSameUserForRequest(userId, req, "fetch Debt or Demand record");
+            var after = Cursor.decode(cursor);
+            var records = repo.findAllByUserIdAfter(userId, after.createdAt(), after.id(), CursorPage.fetchOf(size));
+            return CursorPage.of(records, size, DebtOrDemandModel::getCreatedAt, DebtOrDemandModel::getId);
+        });
+    }
+
     public DebtOrDemandModel getDOD(Long dodId, HttpServletRequest req) {
         return exceptionHandlers(() -> {
             var foundDod = repo.findById(dodId)
@@ -96,6 +136,7 @@ public class DebtOrDemandService {
         });
     }
 
+    @Transactional
     public ResponseEntity<?> deleteDOD(Long dodId, HttpServletRequest req) {
         return exceptionHandlers(() -> {
             var foundDod = repo.findById(dodId)
@@ -103,6 +144,7 @@ public class DebtOrDemandService {
             checkUserIsSameUserForRequest(foundDod.getUser().getId(), req,
                     "delete Debt or Demand record");
             repo.deleteById(dodId);
+            summaryService.removeDOD(foundDod.getUser().getId(), foundDod);
             return ResponseEntity.ok("Debt or Demand deleted");
         });
     }
@@ -118,9 +160,30 @@ public class DebtOrDemandService {
         });
     }
 
+    /**
+     * Sum of amounts of the debts or demands, calculated in the database.
+     * The caller resolves user id of the request, so it is not checked here and can run on other threads
+     */
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
+    public BigDecimal getDODAmountFromToDate(Long userId, Boolean isDebt, Boolean isCheckedOut,
+                                             LocalDateTime from, LocalDateTime to) {
+        return exceptionHandlers(() ->
+                repo.sumAmountByUserIdAndIsDebtAndIsCheckedOutFromDateTo(userId, isDebt, isCheckedOut, from, to));
+    }
+
+    /**
+     * Sum of amounts of the checked out debts or demands per bucket, empty buckets are omitted.
+     * The caller resolves user id of the request, so it is not checked here and can run on other threads
+     */
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
+    public List<BucketAmountDto> getCheckedOutDODAmountByBucket(Long userId, Boolean isDebt, LocalDateTime from,
+                                                                LocalDateTime to, FinancialBucket bucket) {
+        return exceptionHandlers(() ->
+                repo.sumCheckedOutAmountOfUserByBucket(userId, isDebt, from, to, bucket.unit()));
+    }
 
     private void checkUserIsSameUserForRequest(Long userId, HttpServletRequest req, String operation) {
-        var id = jwtUtils.getUserId(req.getHeader("refresh_token"));
+        var id = jwtUtils.getUserId(req);
         if (!userId.equals(id))
             throw new ForbiddenException("You can't " + operation + " of another user");
     }
@@ -2,71 +2,156 @@ package ir.darkdeveloper.anbarinoo.service.Financial;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.TreeMap;
 
 import javax.servlet.http.HttpServletRequest;
 
-import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
+import ir.darkdeveloper.anbarinoo.dto.BucketAmountDto;
+import ir.darkdeveloper.anbarinoo.dto.FinancialBucket;
 import ir.darkdeveloper.anbarinoo.dto.FinancialDto;
+import ir.darkdeveloper.anbarinoo.exception.BadRequestException;
 import ir.darkdeveloper.anbarinoo.util.JwtUtils;
+import ir.darkdeveloper.anbarinoo.util.Financial.FinancialReportCache;
+import ir.darkdeveloper.anbarinoo.util.Financial.FinancialReportExecutor;
+import ir.darkdeveloper.anbarinoo.util.Financial.FinancialReportProperties;
 import ir.darkdeveloper.anbarinoo.util.Financial.FinancialUtils;
+import ir.darkdeveloper.anbarinoo.util.Financial.Money;
 import lombok.RequiredArgsConstructor;
 
+import static ir.darkdeveloper.anbarinoo.util.Financial.FinancialReportCache.ReportType.*;
+
 @Service
 @RequiredArgsConstructor
 public class FinancialService {
 
     private final JwtUtils jwtUtils;
     private final FinancialUtils fUtils;
+    private final FinancialReportExecutor reportExecutor;
+    private final FinancialReportCache reportCache;
+    private final FinancialReportProperties reportProperties;
 
 
-    public FinancialDto getCosts(Optional<FinancialDto> financial, HttpServletRequest req, Pageable pageable) {
-        var userId = jwtUtils.getUserId(req.getHeader("refresh_token"));
+    public FinancialDto getCosts(Optional<FinancialDto> financial, HttpServletRequest req) {
+        var userId = jwtUtils.getUserId(req);
 
         var from = fUtils.getFromDate(financial);
         var to = fUtils.getToDate(financial);
-        var buyCosts = fUtils.getBuyCosts(financial, req, pageable, userId);
-
-        var dodCosts = fUtils.getDodCosts(req, pageable, userId, from, to);
 
-        return new FinancialDto(buyCosts.get().add(dodCosts.get()), null, from, to);
+        return reportCache.get(userId, COSTS, from, to, () -> {
+            var buyCosts = fUtils.getBuyCosts(userId, from, to);
+            var dodCosts = fUtils.getDodCosts(userId, from, to);
+            return new FinancialDto(buyCosts.add(dodCosts), null, from, to);
+        });
     }
 
 
-    public FinancialDto getIncomes(Optional<FinancialDto> financial, HttpServletRequest req, Pageable pageable) {
-        var userId = jwtUtils.getUserId(req.getHeader("refresh_token"));
+    public FinancialDto getIncomes(Optional<FinancialDto> financial, HttpServletRequest req) {
+        var userId = jwtUtils.getUserId(req);
 
         var from = fUtils.getFromDate(financial);
         var to = fUtils.getToDate(financial);
 
-        var sellIncomes = fUtils.getSellIncomes(financial, req, pageable, userId);
-        var dodIncomes = fUtils.getDodIncomes(req, pageable, userId, from, to);
+        return reportCache.get(userId, INCOMES, from, to, () -> {
+            var sellIncomes = fUtils.getSellIncomes(userId, from, to);
+            var dodIncomes = fUtils.getDodIncomes(userId, from, to);
+            return new FinancialDto(null, sellIncomes.add(dodIncomes), from, to);
+        });
+    }
+
+    public FinancialDto getProfitOrLoss(Optional<FinancialDto> financial, HttpServletRequest req) {
+        var userId = jwtUtils.getUserId(req);
+
+        var from = fUtils.getFromDate(financial);
+        var to = fUtils.getToDate(financial);
 
-        return new FinancialDto(null, sellIncomes.get().add(dodIncomes.get()), from, to);
+        return reportCache.get(userId, PROFIT_OR_LOSS, from, to, () -> {
+            // components are independent, so they are queried at the same time
+            var sellIncomes = reportExecutor.supply("sellIncomes", () -> fUtils.getSellIncomes(userId, from, to));
+            var dodIncomes = reportExecutor.supply("dodIncomes", () -> fUtils.getDodIncomes(userId, from, to));
+            var buyCosts = reportExecutor.supply("buyCosts", () -> fUtils.getBuyCosts(userId, from, to));
+            var dodCosts = reportExecutor.supply("dodCosts", () -> fUtils.getDodCosts(userId, from, to));
+            reportExecutor.awaitAll(sellIncomes, dodIncomes, buyCosts, dodCosts);
+
+            return getProfitOrLoss(reportExecutor.result(buyCosts).add(reportExecutor.result(dodCosts)),
+                    reportExecutor.result(sellIncomes).add(reportExecutor.result(dodIncomes)), from, to);
+        });
     }
 
-    public FinancialDto getProfitOrLoss(Optional<FinancialDto> financial, HttpServletRequest req, Pageable pageable) {
-        var userId = jwtUtils.getUserId(req.getHeader("refresh_token"));
+    /**
+     * Costs, incomes and profit or loss of every bucket between the dates. Every source is grouped by bucket in
+     * a single query and merged here
+     *
+     * @return a record per bucket, from and to dates of the first and last ones are clamped to the range
+     * @throws BadRequestException if the range has more buckets than the configured max
+     */
+    public List<FinancialDto> getSeries(Optional<FinancialDto> financial, FinancialBucket bucket,
+                                        HttpServletRequest req) {
+        var userId = jwtUtils.getUserId(req);
 
         var from = fUtils.getFromDate(financial);
         var to = fUtils.getToDate(financial);
 
-        var sellIncomes = fUtils.getSellIncomes(financial, req, pageable, userId);
-        var dodIncomes = fUtils.getDodIncomes(req, pageable, userId, from, to);
-        var buyCosts = fUtils.getBuyCosts(financial, req, pageable, userId);
-        var dodCosts = fUtils.getDodCosts(req, pageable, userId, from, to);
+        if (bucket.count(from, to) > reportProperties.maxBuckets())
+            throw new BadRequestException("Series can't have more than " + reportProperties.maxBuckets()
+                    + " buckets, use a shorter range or a bigger bucket");
+
+        var costs = new TreeMap<LocalDateTime, Money>();
+        var incomes = new TreeMap<LocalDateTime, Money>();
+        for (var start = bucket.truncate(from); start.isBefore(to); start = bucket.next(start)) {
+            costs.put(start, Money.zero());
+            incomes.put(start, Money.zero());
+        }
+
+        var buyCosts = reportExecutor.supply("buyCostsSeries",
+                () -> fUtils.getBuyCostsByBucket(userId, from, to, bucket));
+        var dodCosts = reportExecutor.supply("dodCostsSeries",
+                () -> fUtils.getDodCostsByBucket(userId, from, to, bucket));
+        var sellIncomes = reportExecutor.supply("sellIncomesSeries",
+                () -> fUtils.getSellIncomesByBucket(userId, from, to, bucket));
+        var dodIncomes = reportExecutor.supply("dodIncomesSeries",
+                () -> fUtils.getDodIncomesByBucket(userId, from, to, bucket));
+        reportExecutor.awaitAll(buyCosts, dodCosts, sellIncomes, dodIncomes);
+
+        mergeBuckets(costs, reportExecutor.result(buyCosts));
+        mergeBuckets(costs, reportExecutor.result(dodCosts));
+        mergeBuckets(incomes, reportExecutor.result(sellIncomes));
+        mergeBuckets(incomes, reportExecutor.result(dodIncomes));
+
+        incomes.keySet().forEach(start -> costs.putIfAbsent(start, Money.zero()));
+        var series = new ArrayList<FinancialDto>(costs.size());
+        costs.forEach((start, cost) -> {
+            var bucketFrom = start.isBefore(from) ? from : start;
+            var end = bucket.next(start);
+            var bucketTo = end.isAfter(to) ? to : end;
+            var income = incomes.getOrDefault(start, Money.zero());
+            series.add(getProfitOrLoss(cost.toBigDecimal(), income.toBigDecimal(), bucketFrom, bucketTo));
+        });
+        return series;
+    }
+
+    private void mergeBuckets(TreeMap<LocalDateTime, Money> buckets, List<BucketAmountDto> amounts) {
+        amounts.forEach(amount -> buckets.computeIfAbsent(amount.bucket(), start -> Money.zero())
+                .add(amount.amount()));
+    }
 
-        var incomes = sellIncomes.get().add(dodIncomes.get());
-        var costs = buyCosts.get().add(dodCosts.get());
+    private FinancialDto getProfitOrLoss(BigDecimal costs, BigDecimal incomes, LocalDateTime from,
+                                         LocalDateTime to) {
         var profit = BigDecimal.valueOf(0);
         var loss = BigDecimal.valueOf(0);
 
-        if (incomes.compareTo(costs) > 0)
-            profit = calculateProfit(incomes, costs);
-        else if (incomes.compareTo(costs) < 0)
-            loss = calculateLoss(incomes, costs);
+        // without any costs, profit percentage is undefined
+        if (costs.signum() != 0) {
+            if (incomes.compareTo(costs) > 0)
+                profit = calculateProfit(incomes, costs);
+            else if (incomes.compareTo(costs) < 0)
+                loss = calculateLoss(incomes, costs);
+        }
 
         return new FinancialDto(costs, incomes, profit, loss, from, to);
     }
@@ -1,6 +1,11 @@
 package ir.darkdeveloper.anbarinoo.service.Financial;
 
+import ir.darkdeveloper.anbarinoo.dto.BucketAmountDto;
+import ir.darkdeveloper.anbarinoo.dto.Cursor;
+import ir.darkdeveloper.anbarinoo.dto.CursorPage;
+import ir.darkdeveloper.anbarinoo.dto.FinancialBucket;
 import ir.darkdeveloper.anbarinoo.dto.FinancialDto;
+import ir.darkdeveloper.anbarinoo.dto.LineErrorDto;
 import ir.darkdeveloper.anbarinoo.exception.*;
 import ir.darkdeveloper.anbarinoo.model.SellModel;
 import ir.darkdeveloper.anbarinoo.model.ProductModel;
@@ -14,6 +19,7 @@ import org.springframework.context.annotation.Lazy;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
@@ -21,18 +27,25 @@ import org.springframework.stereotype.Service;
 import javax.servlet.http.HttpServletRequest;
 import javax.transaction.Transactional;
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.TreeMap;
 import java.util.function.Supplier;
 
 @Service
 @RequiredArgsConstructor(onConstructor = @__(@Lazy))
 public class SellService {
 
+    private static final String NOT_ENOUGH_IN_STOCK = "Not enough product left in stuck to sell!";
+
     private final SellRepo repo;
     private final JwtUtils jwtUtils;
     private final ProductService productService;
     @Lazy
     private final FinancialUtils fUtils;
+    private final DailyFinancialSummaryService summaryService;
 
 
     @Transactional
@@ -41,7 +54,52 @@ public class SellService {
             checkSellData(sell, Optional.empty());
             // checked sell data validity in checkSellData, so it is safe to use orElseThrow
             saveProductCount(sell.orElseThrow(), req);
-            return repo.save(sell.orElseThrow());
+            var savedSell = repo.save(sell.orElseThrow());
+            summaryService.addSell(getUserId(req), savedSell);
+            return savedSell;
+        });
+    }
+
+    /**
+     * Saves all lines of a receipt in one transaction, lines of a product are taken out of its stock together.
+     * Nothing is saved if a line fails, and all failed lines are reported at once
+     */
+    @Transactional
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
+    public List<SellModel> saveAllSells(List<SellModel> sells, HttpServletRequest req) {
+        return exceptionHandlers(() -> {
+            if (sells == null || sells.isEmpty())
+                throw new BadRequestException("Sell records can't be empty");
+
+            var errors = new ArrayList<LineErrorDto>();
+            var counts = new TreeMap<Long, BigDecimal>();
+            for (int i = 0; i < sells.size(); i++) {
+                var sell = Optional.ofNullable(sells.get(i));
+                try {
+                    checkSellData(sell, Optional.empty());
+                    counts.merge(sell.get().getProduct().getId(), sell.get().getCount(), BigDecimal::add);
+                } catch (BadRequestException e) {
+                    errors.add(new LineErrorDto(i, productIdOf(sell), e.getLocalizedMessage()));
+                }
+            }
+            if (!errors.isEmpty())
+                throw new LinesException("Sell records are not valid", errors);
+
+            // a sorted map, so products are updated in ascending id order
+            var failures = productService.decreaseTotalCounts(counts, NOT_ENOUGH_IN_STOCK, req);
+            if (!failures.isEmpty()) {
+                for (int i = 0; i < sells.size(); i++) {
+                    var productId = sells.get(i).getProduct().getId();
+                    if (failures.containsKey(productId))
+                        errors.add(new LineErrorDto(i, productId, failures.get(productId)));
+                }
+                throw new LinesException("Couldn't sell the products", errors);
+            }
+
+            // new records are persisted as they are, inserts are sent to the database in jdbc batches
+            repo.saveAll(sells);
+            summaryService.addSells(getUserId(req), sells);
+            return sells;
         });
     }
 
@@ -53,7 +111,9 @@ public class SellService {
                     .orElseThrow(() -> new NoContentException("Sell record doesn't exist"));
             // checked sell data validity in checkSellData, so it is safe to use orElseThrow
             updateProductCount(sell.orElseThrow(), preSell, req);
+            summaryService.removeSell(getUserId(req), preSell);
             preSell.update(sell.orElseThrow());
+            summaryService.addSell(getUserId(req), preSell);
             return repo.save(preSell);
         });
     }
@@ -66,6 +126,14 @@ public class SellService {
         });
     }
 
+    public Slice<SellModel> getSellRecordsSliceOfProduct(Long productId, HttpServletRequest req, Pageable pageable) {
+        return exceptionHandlers(() -> {
+            // checked the user is same user in this method
+            var product = productService.getProduct(productId, req);
+            return repo.findSliceByProductId(product.getId(), pageable);
+        });
+    }
+
     public Page<SellModel> getAllSellRecordsOfUser(Long userId, HttpServletRequest req, Pageable pageable) {
         return exceptionHandlers(() -> {
             checkUserIsSameUserForRequest(null, userId, req, "fetch");
@@ -73,6 +141,41 @@ public class SellService {
         });
     }
 
+    public Slice<SellModel> getSellRecordsSliceOfUser(Long userId, HttpServletRequest req, Pageable pageable) {
+        return exceptionHandlers(() -> {
+            checkUserIsSameUserForRequest(null, userId, req, "fetch");
+            return repo.findSliceByProductCategoryUserId(userId, pageable);
+        });
+    }
+
+    /**
+     * Records of product after the cursor in creation order, without counting all of them
+     */
+    public CursorPage<SellModel> getAllSellRecordsOfProduct(Long productId, String cursor, Integer size,
+                                                            HttpServletRequest req) {
+        return exceptionHandlers(() -> {
+            var product = productService.getProduct(productId, req);
+            var after = Cursor.decode(cursor);
+            var records = repo.findAllByProductIdAfter(product.getId(), after.createdAt(), after.id(),
+                    CursorPage.fetchOf(size));
+            return CursorPage.of(records, size, SellModel::getCreatedAt, SellModel::getId);
+        });
+    }
+
+    /**
+     * Records of user after the cursor in creation order, without counting all of them
+     */
+    public CursorPage<SellModel> getAllSellRecordsOfUser(Long userId, String cursor, Integer size,
+                                                         HttpServletRequest req) {
+        return exceptionHandlers(() -> {
+            checkUserIsSameUserForRequest(null, userId, req, "fetch");
+            var after = Cursor.decode(cursor);
+            var records = repo.findAllByProductCategoryUserIdAfter(userId, after.createdAt(), after.id(),
+                    CursorPage.fetchOf(size));
+            return CursorPage.of(records, size, SellModel::getCreatedAt, SellModel::getId);
+        });
+    }
+
     public SellModel getSell(Long sellId, HttpServletRequest req) {
         return exceptionHandlers(() -> {
             var foundSellRecord = repo.findById(sellId)
@@ -90,6 +193,7 @@ public class SellService {
                     .orElseThrow(() -> new NoContentException("Sell record doesn't exist"));
             checkUserIsSameUserForRequest(sell.getProduct(), null, req, "delete sell record of");
             repo.deleteById(sellId);
+            summaryService.removeSell(getUserId(req), sell);
             deleteProductCount(sell, req);
             return ResponseEntity.ok("Sell record Deleted");
         });
@@ -107,6 +211,36 @@ public class SellService {
         });
     }
 
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
+    public Slice<SellModel> getSellRecordsSliceOfUserFromDateTo(Long userId, Optional<FinancialDto> financial,
+                                                                HttpServletRequest req, Pageable pageable) {
+        return exceptionHandlers(() -> {
+            var from = fUtils.getFromDate(financial);
+            var to = fUtils.getToDate(financial);
+            checkUserIsSameUserForRequest(null, userId, req, "fetch");
+            return repo.findSliceByProductCategoryUserIdAndCreatedAtAfterAndCreatedAtBefore(userId, from, to, pageable);
+        });
+    }
+
+    /**
+     * Sum of sell incomes of user excluding tax, calculated in the database.
+     * The caller resolves user id of the request, so it is not checked here and can run on other threads
+     */
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
+    public BigDecimal getSellIncomesOfUserFromDateTo(Long userId, LocalDateTime from, LocalDateTime to) {
+        return exceptionHandlers(() -> repo.sumIncomesOfUserFromDateTo(userId, from, to));
+    }
+
+    /**
+     * Sell incomes of user excluding tax per bucket, empty buckets are omitted.
+     * The caller resolves user id of the request, so it is not checked here and can run on other threads
+     */
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
+    public List<BucketAmountDto> getSellIncomesOfUserByBucket(Long userId, LocalDateTime from, LocalDateTime to,
+                                                              FinancialBucket bucket) {
+        return exceptionHandlers(() -> repo.sumIncomesOfUserByBucket(userId, from, to, bucket.unit()));
+    }
+
     @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
     public Page<SellModel> getAllSellRecordsOfProductFromDateTo(Long productId, Optional<FinancialDto> financial,
                                                                 HttpServletRequest req, Pageable pageable) {
@@ -119,10 +253,26 @@ public class SellService {
         });
     }
 
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_USER')")
+    public Slice<SellModel> getSellRecordsSliceOfProductFromDateTo(Long productId, Optional<FinancialDto> financial,
+                                                                   HttpServletRequest req, Pageable pageable) {
+        return exceptionHandlers(() -> {
+            var from = fUtils.getFromDate(financial);
+            var to = fUtils.getToDate(financial);
+            var product = productService.getProduct(productId, req);
+            checkUserIsSameUserForRequest(product, null, req, "fetch");
+            return repo.findSliceByProductIdAndCreatedAtAfterAndCreatedAtBefore(productId, from, to, pageable);
+        });
+    }
+
+
+    private Long getUserId(HttpServletRequest req) {
+        return jwtUtils.getUserId(req);
+    }
 
     private void checkUserIsSameUserForRequest(ProductModel product, Long userId, HttpServletRequest req,
                                                String operation) {
-        var id = jwtUtils.getUserId(req.getHeader("refresh_token"));
+        var id = jwtUtils.getUserId(req);
         if (userId == null) {
             if (!product.getCategory().getUser().getId().equals(id))
                 throw new ForbiddenException("You can't " + operation + " another user's products");
@@ -133,43 +283,33 @@ public class SellService {
     }
 
     private void saveProductCount(SellModel sell, HttpServletRequest req) {
-        var preProduct = productService.getProduct(sell.getProduct().getId(), req);
-        var product = new ProductModel();
-        checkUserIsSameUserForRequest(preProduct, null, req, "save buy record of");
-        if (preProduct.getTotalCount().compareTo(sell.getCount()) >= 0) {
-            product.setTotalCount(preProduct.getTotalCount().subtract(sell.getCount()));
-            preProduct.setCanUpdate(false);
-            productService.updateProductFromBuyOrSell(Optional.of(product), preProduct, req);
-        } else throw new BadRequestException("Not enough product left in stuck to sell!");
+        productService.decreaseTotalCount(sell.getProduct().getId(), sell.getCount(), NOT_ENOUGH_IN_STOCK, req);
     }
 
     private void updateProductCount(SellModel sell, SellModel preSell, HttpServletRequest req) {
-        var preProduct = productService.getProduct(sell.getProduct().getId(), req);
+        var productId = sell.getProduct().getId();
         var product = new ProductModel();
-        checkUserIsSameUserForRequest(preProduct, null, req, "save buy record of");
-        var difference = (BigDecimal) null;
         product.setPrice(sell.getPrice());
-        if (preProduct.getTotalCount().compareTo(sell.getCount()) >= 0) {
-
-            if (sell.getCount().compareTo(preSell.getCount()) > 0) {
-                difference = sell.getCount().subtract(preSell.getCount());
-                product.setTotalCount(preProduct.getTotalCount().subtract(difference));
-            } else if (sell.getCount().compareTo(preSell.getCount()) < 0) {
-                difference = preSell.getCount().subtract(sell.getCount());
-                product.setTotalCount(preProduct.getTotalCount().add(difference));
-            }
-            productService.updateProductFromBuyOrSell(Optional.of(product), preProduct, req);
-        } else throw new BadRequestException("Not enough product left in stuck to sell!");
+        productService.updateProductFromBuyOrSell(Optional.of(product),
+                productService.getProduct(productId, req), req);
+
+        var difference = sell.getCount().subtract(preSell.getCount());
+        if (difference.signum() > 0)
+            productService.decreaseTotalCount(productId, difference, NOT_ENOUGH_IN_STOCK, req);
+        else if (difference.signum() < 0)
+            productService.increaseTotalCount(productId, difference.negate(), req);
     }
 
     private void deleteProductCount(SellModel sell, HttpServletRequest req) {
-        var preProduct = productService.getProduct(sell.getProduct().getId(), req);
-        var product = new ProductModel();
-        product.setTotalCount(preProduct.getTotalCount().subtract(sell.getCount()));
-        productService.updateProductFromBuyOrSell(Optional.of(product), preProduct, req);
+        // sold products go back to the stock
+        productService.increaseTotalCount(sell.getProduct().getId(), sell.getCount(), req);
     }
 
 
+    private Long productIdOf(Optional<SellModel> sell) {
+        return sell.map(SellModel::getProduct).map(ProductModel::getId).orElse(null);
+    }
+
     private void checkSellData(Optional<SellModel> sell, Optional<Long> sellId) {
         sell.map(SellModel::getProduct)
                 .map(ProductModel::getId)
@@ -190,6 +330,8 @@ public class SellService {
     private <T> T exceptionHandlers(Supplier<T> supplier) {
         try {
             return supplier.get();
+        } catch (LinesException e) {
+            throw e;
         } catch (DataException | BadRequestException e) {
             throw new BadRequestException(e.getLocalizedMessage());
         } catch (ForbiddenException e) {
@@ -1,5 +1,9 @@
 package ir.darkdeveloper.anbarinoo.service;
 
+import ir.darkdeveloper.anbarinoo.dto.Cursor;
+import ir.darkdeveloper.anbarinoo.dto.CursorPage;
+import ir.darkdeveloper.anbarinoo.dto.ImportResultDto;
+import ir.darkdeveloper.anbarinoo.dto.LineErrorDto;
 import ir.darkdeveloper.anbarinoo.exception.BadRequestException;
 import ir.darkdeveloper.anbarinoo.exception.NoContentException;
 import ir.darkdeveloper.anbarinoo.model.BuyModel;
@@ -7,31 +11,55 @@ import ir.darkdeveloper.anbarinoo.model.CategoryModel;
 import ir.darkdeveloper.anbarinoo.model.ProductModel;
 import ir.darkdeveloper.anbarinoo.repository.ProductRepository;
 import ir.darkdeveloper.anbarinoo.service.Financial.BuyService;
+import ir.darkdeveloper.anbarinoo.service.Financial.DailyFinancialSummaryService;
+import ir.darkdeveloper.anbarinoo.util.ExcelUtils;
 import ir.darkdeveloper.anbarinoo.util.IOUtils;
 import ir.darkdeveloper.anbarinoo.util.JwtUtils;
 import ir.darkdeveloper.anbarinoo.util.ProductUtils;
 import ir.darkdeveloper.anbarinoo.util.UserUtils.UserAuthUtils;
 import lombok.RequiredArgsConstructor;
+import org.hibernate.engine.spi.SessionImplementor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import javax.servlet.http.HttpServletRequest;
 import javax.transaction.Transactional;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.SortedMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntBiFunction;
 
 
 @Service
 @RequiredArgsConstructor
 public class ProductService {
+
+    private static final int IMPORT_BATCH_SIZE = 500;
+    private static final int DEFAULT_TAX = 9;
+
     private final ProductRepository repo;
     private final IOUtils ioUtils;
     private final ProductUtils productUtils;
     private final BuyService buyService;
     private final UserAuthUtils userAuthUtils;
     private final JwtUtils jwtUtils;
+    private final DailyFinancialSummaryService summaryService;
+    private final CategoryService categoryService;
+    @PersistenceContext
+    private EntityManager entityManager;
 
     /**
      * saves a new product to the user id of refresh token
@@ -57,6 +85,39 @@ public class ProductService {
 
     }
 
+    /**
+     * Imports products of an xlsx or csv file. After a header row, columns of every row are name, description,
+     * category name, count, price and tax, which is optional. Categories of the user are fetched once per file.
+     * Products and their first buys are saved in batches, rows that fail are reported and the rest are imported
+     */
+    @Transactional
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_ADMIN','OP_ACCESS_USER')")
+    public ImportResultDto importProducts(MultipartFile file, HttpServletRequest req) {
+        if (file == null || file.isEmpty())
+            throw new BadRequestException("File can't be empty");
+
+        var categories = new HashMap<String, CategoryModel>();
+        categoryService.getCategoriesByUser(req)
+                .forEach(category -> categories.putIfAbsent(category.getName().trim(), category));
+        var errors = new ArrayList<LineErrorDto>();
+        var batch = new ArrayList<ProductModel>();
+        var imported = new AtomicInteger();
+        ExcelUtils.readRows(file, (rowNum, cells) -> {
+            // first row is the header
+            if (rowNum == 0)
+                return;
+            try {
+                batch.add(productOfRow(cells, categories));
+            } catch (BadRequestException e) {
+                errors.add(new LineErrorDto(rowNum + 1, null, e.getLocalizedMessage()));
+            }
+            if (batch.size() == IMPORT_BATCH_SIZE)
+                imported.addAndGet(saveImportedBatch(batch, req));
+        });
+        imported.addAndGet(saveImportedBatch(batch, req));
+        return new ImportResultDto(imported.get(), errors);
+    }
+
     /**
      * For regular update with no images: another users can't update, not users who owned products
      * If images and files and id provided, then they will be ignored
@@ -98,8 +159,83 @@ public class ProductService {
         productUtils.updateProduct(product.get(), preProduct);
     }
 
+    /**
+     * Takes the count out of the product's stock with a conditional update, concurrent sells can't oversell it
+     *
+     * @param message of the exception when there is not enough left in stock
+     */
+    @Transactional
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_ADMIN','OP_ACCESS_USER')")
+    public void decreaseTotalCount(Long productId, BigDecimal count, String message, HttpServletRequest req) {
+        var userId = jwtUtils.getUserId(req);
+        if (repo.decreaseTotalCount(productId, userId, count) == 0) {
+            // throws if the product doesn't exist or belongs to another user
+            getProduct(productId, req);
+            throw new BadRequestException(message);
+        }
+        refreshIfLoaded(productId);
+    }
+
+    /**
+     * Takes the counts out of the stocks of products in ascending id order, so concurrent batches lock the rows in
+     * the same order and can't deadlock. Products that fail don't stop the others, the caller rolls back
+     *
+     * @param counts count to take out of each product, keyed by product id
+     * @return reason of failure of each failed product, empty if all of them are taken out
+     */
+    @Transactional
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_ADMIN','OP_ACCESS_USER')")
+    public Map<Long, String> decreaseTotalCounts(SortedMap<Long, BigDecimal> counts, String message,
+                                                 HttpServletRequest req) {
+        var userId = jwtUtils.getUserId(req);
+        return updateTotalCounts(counts, userId, message,
+                (productId, count) -> repo.decreaseTotalCount(productId, userId, count));
+    }
+
+    /**
+     * Adds the counts to the stocks of products in ascending id order, like {@link #decreaseTotalCounts}
+     *
+     * @return reason of failure of each failed product, empty if all of them are added
+     */
+    @Transactional
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_ADMIN','OP_ACCESS_USER')")
+    public Map<Long, String> increaseTotalCounts(SortedMap<Long, BigDecimal> counts, HttpServletRequest req) {
+        var userId = jwtUtils.getUserId(req);
+        return updateTotalCounts(counts, userId, null,
+                (productId, count) -> repo.increaseTotalCount(productId, userId, count));
+    }
+
+    /**
+     * Checks the products like {@link #increaseTotalCounts} without changing their stocks, for batches that are
+     * going to be rolled back anyway
+     *
+     * @return reason of failure of each failed product, empty if all of them are products of the user
+     */
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_ADMIN','OP_ACCESS_USER')")
+    public Map<Long, String> checkProductsOfUser(Collection<Long> productIds, HttpServletRequest req) {
+        var userId = jwtUtils.getUserId(req);
+        var idsOfUser = new HashSet<>(repo.findIdsOfUser(productIds, userId));
+        var failedIds = productIds.stream().filter(productId -> !idsOfUser.contains(productId)).toList();
+        return failuresOf(failedIds, userId, null);
+    }
+
+    /**
+     * Adds the count to the product's stock with a single update
+     */
+    @Transactional
+    @PreAuthorize("hasAnyAuthority('OP_ACCESS_ADMIN','OP_ACCESS_USER')")
+    public void increaseTotalCount(Long productId, BigDecimal count, HttpServletRequest req) {
+        var userId = jwtUtils.getUserId(req);
+        if (repo.increaseTotalCount(productId, userId, count) == 0) {
+            // throws if the product doesn't exist or belongs to another user
+            getProduct(productId, req);
+            throw new NoContentException("This product does not exist");
+        }
+        refreshIfLoaded(productId);
+    }
+
     public Page<ProductModel> findByNameContains(String name, Pageable pageable, HttpServletRequest req) {
-        var userId = jwtUtils.getUserId(req.getHeader("refresh_token"));
+        var userId = jwtUtils.getUserId(req);
         return repo.findByNameContainsAndUserId(name, userId, pageable);
     }
 
@@ -113,12 +249,27 @@ public class ProductService {
     }
 
     public Page<ProductModel> getAllProducts(Pageable pageable, HttpServletRequest req) {
-        var userId = jwtUtils.getUserId(req.getHeader("refresh_token"));
+        var userId = jwtUtils.getUserId(req);
         return repo.findAllByUserId(userId, pageable);
     }
 
+    public Slice<ProductModel> getProductsSlice(Pageable pageable, HttpServletRequest req) {
+        var userId = jwtUtils.getUserId(req);
+        return repo.findSliceByUserId(userId, pageable);
+    }
+
+    /**
+     * Products of user after the cursor in creation order, without counting all of them
+     */
+    public CursorPage<ProductModel> getAllProducts(String cursor, Integer size, HttpServletRequest req) {
+        var userId = jwtUtils.getUserId(req);
+        var after = Cursor.decode(cursor);
+        var products = repo.findAllByUserIdAfter(userId, after.createdAt(), after.id(), CursorPage.fetchOf(size));
+        return CursorPage.of(products, size, ProductModel::getCreatedAt, ProductModel::getId);
+    }
+
     public List<ProductModel> getAllProducts(HttpServletRequest req) {
-        var userId = jwtUtils.getUserId(req.getHeader("refresh_token"));
+        var userId = jwtUtils.getUserId(req);
         return repo.findAllByUserId(userId);
     }
 
@@ -168,9 +319,112 @@ public class ProductService {
                 .orElseThrow(() -> new NoContentException("This product does not exist"));
         userAuthUtils.checkUserIsSameUserForRequest(foundProduct.getCategory().getUser().getId(),
                 req, "delete");
+        // buys and sells of the product are deleted by cascade
+        summaryService.removeProduct(foundProduct.getCategory().getUser().getId(), id);
         repo.deleteById(id);
         ioUtils.deleteProductFiles(foundProduct);
         return "Deleted the product";
     }
 
+    private ProductModel productOfRow(List<String> cells, Map<String, CategoryModel> categories) {
+        var name = cellOf(cells, 0);
+        if (name == null || name.length() > 50)
+            throw new BadRequestException("Name can't be empty or longer than 50 characters");
+        var categoryName = cellOf(cells, 2);
+        if (categoryName == null)
+            throw new BadRequestException("Category can't be empty");
+        var category = categories.get(categoryName);
+        if (category == null)
+            throw new BadRequestException("Category " + categoryName + " does not exist");
+
+        BigDecimal count, price;
+        int tax;
+        try {
+            var countCell = cellOf(cells, 3);
+            var priceCell = cellOf(cells, 4);
+            var taxCell = cellOf(cells, 5);
+            count = countCell != null ? new BigDecimal(countCell.replace(",", "")) : null;
+            price = priceCell != null ? new BigDecimal(priceCell.replace(",", "")) : null;
+            tax = taxCell != null ? new BigDecimal(taxCell).intValueExact() : DEFAULT_TAX;
+        } catch (ArithmeticException | NumberFormatException e) {
+            throw new BadRequestException("Count, price and tax must be numbers");
+        }
+        if (count == null || count.signum() <= 0)
+            throw new BadRequestException("Count of product can't be null or zero");
+        if (price == null || price.signum() <= 0)
+            throw new BadRequestException("Price of product can't be null or zero");
+
+        var product = ProductModel.builder()
+                .name(name).description(cellOf(cells, 1)).category(category)
+                .totalCount(count).price(price).tax(tax)
+                .build();
+        ioUtils.saveProductImages(product);
+        return product;
+    }
+
+    private String cellOf(List<String> cells, int column) {
+        if (column >= cells.size() || cells.get(column) == null || cells.get(column).isBlank())
+            return null;
+        return cells.get(column).trim();
+    }
+
+    /**
+     * Saves products of the batch and their first buys in jdbc batches, then sets first buy ids of all of them in
+     * a single update. Persistence context is cleared after every batch, so memory of a big import stays flat
+     *
+     * @return count of the saved products
+     */
+    private int saveImportedBatch(List<ProductModel> batch, HttpServletRequest req) {
+        if (batch.isEmpty())
+            return 0;
+        repo.saveAll(batch);
+        var buys = batch.stream()
+                .map(product -> BuyModel.builder()
+                        .product(product).count(product.getTotalCount())
+                        .price(product.getPrice()).tax(product.getTax()).build())
+                .toList();
+        buyService.saveFirstBuys(buys, req);
+        // first buy ids are not set on the entities, so flush doesn't update every product
+        repo.setFirstBuyIds(batch.stream().map(ProductModel::getId).toList());
+        var saved = batch.size();
+        batch.clear();
+        return saved;
+    }
+
+    private Map<Long, String> updateTotalCounts(SortedMap<Long, BigDecimal> counts, Long userId, String message,
+                                                ToIntBiFunction<Long, BigDecimal> update) {
+        var failedIds = new ArrayList<Long>();
+        counts.forEach((productId, count) -> {
+            if (update.applyAsInt(productId, count) == 0)
+                failedIds.add(productId);
+            else
+                refreshIfLoaded(productId);
+        });
+        return failuresOf(failedIds, userId, message);
+    }
+
+    /**
+     * @param message reason of the failed products that belong to the user, like not enough in stock
+     */
+    private Map<Long, String> failuresOf(List<Long> failedIds, Long userId, String message) {
+        var failures = new HashMap<Long, String>();
+        failedIds.forEach(productId -> failures.put(productId, "This product does not exist"));
+        repo.findAllById(failedIds).forEach(product -> failures.put(product.getId(),
+                product.getCategory().getUser().getId().equals(userId)
+                        ? message : "You can't change another user's products"));
+        return failures;
+    }
+
+    /**
+     * Stock updates don't go through the persistence context, so a product that is already loaded gets the new
+     * total count from the database. Other loaded entities stay attached
+     */
+    private void refreshIfLoaded(Long productId) {
+        var session = entityManager.unwrap(SessionImplementor.class);
+        var persister = session.getFactory().getMetamodel().entityPersister(ProductModel.class);
+        var product = session.getPersistenceContext().getEntity(session.generateEntityKey(productId, persister));
+        if (product != null)
+            entityManager.refresh(product);
+    }
+
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ package ir.darkdeveloper.anbarinoo.service;
 
 import javax.transaction.Transactional;
 
+import ir.darkdeveloper.anbarinoo.security.jwt.RefreshTokenIndex;
 import org.springframework.stereotype.Service;
 import ir.darkdeveloper.anbarinoo.model.RefreshModel;
 import ir.darkdeveloper.anbarinoo.repository.RefreshRepo;
@@ -10,32 +11,51 @@ import lombok.RequiredArgsConstructor;
 
 import java.util.Optional;
 
+/**
+ * Tokens are read from {@link RefreshTokenIndex}, the tokens table is queried only for the ones that are not
+ * cached. Writes go to both
+ */
 @Service
 @RequiredArgsConstructor
 public class RefreshService {
 
     private final RefreshRepo repo;
+    private final RefreshTokenIndex index;
 
     @Transactional
     public void saveToken(RefreshModel model) {
-        repo.save(model);
+        index.put(repo.save(model));
     }
 
     @Transactional
     public void deleteTokenByUserId(Long id) {
         repo.deleteTokenByUserId(id);
+        index.evictUser(id);
     }
 
     public RefreshModel getRefreshByUserId(Long id) {
-        return repo.getRefreshByUserId(id);
+        return index.getByUserId(id, () -> Optional.ofNullable(repo.getRefreshByUserId(id))).orElse(null);
     }
 
     public Long getIdByUserId(Long adminId) {
-        return repo.getIdByUserId(adminId);
+        return Optional.ofNullable(getRefreshByUserId(adminId)).map(RefreshModel::getId).orElse(null);
     }
 
     public Optional<Long> getUserIdByRefreshToken(String token) {
-        return repo.findUserIdByRefreshToken(token);
+        var hash = RefreshModel.hashToken(token);
+        return index.getByHash(hash, () -> repo.findByRefreshTokenHash(hash)).map(RefreshModel::getUserId);
+    }
+
+    /**
+     * Hashes the tokens that are saved before the hash column was added
+     *
+     * @return number of hashed tokens
+     */
+    @Transactional
+    public int hashUnhashedTokens() {
+        var tokens = repo.findAllByRefreshTokenHashIsNullAndRefreshTokenIsNotNull();
+        tokens.forEach(token -> token.setRefreshTokenHash(RefreshModel.hashToken(token.getRefreshToken())));
+        return tokens.size();
     }
 
 }
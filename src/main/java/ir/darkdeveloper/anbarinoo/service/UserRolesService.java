@@ -1,11 +1,16 @@
 package ir.darkdeveloper.anbarinoo.service;
 
+import ir.darkdeveloper.anbarinoo.exception.NoContentException;
 import ir.darkdeveloper.anbarinoo.model.UserRole;
+import ir.darkdeveloper.anbarinoo.repository.UserRepo;
 import ir.darkdeveloper.anbarinoo.repository.UserRolesRepo;
+import ir.darkdeveloper.anbarinoo.security.jwt.TokenRevocations;
+import ir.darkdeveloper.anbarinoo.security.jwt.UserPrincipalCache;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 
 import javax.transaction.Transactional;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -15,10 +20,15 @@ import java.util.Set;
 public class UserRolesService {
 
     private final UserRolesRepo repo;
+    private final UserRepo userRepo;
+    private final UserPrincipalCache principalCache;
+    private final TokenRevocations revocations;
 
     @Transactional
     public String saveRole(UserRole role) {
         repo.save(role);
+        principalCache.evictAll();
+        revocations.revokeAll();
         return "Role created";
     }
 
@@ -32,9 +42,24 @@ public class UserRolesService {
 
     public String deleteRole(Long id) {
         repo.deleteById(id);
+        principalCache.evictAll();
+        revocations.revokeAll();
         return "Role deleted";
     }
 
+    /**
+     * Tokens of the user have the authorities of the old roles, so they are revoked
+     */
+    @Transactional
+    public String setRolesOfUser(Long userId, Set<Long> roleIds) {
+        var user = userRepo.findById(userId).orElseThrow(() -> new NoContentException("User does not exist"));
+        user.setRoles(new HashSet<>(repo.findAllById(roleIds)));
+        userRepo.save(user);
+        principalCache.evictUser(userId);
+        revocations.revokeUser(userId);
+        return "Roles of the user changed";
+    }
+
     public Boolean exists(String name) {
         return repo.findByName(name).isPresent();
     }
@@ -5,6 +5,8 @@ import ir.darkdeveloper.anbarinoo.exception.BadRequestException;
 import ir.darkdeveloper.anbarinoo.exception.NoContentException;
 import ir.darkdeveloper.anbarinoo.model.UserModel;
 import ir.darkdeveloper.anbarinoo.repository.UserRepo;
+import ir.darkdeveloper.anbarinoo.security.jwt.TokenRevocations;
+import ir.darkdeveloper.anbarinoo.security.jwt.UserPrincipalCache;
 import ir.darkdeveloper.anbarinoo.util.AdminUserProperties;
 import ir.darkdeveloper.anbarinoo.util.JwtUtils;
 import ir.darkdeveloper.anbarinoo.util.UserUtils.Operations;
@@ -13,6 +15,7 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
@@ -26,7 +29,7 @@ import java.util.Optional;
 
 @Service("userService")
 @RequiredArgsConstructor
-public class UserService implements UserDetailsService {
+public class UserService implements UserDetailsService, UserDetailsPasswordService {
 
     private final UserRepo repo;
     private final UserAuthUtils userAuthUtils;
@@ -35,6 +38,8 @@ public class UserService implements UserDetailsService {
     private final VerificationService verificationService;
     private final RefreshService refreshService;
     private final JwtUtils jwtUtils;
+    private final UserPrincipalCache principalCache;
+    private final TokenRevocations revocations;
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
@@ -42,6 +47,20 @@ public class UserService implements UserDetailsService {
                 .orElseThrow(() -> new NoContentException("User does not exist"));
     }
 
+    /**
+     * Called on login when the password hash has another cost than the configured one. Admin password is in
+     * the config, so it is not changed
+     */
+    @Override
+    @Transactional
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        if (user instanceof UserModel model) {
+            repo.updatePasswordById(model.getId(), newPassword);
+            model.setPassword(newPassword);
+        }
+        return user;
+    }
+
 
     /**
      * #model.getId() == null should be null. if wasn't other users can change other users' data due to
@@ -52,6 +71,10 @@ public class UserService implements UserDetailsService {
         user.map(UserModel::getId).ifPresent(i -> user.get().setId(null));
         userAuthUtils.checkUserIsSameUserForRequest(id, req, "update");
         var updatedUser = userOP.updateUser(user, id);
+        principalCache.evictUser(id);
+        // password is changed, otherwise updateUser throws
+        if (user.map(UserModel::getPassword).isPresent() && user.map(UserModel::getPasswordRepeat).isPresent())
+            revocations.revokeUser(id);
         return repo.save(updatedUser);
     }
 
@@ -90,6 +113,8 @@ public class UserService implements UserDetailsService {
         var user = repo.findById(id).orElseThrow(() -> new NoContentException("User does not exist"));
         userAuthUtils.checkUserIsSameUserForRequest(id, req, "delete");
         userOP.deleteUser(user);
+        principalCache.evictUser(id);
+        revocations.revokeUser(id);
         return "Deleted the user";
     }
 
@@ -97,12 +122,12 @@ public class UserService implements UserDetailsService {
         return repo.getAll(pageable);
     }
 
-    @Transactional
+    // not transactional, the password is verified outside of the transactions of the writes
     public UserModel loginUser(LoginDto loginDto, HttpServletResponse response) {
         return userAuthUtils.authenticateUser(loginDto, response);
     }
 
-    @Transactional
+    // not transactional, like loginUser
     public UserModel signUpUser(Optional<UserModel> model, HttpServletResponse response) {
         return userAuthUtils.signup(model, response);
     }
@@ -117,7 +142,7 @@ public class UserService implements UserDetailsService {
      * @return a simple user model that won't query for other data like categories, products ...
      */
     public UserModel getSimpleCurrentUserInfo(HttpServletRequest req) {
-        var id = jwtUtils.getUserId(req.getHeader("refresh_token"));
+        var id = jwtUtils.getUserId(req);
         return repo.getSimpleUserInfo(id).orElseThrow(() -> new NoContentException("User does not exist"));
     }
 
@@ -129,6 +154,7 @@ public class UserService implements UserDetailsService {
         if (model.getExpiresAt().isAfter(LocalDateTime.now())) {
             model.setVerifiedAt(LocalDateTime.now());
             repo.updateEnabledById(model.getUser().getId(), true);
+            principalCache.evictUser(model.getUser().getId());
             verificationService.saveToken(model);
             return "Email Successfully verified";
         } else
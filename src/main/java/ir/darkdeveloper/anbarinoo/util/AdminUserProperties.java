@@ -5,8 +5,12 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 
 import java.util.List;
 
+/**
+ * @param password     raw password of admin, it is hashed once on startup when passwordHash is not set
+ * @param passwordHash password of admin, already hashed with the password encoder of app
+ */
 @ConfigurationProperties(prefix = "user.admin")
-public record AdminUserProperties(Long id, String username, String password,
+public record AdminUserProperties(Long id, String username, String password, String passwordHash,
                                   List<Authority> authorities) {
 
 }
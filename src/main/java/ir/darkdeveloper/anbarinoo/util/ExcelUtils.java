@@ -0,0 +1,179 @@
+package ir.darkdeveloper.anbarinoo.util;
+
+import ir.darkdeveloper.anbarinoo.exception.BadRequestException;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.springframework.web.multipart.MultipartFile;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+public class ExcelUtils {
+
+    private static final String CSV_CONTENT_TYPE = "text/csv";
+    private static final int CSV_BUFFER_SIZE = 64 * 1024;
+    private static final int BYTE_ORDER_MARK = '\uFEFF';
+
+    /**
+     * Reads rows of a csv file, or the first sheet of an xlsx file with the event model of POI, so the workbook
+     * is never loaded in memory as a whole. Files named .csv or sent as text/csv are read as csv
+     *
+     * @param rowConsumer gets the row number starting from 0 and formatted cell values, empty cells are null
+     */
+    public static void readRows(MultipartFile file, BiConsumer<Integer, List<String>> rowConsumer) {
+        if (isCsv(file)) {
+            readCsvRows(file, rowConsumer);
+            return;
+        }
+        try {
+            // the package is opened from a file, opening it from a stream buffers the whole zip in memory
+            var tempFile = Files.createTempFile("anbarinoo-import", ".xlsx");
+            try {
+                file.transferTo(tempFile);
+                readRows(OPCPackage.open(tempFile.toFile(), PackageAccess.READ), rowConsumer);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new BadRequestException("File is not a valid xlsx file", e);
+        }
+    }
+
+    private static void readRows(OPCPackage pkg, BiConsumer<Integer, List<String>> rowConsumer)
+            throws IOException, OpenXML4JException, SAXException, ParserConfigurationException {
+        try (pkg) {
+            var reader = new XSSFReader(pkg);
+            var sheets = reader.getSheetsData();
+            if (!sheets.hasNext())
+                return;
+            var handler = new XSSFSheetXMLHandler(reader.getStylesTable(), null,
+                    new ReadOnlySharedStringsTable(pkg), new RowHandler(rowConsumer), new DataFormatter(), false);
+            var parser = XMLHelper.newXMLReader();
+            parser.setContentHandler(handler);
+            try (var sheet = sheets.next()) {
+                parser.parse(new InputSource(sheet));
+            }
+        }
+    }
+
+    private static boolean isCsv(MultipartFile file) {
+        var name = file.getOriginalFilename();
+        return CSV_CONTENT_TYPE.equals(file.getContentType())
+                || (name != null && name.toLowerCase(Locale.ROOT).endsWith(".csv"));
+    }
+
+    /**
+     * Reads rows of a utf-8 csv file one char at a time. Quoted values may have commas, quotes as "" and line
+     * breaks. Blank lines are skipped, but still counted in row numbers
+     */
+    private static void readCsvRows(MultipartFile file, BiConsumer<Integer, List<String>> rowConsumer) {
+        try (var reader = new BufferedReader(new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8),
+                CSV_BUFFER_SIZE)) {
+            var cells = new ArrayList<String>();
+            var cell = new StringBuilder();
+            var rowNum = 0;
+            var quoted = false;
+            var c = reader.read();
+            if (c == BYTE_ORDER_MARK)
+                c = reader.read();
+            for (; c != -1; c = reader.read()) {
+                if (quoted) {
+                    if (c != '"') {
+                        cell.append((char) c);
+                        continue;
+                    }
+                    reader.mark(1);
+                    if (reader.read() == '"') {
+                        cell.append('"');
+                    } else {
+                        reader.reset();
+                        quoted = false;
+                    }
+                    continue;
+                }
+                switch (c) {
+                    case '"' -> quoted = true;
+                    case ',' -> cells.add(takeCell(cell));
+                    case '\n' -> {
+                        cells.add(takeCell(cell));
+                        acceptCsvRow(rowNum++, cells, rowConsumer);
+                    }
+                    case '\r' -> {
+                    }
+                    default -> cell.append((char) c);
+                }
+            }
+            if (!cell.isEmpty() || !cells.isEmpty()) {
+                cells.add(takeCell(cell));
+                acceptCsvRow(rowNum, cells, rowConsumer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String takeCell(StringBuilder cell) {
+        var value = cell.isEmpty() ? null : cell.toString();
+        cell.setLength(0);
+        return value;
+    }
+
+    private static void acceptCsvRow(int rowNum, List<String> cells,
+                                     BiConsumer<Integer, List<String>> rowConsumer) {
+        if (cells.stream().anyMatch(Objects::nonNull))
+            rowConsumer.accept(rowNum, cells);
+        cells.clear();
+    }
+
+    private static class RowHandler implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+        private final BiConsumer<Integer, List<String>> rowConsumer;
+        private final List<String> cells = new ArrayList<>();
+
+        private RowHandler(BiConsumer<Integer, List<String>> rowConsumer) {
+            this.rowConsumer = rowConsumer;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            cells.clear();
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            rowConsumer.accept(rowNum, cells);
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            // empty cells are not in the sheet at all, so the column comes from the reference
+            var column = cellReference != null ? new CellReference(cellReference).getCol() : cells.size();
+            while (cells.size() < column)
+                cells.add(null);
+            cells.add(formattedValue);
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+package ir.darkdeveloper.anbarinoo.util.Financial;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import ir.darkdeveloper.anbarinoo.dto.FinancialDto;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * Size and time bounded cache of financial reports. Every user has a generation number which is a part of the
+ * keys, a financial write of user increases it, so the old reports of user can't be found anymore and will be
+ * evicted by size or time later, without scanning the keys. Generations are kept in a fixed number of slots
+ * shared by users, so a write may also make the reports of another user of the slot unreachable
+ */
+@Component
+public class FinancialReportCache {
+
+    public enum ReportType {COSTS, INCOMES, PROFIT_OR_LOSS}
+
+    private record Key(Long userId, long generation, ReportType type, LocalDateTime from, LocalDateTime to) {
+    }
+
+    private record Entry(FinancialDto report, long expiresAt) {
+    }
+
+    private final AtomicLongArray generations;
+    private final Map<Key, Entry> reports;
+    private final long ttlNanos;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public FinancialReportCache(FinancialReportProperties properties, MeterRegistry meterRegistry) {
+        ttlNanos = properties.cacheTtl().toNanos();
+        hits = meterRegistry.counter("financial.report.cache", "result", "hit");
+        misses = meterRegistry.counter("financial.report.cache", "result", "miss");
+        evictions = meterRegistry.counter("financial.report.cache.evictions");
+        var maxSize = properties.cacheSize();
+        // at least a slot for every cached report, as a power of two
+        generations = new AtomicLongArray(Integer.highestOneBit(Math.max(maxSize, 16) - 1) << 1);
+        reports = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                var full = size() > maxSize;
+                if (full)
+                    evictions.increment();
+                return full;
+            }
+        };
+        Gauge.builder("financial.report.cache.size", this, FinancialReportCache::size).register(meterRegistry);
+    }
+
+    /**
+     * @param report calculates the report when it is not cached
+     */
+    public FinancialDto get(Long userId, ReportType type, LocalDateTime from, LocalDateTime to,
+                            Supplier<FinancialDto> report) {
+        // generation is read before calculating, so a report that is calculated during a write is never found
+        var key = new Key(userId, generations.get(slot(userId)), type, from, to);
+        var now = System.nanoTime();
+        synchronized (reports) {
+            var entry = reports.get(key);
+            if (entry != null && entry.expiresAt() - now > 0) {
+                hits.increment();
+                return entry.report();
+            }
+            if (entry != null) {
+                reports.remove(key);
+                evictions.increment();
+            }
+        }
+        misses.increment();
+        var calculated = report.get();
+        synchronized (reports) {
+            reports.put(key, new Entry(calculated, now + ttlNanos));
+        }
+        return calculated;
+    }
+
+    /**
+     * Makes the cached reports of user unreachable. Inside a transaction, it happens after commit too, so reports
+     * that are calculated before the commit don't stay cached
+     */
+    public void evictUser(Long userId) {
+        var slot = slot(userId);
+        generations.incrementAndGet(slot);
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    generations.incrementAndGet(slot);
+                }
+            });
+    }
+
+    public int size() {
+        synchronized (reports) {
+            return reports.size();
+        }
+    }
+
+    private int slot(Long userId) {
+        var hash = userId.hashCode();
+        return (hash ^ (hash >>> 16)) & (generations.length() - 1);
+    }
+}
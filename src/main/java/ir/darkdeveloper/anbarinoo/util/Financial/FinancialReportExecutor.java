@@ -0,0 +1,120 @@
+package ir.darkdeveloper.anbarinoo.util.Financial;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import ir.darkdeveloper.anbarinoo.exception.InternalServerException;
+import ir.darkdeveloper.anbarinoo.exception.ServiceUnavailableException;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutorService;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Runs independent components of a financial report, like buy costs and sell incomes, at the same time.
+ * Security context of the caller is available to the components, so @PreAuthorize checks of services still work.
+ * Components should not use the request, it may be recycled when they are cancelled
+ */
+@Component
+public class FinancialReportExecutor implements DisposableBean {
+
+    private final ThreadPoolTaskExecutor threadPool;
+    private final ExecutorService executor;
+    private final MeterRegistry meterRegistry;
+    private final Duration timeout;
+    private final Duration retryAfter;
+    private final Counter timeouts;
+
+    public FinancialReportExecutor(FinancialReportProperties properties, MeterRegistry meterRegistry) {
+        threadPool = new ThreadPoolTaskExecutor();
+        threadPool.setCorePoolSize(properties.threads());
+        threadPool.setMaxPoolSize(properties.threads());
+        threadPool.setQueueCapacity(properties.queueCapacity());
+        threadPool.setThreadNamePrefix("financial-report-");
+        threadPool.initialize();
+        executor = new DelegatingSecurityContextExecutorService(threadPool.getThreadPoolExecutor());
+        this.meterRegistry = meterRegistry;
+        this.timeout = properties.timeout();
+        retryAfter = properties.retryAfter();
+        timeouts = meterRegistry.counter("financial.report.timeouts");
+    }
+
+    /**
+     * @param component name of the component in financial.report.component timer metric
+     * @throws ServiceUnavailableException when all threads are busy and the queue is full
+     */
+    public <T> Future<T> supply(String component, Supplier<T> supplier) {
+        var timer = Timer.builder("financial.report.component")
+                .tag("component", component)
+                .register(meterRegistry);
+        try {
+            return executor.submit(() -> timer.record(supplier));
+        } catch (RejectedExecutionException e) {
+            // running it on the caller would escape the timeout of awaitAll
+            throw new ServiceUnavailableException("Too many financial reports are running, try again later",
+                    retryAfter);
+        }
+    }
+
+    /**
+     * Waits for all components until the timeout. Running components are interrupted on timeout or on the first
+     * failure, and exceptions of the components are thrown as they are
+     */
+    public void awaitAll(Future<?>... components) {
+        var deadline = System.nanoTime() + timeout.toNanos();
+        try {
+            for (var component : components)
+                component.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            cancel(components);
+            throw new InternalServerException("Financial report took too long, try a shorter date range");
+        } catch (InterruptedException e) {
+            cancel(components);
+            Thread.currentThread().interrupt();
+            throw new InternalServerException("Financial report is interrupted");
+        } catch (ExecutionException e) {
+            cancel(components);
+            throw unwrap(e);
+        }
+    }
+
+    /**
+     * @return result of a component that is completed by {@link #awaitAll}
+     */
+    public <T> T result(Future<T> component) {
+        try {
+            return component.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalServerException("Financial report is interrupted");
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private void cancel(Future<?>... components) {
+        for (var component : components)
+            component.cancel(true);
+    }
+
+    private RuntimeException unwrap(ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException cause)
+            return cause;
+        return new InternalServerException(e.getCause().getLocalizedMessage(), e.getCause());
+    }
+
+    @Override
+    public void destroy() {
+        threadPool.shutdown();
+    }
+}
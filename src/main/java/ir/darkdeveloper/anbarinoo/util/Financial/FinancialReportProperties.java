@@ -0,0 +1,26 @@
+package ir.darkdeveloper.anbarinoo.util.Financial;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * @param threads       threads that run components of financial reports at the same time
+ * @param queueCapacity waiting components, reports are rejected when it is full
+ * @param timeout       max time to wait for all components of a report
+ * @param cacheSize     max cached reports, least recently used ones are evicted first
+ * @param cacheTtl      time a cached report is valid since it is calculated
+ * @param maxBuckets    max buckets of a time series, longer ranges are rejected
+ * @param retryAfter    sent to the clients whose reports are rejected because the queue is full
+ */
+@ConfigurationProperties(prefix = "financial.report")
+public record FinancialReportProperties(@DefaultValue("8") Integer threads,
+                                        @DefaultValue("100") Integer queueCapacity,
+                                        @DefaultValue("10s") Duration timeout,
+                                        @DefaultValue("1000") Integer cacheSize,
+                                        @DefaultValue("5m") Duration cacheTtl,
+                                        @DefaultValue("1000") Integer maxBuckets,
+                                        @DefaultValue("2s") Duration retryAfter) {
+
+}
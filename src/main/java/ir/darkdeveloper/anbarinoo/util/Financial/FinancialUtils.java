@@ -1,21 +1,23 @@
 package ir.darkdeveloper.anbarinoo.util.Financial;
 
 import ir.darkdeveloper.anbarinoo.config.StartupConfig;
+import ir.darkdeveloper.anbarinoo.dto.BucketAmountDto;
+import ir.darkdeveloper.anbarinoo.dto.FinancialBucket;
 import ir.darkdeveloper.anbarinoo.dto.FinancialDto;
 import ir.darkdeveloper.anbarinoo.exception.BadRequestException;
+import ir.darkdeveloper.anbarinoo.repository.Financial.DailyFinancialSummaryRepo;
 import ir.darkdeveloper.anbarinoo.service.Financial.BuyService;
+import ir.darkdeveloper.anbarinoo.service.Financial.DailyFinancialSummaryService;
 import ir.darkdeveloper.anbarinoo.service.Financial.DebtOrDemandService;
 import ir.darkdeveloper.anbarinoo.service.Financial.SellService;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Component;
 
-import javax.servlet.http.HttpServletRequest;
 import javax.validation.constraints.NotNull;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.atomic.AtomicReference;
 
 @Component
 @RequiredArgsConstructor
@@ -24,67 +26,56 @@ public class FinancialUtils {
     private final DebtOrDemandService dodService;
     private final SellService sellService;
     private final BuyService buyService;
+    private final DailyFinancialSummaryService summaryService;
+    private final DailyFinancialSummaryRepo summaryRepo;
 
 
     @NotNull
-    public AtomicReference<BigDecimal> getDodCosts(HttpServletRequest req, Pageable pageable, Long userId,
-                                                   LocalDateTime from, LocalDateTime to) {
-        var dods = dodService.getDODFromToDate(userId, true,
-                true, from, to, req, pageable);
+    public BigDecimal getDodCosts(Long userId, LocalDateTime from, LocalDateTime to) {
+        return summaryService.sumFromDateTo(from, to,
+                (fromDay, toDay) -> summaryRepo.sumDodDebtsOfUserBetweenDays(userId, fromDay, toDay),
+                (f, t) -> dodService.getDODAmountFromToDate(userId, true, true, f, t));
+    }
 
-        var dodCosts = new AtomicReference<>(new BigDecimal(0));
+    @NotNull
+    public BigDecimal getDodIncomes(Long userId, LocalDateTime from, LocalDateTime to) {
+        return summaryService.sumFromDateTo(from, to,
+                (fromDay, toDay) -> summaryRepo.sumDodDemandsOfUserBetweenDays(userId, fromDay, toDay),
+                (f, t) -> dodService.getDODAmountFromToDate(userId, false, true, f, t));
+    }
 
-        dods.forEach(dod -> dodCosts.set(dodCosts.get().add(dod.getAmount())));
-        return dodCosts;
+    @NotNull
+    public BigDecimal getBuyCosts(Long userId, LocalDateTime from, LocalDateTime to) {
+        return summaryService.sumFromDateTo(from, to,
+                (fromDay, toDay) -> summaryRepo.sumBuyCostsOfUserBetweenDays(userId, fromDay, toDay),
+                (f, t) -> buyService.getBuyCostsOfUserFromDateTo(userId, f, t));
     }
 
     @NotNull
-    public AtomicReference<BigDecimal> getDodIncomes(HttpServletRequest req, Pageable pageable, Long userId,
-                                                     LocalDateTime from, LocalDateTime to) {
-        var dods = dodService.getDODFromToDate(userId, false,
-                true, from, to, req, pageable);
+    public BigDecimal getSellIncomes(Long userId, LocalDateTime from, LocalDateTime to) {
+        return summaryService.sumFromDateTo(from, to,
+                (fromDay, toDay) -> summaryRepo.sumSellIncomesOfUserBetweenDays(userId, fromDay, toDay),
+                (f, t) -> sellService.getSellIncomesOfUserFromDateTo(userId, f, t));
+    }
 
-        var dodIncomes = new AtomicReference<>(new BigDecimal(0));
+    public List<BucketAmountDto> getDodCostsByBucket(Long userId, LocalDateTime from,
+                                                     LocalDateTime to, FinancialBucket bucket) {
+        return dodService.getCheckedOutDODAmountByBucket(userId, true, from, to, bucket);
+    }
 
-        dods.forEach(dod -> dodIncomes.set(dodIncomes.get().add(dod.getAmount())));
-        return dodIncomes;
+    public List<BucketAmountDto> getDodIncomesByBucket(Long userId, LocalDateTime from,
+                                                       LocalDateTime to, FinancialBucket bucket) {
+        return dodService.getCheckedOutDODAmountByBucket(userId, false, from, to, bucket);
     }
 
-    @NotNull
-    public AtomicReference<BigDecimal> getBuyCosts(Optional<FinancialDto> financial, HttpServletRequest req,
-                                                   Pageable pageable, Long userId) {
-        var buys = buyService.getAllBuyRecordsOfUserFromDateTo(userId, financial,
-                req, pageable).getContent();
-        var buyCosts = new AtomicReference<>(new BigDecimal(0));
-
-        buys.forEach(buy -> {
-            var initCost = buy.getCount().multiply(buy.getPrice());
-            var costWithTax = new BigDecimal(0);
-            if (buy.getTax() != null && buy.getTax() != 0)
-                costWithTax = initCost.multiply(BigDecimal.valueOf(buy.getTax(), 2));
-
-            buyCosts.set(buyCosts.get().add(initCost.add(costWithTax)));
-        });
-        return buyCosts;
+    public List<BucketAmountDto> getBuyCostsByBucket(Long userId, LocalDateTime from,
+                                                     LocalDateTime to, FinancialBucket bucket) {
+        return buyService.getBuyCostsOfUserByBucket(userId, from, to, bucket);
     }
 
-    @NotNull
-    public AtomicReference<BigDecimal> getSellIncomes(Optional<FinancialDto> financial, HttpServletRequest req,
-                                                      Pageable pageable, Long userId) {
-        var sells = sellService.getAllSellRecordsOfUserFromDateTo(userId, financial,
-                req, pageable).getContent();
-
-        var incomes = new AtomicReference<>(new BigDecimal(0));
-
-        sells.forEach(sell -> {
-            var initIncomes = sell.getCount().multiply(sell.getPrice());
-            var incomesWithTax = new BigDecimal(0);
-            if (sell.getTax() != null && sell.getTax() != 0)
-                incomesWithTax = initIncomes.multiply(BigDecimal.valueOf(sell.getTax(), 2));
-
-            incomes.set(incomes.get().add(initIncomes.subtract(incomesWithTax)));
-        });
-        return incomes;
+    public List<BucketAmountDto> getSellIncomesByBucket(Long userId, LocalDateTime from,
+                                                        LocalDateTime to, FinancialBucket bucket) {
+        return sellService.getSellIncomesOfUserByBucket(userId, from, to, bucket);
     }
 
     public LocalDateTime getFromDate(Optional<FinancialDto> financial) {
@@ -0,0 +1,166 @@
+package ir.darkdeveloper.anbarinoo.util.Financial;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Mutable exact sum of monetary values. Values are kept in a long scaled by 10^scale, where scale starts at 4 like
+ * the money columns and grows to the largest scale of the added values, and the sum switches to BigDecimal only
+ * when the long would overflow. Not thread safe
+ */
+public final class Money {
+
+    public static final int SCALE = 4;
+
+    // count * price * percent of scaled values has scale 4 + 4 + 2
+    private static final long PRODUCT_DIVISOR = 1_000_000L;
+    private static final long NOT_SCALABLE = Long.MIN_VALUE;
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++)
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+
+    private long scaled;
+    private int scale = SCALE;
+    // not null after an overflow
+    private BigDecimal big;
+
+    public static Money zero() {
+        return new Money();
+    }
+
+    /**
+     * @return count * price * percent / 100, rounded half up to scale 4
+     */
+    public static BigDecimal percentOf(BigDecimal count, BigDecimal price, int percent) {
+        return zero().addPercentOf(count, price, percent).toBigDecimal();
+    }
+
+    /**
+     * Adds the value without rounding. Trailing zeros of a value with more fraction digits than the sum are
+     * stripped first, like 1.5000000000 of the sums of the database, so the sum keeps its scale when it can
+     */
+    public Money add(BigDecimal value) {
+        if (big == null) {
+            if (value.scale() > scale)
+                value = value.stripTrailingZeros();
+            if (rescale(value.scale())) {
+                var unscaled = toScaledLong(value, scale);
+                if (unscaled != NOT_SCALABLE) {
+                    try {
+                        scaled = Math.addExact(scaled, unscaled);
+                        return this;
+                    } catch (ArithmeticException ignored) {
+                    }
+                }
+            }
+            big = BigDecimal.valueOf(scaled, scale);
+        }
+        big = big.add(value);
+        return this;
+    }
+
+    public Money add(Money other) {
+        if (other.big == null && big == null)
+            return addScaled(other.scaled, other.scale);
+        return add(other.toBigDecimal());
+    }
+
+    /**
+     * Adds count * price * percent / 100, like cost of a buy with tax. The term is rounded half up to scale 4
+     */
+    public Money addPercentOf(BigDecimal count, BigDecimal price, int percent) {
+        if (big == null) {
+            var scaledCount = toScaledLong(count, SCALE);
+            var scaledPrice = toScaledLong(price, SCALE);
+            if (scaledCount != NOT_SCALABLE && scaledPrice != NOT_SCALABLE) {
+                try {
+                    var product = Math.multiplyExact(Math.multiplyExact(scaledCount, scaledPrice), percent);
+                    return addScaled(divideHalfUp(product), SCALE);
+                } catch (ArithmeticException ignored) {
+                }
+            }
+        }
+        return add(count.multiply(price).multiply(BigDecimal.valueOf(percent))
+                .movePointLeft(2)
+                .setScale(SCALE, RoundingMode.HALF_UP));
+    }
+
+    public Money negate() {
+        if (big != null || scaled == Long.MIN_VALUE)
+            big = toBigDecimal().negate();
+        else
+            scaled = -scaled;
+        return this;
+    }
+
+    /**
+     * @return the exact sum, with at least scale 4
+     */
+    public BigDecimal toBigDecimal() {
+        return big != null ? big : BigDecimal.valueOf(scaled, scale);
+    }
+
+    /**
+     * @param value scaled by 10^valueScale
+     */
+    private Money addScaled(long value, int valueScale) {
+        if (big == null && rescale(valueScale)) {
+            try {
+                scaled = Math.addExact(scaled, Math.multiplyExact(value, POWERS_OF_TEN[scale - valueScale]));
+                return this;
+            } catch (ArithmeticException ignored) {
+            }
+        }
+        return add(BigDecimal.valueOf(value, valueScale));
+    }
+
+    /**
+     * Raises scale of the long sum to the new scale, if it is bigger
+     *
+     * @return false when the sum doesn't fit in a long with the new scale
+     */
+    private boolean rescale(int newScale) {
+        if (newScale <= scale)
+            return true;
+        if (newScale - scale >= POWERS_OF_TEN.length)
+            return false;
+        try {
+            scaled = Math.multiplyExact(scaled, POWERS_OF_TEN[newScale - scale]);
+            scale = newScale;
+            return true;
+        } catch (ArithmeticException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return value scaled by 10^scale, or NOT_SCALABLE when it has more fraction digits or doesn't fit in a long
+     */
+    private static long toScaledLong(BigDecimal value, int scale) {
+        if (value.scale() > scale)
+            return NOT_SCALABLE;
+        try {
+            // keeps the compact long of value, so no BigInteger is allocated
+            return value.scaleByPowerOfTen(scale).longValueExact();
+        } catch (ArithmeticException e) {
+            return NOT_SCALABLE;
+        }
+    }
+
+    private static long divideHalfUp(long product) {
+        var quotient = product / PRODUCT_DIVISOR;
+        var remainder = product % PRODUCT_DIVISOR;
+        if (Math.abs(remainder) * 2 >= PRODUCT_DIVISOR)
+            quotient += Long.signum(product);
+        return quotient;
+    }
+
+    @Override
+    public String toString() {
+        return toBigDecimal().toPlainString();
+    }
+}
@@ -2,18 +2,23 @@ package ir.darkdeveloper.anbarinoo.util;
 
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.Collection;
 import java.util.Date;
+import java.util.Optional;
 import java.util.function.Function;
 
-import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+
+import ir.darkdeveloper.anbarinoo.exception.ForbiddenException;
+import ir.darkdeveloper.anbarinoo.security.jwt.JwtCodec;
+import ir.darkdeveloper.anbarinoo.security.jwt.RequestPrincipal;
 
 import lombok.Getter;
 import lombok.Setter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.stereotype.Service;
 
 import io.jsonwebtoken.Claims;
@@ -21,7 +26,6 @@ import io.jsonwebtoken.ExpiredJwtException;
 import io.jsonwebtoken.JwtException;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.MalformedJwtException;
-import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.SignatureException;
 import io.jsonwebtoken.UnsupportedJwtException;
 
@@ -30,64 +34,112 @@ import io.jsonwebtoken.UnsupportedJwtException;
 @Setter
 public class JwtUtils {
 
-    // defined in application.properties or application.yml
-    @Value("${jwt.secretKey}")
-    private String secret;
+    public static final String USER_ID_CLAIM = "user_id";
+    public static final String AUTHORITIES_CLAIM = "authorities";
 
     private static final Logger logger = LoggerFactory.getLogger(JwtUtils.class);
 
-    private final PasswordEncoder encoder;
+    private final JwtCodec codec;
     private Long refreshExpire;
     private Long accessExpire;
 
     @Autowired
-    public JwtUtils(PasswordEncoder encoder) {
-        this.encoder = encoder;
+    public JwtUtils(JwtCodec codec) {
+        this.codec = codec;
         refreshExpire = (long) (60 * 60 * 24 * 7 * 3 * 1000);
         accessExpire = (long) (60 * 1000);
     }
 
-    @PostConstruct
-    public void initSecret() {
-        // encodes the jwt secret
-        // note that previous token after restarting application won't work
-        secret = encoder.encode(secret);
-    }
-
     // generates a unique jwt token
     public String generateRefreshToken(String username, Long userId) {
         // expires in 21 days
         var date = new Date(System.currentTimeMillis() + refreshExpire);
-        return Jwts.builder()
-                .signWith(SignatureAlgorithm.HS256, secret)
+        return codec.builder()
                 .setIssuedAt(new Date())
                 .setSubject(username)
-                .claim("user_id", userId).setExpiration(date).compact();
+                .claim(USER_ID_CLAIM, userId).setExpiration(date).compact();
     }
 
-    // Generates access token
-    public String generateAccessToken(String username) {
+    /**
+     * Generates access token. It has the id and authorities of user, so a valid one authenticates the user without
+     * querying the database
+     */
+    public String generateAccessToken(String username, Long userId,
+                                      Collection<? extends GrantedAuthority> authorities) {
         var date = new Date(System.currentTimeMillis() + accessExpire);
-        return Jwts.builder().signWith(SignatureAlgorithm.HS256, secret).setSubject(username)
+        return codec.builder().setSubject(username)
+                .claim(USER_ID_CLAIM, userId)
+                .claim(AUTHORITIES_CLAIM, authorities.stream().map(GrantedAuthority::getAuthority).toList())
                 .setIssuedAt(new Date())
                 .setExpiration(date).compact();
     }
 
+    /**
+     * @return empty if the token is invalid or expired
+     */
+    public Optional<Claims> getValidClaims(String token) {
+        try {
+            return Optional.of(codec.parse(token));
+        } catch (JwtException | IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
     public String getUsername(String token) {
-        return Jwts.parser().setSigningKey(secret).parseClaimsJws(token).getBody().getSubject();
+        return codec.parse(token).getSubject();
     }
 
     public Long getUserId(String refreshToken) {
-        return ((Integer) getAllClaimsFromToken(refreshToken).get("user_id")).longValue();
+        return ((Integer) getAllClaimsFromToken(refreshToken).get(USER_ID_CLAIM)).longValue();
+    }
+
+    /**
+     * User id of the refresh token of the request. The token is verified once per request
+     *
+     * @throws ForbiddenException if the token is missing, invalid or expired
+     */
+    public Long getUserId(HttpServletRequest req) {
+        return getPrincipal(req).map(RequestPrincipal::userId)
+                .orElseThrow(() -> new ForbiddenException("You are logged out. Try logging in again"));
+    }
+
+    /**
+     * Verifies the refresh token of the request on the first call, later calls get the same principal from the
+     * request attributes
+     *
+     * @return empty if the token is missing, invalid or expired
+     */
+    public Optional<RequestPrincipal> getPrincipal(HttpServletRequest req) {
+        if (req.getAttribute(RequestPrincipal.ATTRIBUTE) instanceof RequestPrincipal principal)
+            return Optional.of(principal);
+        var token = req.getHeader("refresh_token");
+        if (token == null)
+            return Optional.empty();
+        Claims claims;
+        try {
+            // verifies the signature and expiration too
+            claims = getAllClaimsFromToken(token);
+        } catch (JwtException | IllegalArgumentException e) {
+            logger.error("Invalid refresh token: {}", e.getMessage());
+            return Optional.empty();
+        }
+        var principal = new RequestPrincipal(((Number) claims.get(USER_ID_CLAIM)).longValue(), claims.getSubject(),
+                token, null);
+        setPrincipal(req, principal);
+        return Optional.of(principal);
+    }
+
+    public void setPrincipal(HttpServletRequest req, RequestPrincipal principal) {
+        req.setAttribute(RequestPrincipal.ATTRIBUTE, principal);
     }
 
     public Claims getAllClaimsFromToken(String token) throws JwtException {
-        return Jwts.parser().setSigningKey(secret).parseClaimsJws(token).getBody();
+        return codec.parse(token);
     }
 
     public Boolean isTokenExpired(String token) {
         try {
-            Jwts.parser().setSigningKey(secret).parseClaimsJws(token);
+            codec.parse(token);
             return false;
         } catch (SignatureException e) {
             logger.error("Invalid JWT signature: {}", e.getMessage());
@@ -8,6 +8,7 @@ import ir.darkdeveloper.anbarinoo.repository.Financial.BuyRepo;
 import ir.darkdeveloper.anbarinoo.repository.ProductRepository;
 import ir.darkdeveloper.anbarinoo.service.CategoryService;
 import ir.darkdeveloper.anbarinoo.service.Financial.BuyService;
+import ir.darkdeveloper.anbarinoo.service.Financial.DailyFinancialSummaryService;
 import ir.darkdeveloper.anbarinoo.util.UserUtils.UserAuthUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -23,7 +24,8 @@ public record ProductUtils(JwtUtils jwtUtils,
                            IOUtils ioUtils,
                            CategoryService categoryService,
                            BuyRepo buyRepo,
-                           UserAuthUtils userAuthUtils) {
+                           UserAuthUtils userAuthUtils,
+                           DailyFinancialSummaryService summaryService) {
 
     @Autowired
     public ProductUtils {
@@ -97,12 +99,18 @@ public record ProductUtils(JwtUtils jwtUtils,
 
 
             buy.get().ifPresent(buyModel -> {
+                // first buy is same as the product until it can't be updated
+                var userId = preProduct.getCategory().getUser().getId();
+                summaryService.removeBuy(userId, BuyModel.builder()
+                        .count(preProduct.getTotalCount()).price(preProduct.getPrice())
+                        .tax(buyModel.getTax()).createdAt(buyModel.getCreatedAt()).build());
                 if (!isCountUpdated.get())
                     buyModel.setCount(preProduct.getTotalCount());
                 if (!isPriceUpdated.get())
                     buyModel.setPrice(preProduct.getPrice());
 
                 preProduct.setCanUpdate(false);
+                summaryService.addBuy(userId, buyModel);
                 buyRepo.save(buyModel);
             });
 
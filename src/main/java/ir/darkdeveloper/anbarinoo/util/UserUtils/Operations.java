@@ -6,14 +6,18 @@ import ir.darkdeveloper.anbarinoo.exception.NoContentException;
 import ir.darkdeveloper.anbarinoo.model.UserModel;
 import ir.darkdeveloper.anbarinoo.model.VerificationModel;
 import ir.darkdeveloper.anbarinoo.repository.UserRepo;
+import ir.darkdeveloper.anbarinoo.service.Financial.DailyFinancialSummaryService;
 import ir.darkdeveloper.anbarinoo.service.RefreshService;
 import ir.darkdeveloper.anbarinoo.service.VerificationService;
 import ir.darkdeveloper.anbarinoo.util.IOUtils;
 import ir.darkdeveloper.anbarinoo.util.email.EmailService;
+import ir.darkdeveloper.anbarinoo.util.email.EmailTemplateType;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -28,6 +32,7 @@ public class Operations {
     private final RefreshService refreshService;
     private final UserRepo repo;
     private final PasswordUtils passwordUtils;
+    private final DailyFinancialSummaryService summaryService;
 
     public void deleteUser(UserModel user) {
         if (!user.isEnabled())
@@ -37,6 +42,7 @@ public class Operations {
         user.getCategories().forEach(cat -> ioUtils.deleteProductImagesOfUser(Optional.of(cat.getProducts())));
 
         refreshService.deleteTokenByUserId(user.getId());
+        summaryService.deleteAllOfUser(user.getId());
         repo.deleteById(user.getId());
     }
 
@@ -79,7 +85,8 @@ public class Operations {
         verificationService.saveToken(emailVerify);
 
         var link = domainName + "/api/user/verify/?t=" + token;
-        emailService.send(user.getEmail(), emailService.buildEmail(user.getName(), link));
+        emailService.send(user.getEmail(), EmailTemplateType.VERIFICATION, LocaleContextHolder.getLocale(),
+                Map.of("name", user.getName(), "link", link));
 
     }
 
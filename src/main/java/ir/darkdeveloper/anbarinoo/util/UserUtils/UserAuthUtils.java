@@ -6,6 +6,7 @@ import ir.darkdeveloper.anbarinoo.model.RefreshModel;
 import ir.darkdeveloper.anbarinoo.model.UserModel;
 import ir.darkdeveloper.anbarinoo.repository.UserRepo;
 import ir.darkdeveloper.anbarinoo.dto.LoginDto;
+import ir.darkdeveloper.anbarinoo.security.jwt.UserPrincipal;
 import ir.darkdeveloper.anbarinoo.service.RefreshService;
 import ir.darkdeveloper.anbarinoo.service.UserRolesService;
 import ir.darkdeveloper.anbarinoo.util.AdminUserProperties;
@@ -15,12 +16,14 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.DisabledException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.annotation.PostConstruct;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.time.format.DateTimeFormatter;
@@ -41,23 +44,38 @@ public class UserAuthUtils {
     private final Boolean userEnabled;
     private final Operations operations;
     private final PasswordUtils passwordUtils;
+    private final TransactionTemplate transaction;
+    // hashing the password takes a long time, so it is done once
+    private UserDetails adminDetails;
 
     public static final DateTimeFormatter TOKEN_EXPIRATION_FORMAT =
             DateTimeFormatter.ofPattern("EE MMM dd yyyy HH:mm:ss");
 
 
-    @Transactional
+    @PostConstruct
+    private void buildAdminDetails() {
+        var passwordHash = Optional.ofNullable(adminUser.passwordHash())
+                .orElseGet(() -> encoder.encode(adminUser.password()));
+        adminDetails = User.builder().username(adminUser.username())
+                .password(passwordHash).authorities(adminUser.authorities()).build();
+    }
+
+    /**
+     * The password is hashed before the transaction, so no connection is held while it waits for the encoder
+     */
     public UserModel signup(Optional<UserModel> user, HttpServletResponse response) {
         var rawPass = user.map(UserModel::getPassword)
                 .orElseThrow(() -> new PasswordException("Password is required!"));
         validateUserData(user);
-        var role = roleService.findAllByName("USER");
-        user.get().setRoles(role);
+        var passwordHash = encoder.encode(rawPass);
         ioUtils.saveUserImages(user);
-        user.get().setPassword(encoder.encode(user.get().getPassword()));
+        user.get().setPassword(passwordHash);
         user.get().setProvider(AuthProvider.LOCAL);
         user.get().setEnabled(userEnabled);
-        repo.save(user.get());
+        transaction.executeWithoutResult(status -> {
+            user.get().setRoles(roleService.findAllByName("USER"));
+            repo.save(user.get());
+        });
         if (userEnabled)
             return authenticateUser(new LoginDto(user.get().getEmail(), rawPass), response);
         else
@@ -65,6 +83,9 @@ public class UserAuthUtils {
     }
 
     /**
+     * Must not be called in a transaction. Verifying the password waits for the encoder, so only the writes after
+     * it run in a short transaction and no connection is held while it waits
+     *
      * @param loginDto has username and password (LoginDto)
      */
     public UserModel authenticateUser(LoginDto loginDto, HttpServletResponse response) {
@@ -76,36 +97,42 @@ public class UserAuthUtils {
         var rModel = new RefreshModel();
         if (loginDto.username().equals(adminUser.username())) {
             rModel.setUserId(adminUser.id());
-            rModel.setId(refreshService.getIdByUserId(adminUser.id()));
             user.setEnabled(true);
         } else {
             user = repo.findByEmailOrUsername(username)
                     .orElseThrow(() -> new NoContentException("User does not exist"));
-            rModel.setId(refreshService.getIdByUserId(user.getId()));
             rModel.setUserId(user.getId());
         }
 
         var auth = new UsernamePasswordAuthenticationToken(username, password);
 
         if (!user.getEnabled()) {
-            operations.sendEmail(user);
+            var notEnabledUser = user;
+            transaction.executeWithoutResult(status -> operations.sendEmail(notEnabledUser));
             throw new EmailNotValidException("Email verification sent, Check your emails");
         }
 
+        Authentication authentication;
         try {
-            authManager.authenticate(auth);
+            authentication = authManager.authenticate(auth);
         } catch (DisabledException e) {
             throw new EmailNotValidException("Email is not verified!");
+        } catch (ServiceUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             throw new BadRequestException("Bad Credentials");
         }
 
-        var accessToken = jwtUtils.generateAccessToken(username);
+        var accessToken = jwtUtils.generateAccessToken(username, rModel.getUserId(),
+                authentication.getAuthorities());
         var refreshToken = jwtUtils.generateRefreshToken(username, rModel.getUserId());
 
         rModel.setAccessToken(accessToken);
         rModel.setRefreshToken(refreshToken);
-        refreshService.saveToken(rModel);
+        transaction.executeWithoutResult(status -> {
+            rModel.setId(refreshService.getIdByUserId(rModel.getUserId()));
+            refreshService.saveToken(rModel);
+        });
 
         setupHeader(response, accessToken, refreshToken);
         return user;
@@ -122,16 +149,21 @@ public class UserAuthUtils {
     }
 
     public Optional<? extends UserDetails> loadUserByUsername(String username) {
-        if (username.equals(adminUser.username())) {
-            var authorities = adminUser.authorities();
-            return Optional.of(
-                    User.builder().username(adminUser.username())
-                            .password(encoder.encode(adminUser.password())).authorities(authorities).build()
-            );
-        }
+        // a copy, authentication manager erases the password of the details it authenticates
+        if (username.equals(adminUser.username()))
+            return Optional.of(User.withUserDetails(adminDetails).build());
         return repo.findByEmailOrUsername(username);
     }
 
+    /**
+     * @param details loaded by {@link #loadUserByUsername(String)}
+     */
+    public UserPrincipal toPrincipal(UserDetails details) {
+        if (details instanceof UserModel user)
+            return UserPrincipal.of(user.getId(), user, user.getUserName());
+        return UserPrincipal.of(adminUser.id(), details, null);
+    }
+
     private void validateUserData(Optional<UserModel> user) {
         user.map(UserModel::getId).ifPresent(id -> {
             throw new ForbiddenException("You are not allowed to sign up! :|");
@@ -147,23 +179,27 @@ public class UserAuthUtils {
     }
 
     /**
+     * The token is verified and compared with the stored token at most once per request, the result is kept in
+     * the principal of the request
+     *
      * @param userId if it is null, then it compares id in jwt token and id mapped to this token in database
      */
     public void checkUserIsSameUserForRequest(Long userId, HttpServletRequest req, String operation) {
-        var token = req.getHeader("refresh_token");
-        if (!jwtUtils.isTokenExpired(token)) {
-            var id = jwtUtils.getUserId(token);
-            if (userId != null && !id.equals(userId))
-                throw new ForbiddenException("You don't have permission to " + operation);
-            else {
-                // in case when attacker tried to change the userId in refreshToken
-                // db query
-                var fetchedId = refreshService.getUserIdByRefreshToken(token)
-                        .orElseThrow(() -> new ForbiddenException("You are logged out. Try logging in again"));
-                if (!fetchedId.equals(id))
-                    throw new ForbiddenException("You don't have permission to " + operation);
-            }
-        } else
-            throw new ForbiddenException("You are logged out. Try logging in again");
+        var principal = jwtUtils.getPrincipal(req)
+                .orElseThrow(() -> new ForbiddenException("You are logged out. Try logging in again"));
+        if (userId != null && !principal.userId().equals(userId))
+            throw new ForbiddenException("You don't have permission to " + operation);
+
+        // in case when attacker tried to change the userId in refreshToken
+        var tokenBound = principal.tokenBound();
+        if (tokenBound == null) {
+            // db query
+            var fetchedId = refreshService.getUserIdByRefreshToken(principal.refreshToken())
+                    .orElseThrow(() -> new ForbiddenException("You are logged out. Try logging in again"));
+            tokenBound = fetchedId.equals(principal.userId());
+            jwtUtils.setPrincipal(req, principal.withTokenBound(tokenBound));
+        }
+        if (!tokenBound)
+            throw new ForbiddenException("You don't have permission to " + operation);
     }
 }
@@ -0,0 +1,210 @@
+package ir.darkdeveloper.anbarinoo.util.email;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import ir.darkdeveloper.anbarinoo.model.EmailOutboxModel;
+import ir.darkdeveloper.anbarinoo.repository.EmailOutboxRepo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeMessage;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sends the pending emails of outbox in batches on a bounded pool, every batch over one smtp connection. Failed
+ * emails are retried with exponential backoff, and are dead after the max attempts
+ */
+@Component
+@Slf4j
+public class EmailOutboxDispatcher implements DisposableBean {
+
+    private static final String FROM = "email_verify@anbarino.com";
+
+    private final EmailOutboxRepo repo;
+    private final JavaMailSender mailSender;
+    private final EmailOutboxProperties properties;
+    private final TransactionTemplate transaction;
+    private final ThreadPoolTaskExecutor threadPool;
+    private final AtomicBoolean dispatching = new AtomicBoolean();
+    private final Counter sent;
+    private final Counter failed;
+    private final Counter dead;
+
+    public EmailOutboxDispatcher(EmailOutboxRepo repo, JavaMailSender mailSender, EmailOutboxProperties properties,
+                                 PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.repo = repo;
+        this.mailSender = mailSender;
+        this.properties = properties;
+        transaction = new TransactionTemplate(transactionManager);
+        threadPool = new ThreadPoolTaskExecutor();
+        threadPool.setCorePoolSize(properties.threads());
+        threadPool.setMaxPoolSize(properties.threads());
+        threadPool.setQueueCapacity(properties.queueCapacity());
+        threadPool.setThreadNamePrefix("email-outbox-");
+        threadPool.initialize();
+        sent = meterRegistry.counter("email.outbox", "result", "sent");
+        failed = meterRegistry.counter("email.outbox", "result", "failed");
+        dead = meterRegistry.counter("email.outbox", "result", "dead");
+    }
+
+    /**
+     * Dispatches soon after the current transaction commits, so new emails don't wait for the next scheduled one
+     */
+    public void dispatchAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    dispatchAsync();
+                }
+            });
+        else
+            dispatchAsync();
+    }
+
+    /**
+     * Claims the due emails and sends them in batches
+     *
+     * @return number of claimed emails
+     */
+    @Scheduled(fixedDelay = 5_000)
+    public int dispatch() {
+        // one dispatch of this instance at a time, others skip the rows it claims
+        if (!dispatching.compareAndSet(false, true))
+            return 0;
+        try {
+            var claimed = claimDue();
+            for (var from = 0; from < claimed.size(); from += properties.batchSize()) {
+                var batch = claimed.subList(from, Math.min(claimed.size(), from + properties.batchSize()));
+                try {
+                    threadPool.execute(() -> sendBatch(batch));
+                } catch (TaskRejectedException e) {
+                    // they are sent after their lease
+                    log.warn("Email outbox is full, {} emails are sent later", batch.size());
+                }
+            }
+            return claimed.size();
+        } finally {
+            dispatching.set(false);
+        }
+    }
+
+    @Scheduled(cron = "0 0 4 * * *")
+    public void deleteSentEmails() {
+        var deleted = transaction.execute(status ->
+                repo.deleteSentBefore(LocalDateTime.now().minus(properties.sentRetention())));
+        log.info("Deleted {} sent emails of outbox", deleted);
+    }
+
+    private void dispatchAsync() {
+        try {
+            threadPool.execute(this::dispatch);
+        } catch (TaskRejectedException e) {
+            // the scheduled dispatch sends them
+        }
+    }
+
+    private List<EmailOutboxModel> claimDue() {
+        var limit = properties.batchSize() * (properties.threads() + properties.queueCapacity());
+        return transaction.execute(status -> {
+            var now = LocalDateTime.now();
+            var due = repo.findDue(now, PageRequest.of(0, limit));
+            due.forEach(email -> email.setNextAttemptAt(now.plus(properties.lease())));
+            return new ArrayList<>(due);
+        });
+    }
+
+    private void sendBatch(List<EmailOutboxModel> batch) {
+        var messages = new IdentityHashMap<MimeMessage, EmailOutboxModel>();
+        Map<EmailOutboxModel, String> errors = new IdentityHashMap<>();
+        for (var email : batch) {
+            try {
+                messages.put(toMessage(email), email);
+            } catch (MessagingException e) {
+                errors.put(email, e.getMessage());
+            }
+        }
+        try {
+            // one connection for all of the messages
+            if (!messages.isEmpty())
+                mailSender.send(messages.keySet().toArray(MimeMessage[]::new));
+        } catch (MailSendException e) {
+            e.getFailedMessages().forEach((message, cause) -> {
+                var email = messages.get(message);
+                if (email != null)
+                    errors.put(email, cause.getMessage());
+            });
+            if (e.getFailedMessages().isEmpty())
+                messages.values().forEach(email -> errors.put(email, e.getMessage()));
+        } catch (MailException e) {
+            messages.values().forEach(email -> errors.put(email, e.getMessage()));
+        }
+        transaction.executeWithoutResult(status -> {
+            var now = LocalDateTime.now();
+            batch.forEach(email -> {
+                if (errors.containsKey(email))
+                    fail(email, errors.get(email), now);
+                else {
+                    email.setStatus(EmailOutboxModel.Status.SENT);
+                    email.setSentAt(now);
+                    sent.increment();
+                }
+            });
+            repo.saveAll(batch);
+        });
+    }
+
+    private void fail(EmailOutboxModel email, String error, LocalDateTime now) {
+        email.setAttempts(email.getAttempts() + 1);
+        email.setLastError(error == null || error.length() <= 1000 ? error : error.substring(0, 1000));
+        if (email.getAttempts() >= properties.maxAttempts()) {
+            email.setStatus(EmailOutboxModel.Status.DEAD);
+            dead.increment();
+            log.error("Email {} to {} is dead after {} attempts: {}", email.getId(), email.getRecipient(),
+                    email.getAttempts(), error);
+            return;
+        }
+        email.setNextAttemptAt(now.plus(backoff(email.getAttempts())));
+        failed.increment();
+    }
+
+    private Duration backoff(int attempts) {
+        var backoff = properties.initialBackoff().multipliedBy(1L << Math.min(attempts - 1, 30));
+        return backoff.compareTo(properties.maxBackoff()) > 0 ? properties.maxBackoff() : backoff;
+    }
+
+    private MimeMessage toMessage(EmailOutboxModel email) throws MessagingException {
+        var mimeMessage = mailSender.createMimeMessage();
+        var helper = new MimeMessageHelper(mimeMessage, "utf-8");
+        helper.setText(email.getBody(), true);
+        helper.setTo(email.getRecipient());
+        helper.setSubject(email.getSubject());
+        helper.setFrom(FROM);
+        return mimeMessage;
+    }
+
+    @Override
+    public void destroy() {
+        threadPool.shutdown();
+    }
+}
@@ -0,0 +1,28 @@
+package ir.darkdeveloper.anbarinoo.util.email;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * @param threads        threads that send batches of emails at the same time
+ * @param queueCapacity  waiting batches, more are sent on a later dispatch
+ * @param batchSize      emails that are sent over one smtp connection
+ * @param maxAttempts    failed attempts of an email before it is dead
+ * @param initialBackoff wait after the first failure, it is doubled after every failure
+ * @param maxBackoff     max wait between the attempts
+ * @param lease          time an email that is being sent isn't picked again by other dispatches
+ * @param sentRetention  time sent emails are kept
+ */
+@ConfigurationProperties(prefix = "email.outbox")
+public record EmailOutboxProperties(@DefaultValue("2") Integer threads,
+                                    @DefaultValue("10") Integer queueCapacity,
+                                    @DefaultValue("20") Integer batchSize,
+                                    @DefaultValue("8") Integer maxAttempts,
+                                    @DefaultValue("30s") Duration initialBackoff,
+                                    @DefaultValue("1h") Duration maxBackoff,
+                                    @DefaultValue("5m") Duration lease,
+                                    @DefaultValue("7d") Duration sentRetention) {
+
+}
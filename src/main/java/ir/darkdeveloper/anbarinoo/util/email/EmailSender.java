@@ -2,6 +2,6 @@ package ir.darkdeveloper.anbarinoo.util.email;
 
 public interface EmailSender {
     
-    void send(String to, String email);
+    void send(String to, String subject, String email);
 
 }
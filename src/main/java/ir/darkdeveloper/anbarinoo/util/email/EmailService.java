@@ -1,75 +1,35 @@
 package ir.darkdeveloper.anbarinoo.util.email;
 
-import javax.mail.MessagingException;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.mail.javamail.MimeMessageHelper;
-import org.springframework.scheduling.annotation.Async;
+import ir.darkdeveloper.anbarinoo.model.EmailOutboxModel;
+import ir.darkdeveloper.anbarinoo.repository.EmailOutboxRepo;
 import org.springframework.stereotype.Service;
 
 import lombok.AllArgsConstructor;
 
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Emails are saved to the outbox in the transaction of caller, and sent by {@link EmailOutboxDispatcher} after
+ * it commits, so a slow mail server doesn't slow down the requests
+ */
 @Service
 @AllArgsConstructor
 public class EmailService implements EmailSender {
 
-    private final JavaMailSender mailSender;
-    private static final Logger LOGGER = LoggerFactory.getLogger(EmailService.class);
+    private final EmailOutboxRepo outboxRepo;
+    private final EmailOutboxDispatcher dispatcher;
+    private final EmailTemplates templates;
 
     @Override
-    @Async
-    public void send(String to, String email) {
-        try {
-            var mimeMessage = mailSender.createMimeMessage();
-            var helper = new MimeMessageHelper(mimeMessage, "utf-8");
-            helper.setText(email, true);
-            helper.setTo(to);
-            helper.setSubject("confirm email");
-            helper.setFrom("email_verify@anbarino.com");
-            mailSender.send(mimeMessage);
-        } catch (MessagingException e) {
-            LOGGER.error("failed to send email", e);
-            throw new IllegalStateException("failed to send email");
-        }
+    public void send(String to, String subject, String email) {
+        outboxRepo.save(new EmailOutboxModel(to, subject, email));
+        dispatcher.dispatchAfterCommit();
     }
 
-    public String buildEmail(String name, String link) {
-        return "<div style=\"font-family:Helvetica,Arial,sans-serif;font-size:16px;margin:0;color:#0b0c0c\">\n" + "\n"
-                + "<span style=\"display:none;font-size:1px;color:#fff;max-height:0\"></span>\n" + "\n"
-                + "  <table role=\"presentation\" width=\"100%\" style=\"border-collapse:collapse;min-width:100%;width:100%!important\" cellpadding=\"0\" cellspacing=\"0\" border=\"0\">\n"
-                + "    <tbody><tr>\n" + "      <td width=\"100%\" height=\"53\" bgcolor=\"#0b0c0c\">\n" + "        \n"
-                + "        <table role=\"presentation\" width=\"100%\" style=\"border-collapse:collapse;max-width:580px\" cellpadding=\"0\" cellspacing=\"0\" border=\"0\" align=\"center\">\n"
-                + "          <tbody><tr>\n" + "            <td width=\"70\" bgcolor=\"#0b0c0c\" valign=\"middle\">\n"
-                + "                <table role=\"presentation\" cellpadding=\"0\" cellspacing=\"0\" border=\"0\" style=\"border-collapse:collapse\">\n"
-                + "                  <tbody><tr>\n" + "                    <td style=\"padding-left:10px\">\n"
-                + "                  \n" + "                    </td>\n"
-                + "                    <td style=\"font-size:28px;line-height:1.315789474;Margin-top:4px;padding-left:10px\">\n"
-                + "                      <span style=\"font-family:Helvetica,Arial,sans-serif;font-weight:700;color:#ffffff;text-decoration:none;vertical-align:top;display:inline-block\">Confirm your email</span>\n"
-                + "                    </td>\n" + "                  </tr>\n" + "                </tbody></table>\n"
-                + "              </a>\n" + "            </td>\n" + "          </tr>\n" + "        </tbody></table>\n"
-                + "        \n" + "      </td>\n" + "    </tr>\n" + "  </tbody></table>\n"
-                + "  <table role=\"presentation\" class=\"m_-6186904992287805515content\" align=\"center\" cellpadding=\"0\" cellspacing=\"0\" border=\"0\" style=\"border-collapse:collapse;max-width:580px;width:100%!important\" width=\"100%\">\n"
-                + "    <tbody><tr>\n" + "      <td width=\"10\" height=\"10\" valign=\"middle\"></td>\n"
-                + "      <td>\n" + "        \n"
-                + "                <table role=\"presentation\" width=\"100%\" cellpadding=\"0\" cellspacing=\"0\" border=\"0\" style=\"border-collapse:collapse\">\n"
-                + "                  <tbody><tr>\n"
-                + "                    <td bgcolor=\"#1D70B8\" width=\"100%\" height=\"10\"></td>\n"
-                + "                  </tr>\n" + "                </tbody></table>\n" + "        \n" + "      </td>\n"
-                + "      <td width=\"10\" valign=\"middle\" height=\"10\"></td>\n" + "    </tr>\n"
-                + "  </tbody></table>\n" + "\n" + "\n" + "\n"
-                + "  <table role=\"presentation\" class=\"m_-6186904992287805515content\" align=\"center\" cellpadding=\"0\" cellspacing=\"0\" border=\"0\" style=\"border-collapse:collapse;max-width:580px;width:100%!important\" width=\"100%\">\n"
-                + "    <tbody><tr>\n" + "      <td height=\"30\"><br></td>\n" + "    </tr>\n" + "    <tr>\n"
-                + "      <td width=\"10\" valign=\"middle\"><br></td>\n"
-                + "      <td style=\"font-family:Helvetica,Arial,sans-serif;font-size:19px;line-height:1.315789474;max-width:560px\">\n"
-                + "        \n"
-                + "            <p style=\"Margin:0 0 20px 0;font-size:19px;line-height:25px;color:#0b0c0c\">Hi " + name
-                + ",</p><p style=\"Margin:0 0 20px 0;font-size:19px;line-height:25px;color:#0b0c0c\"> Thank you for registering. Please click on the below link to activate your account: </p><blockquote style=\"Margin:0 0 20px 0;border-left:10px solid #b1b4b6;padding:15px 0 0.1px 15px;font-size:19px;line-height:25px\"><p style=\"Margin:0 0 20px 0;font-size:19px;line-height:25px;color:#0b0c0c\"> <a href=\""
-                + link + "\">Activate Now</a> </p></blockquote>\n Link will expire in 15 minutes. <p>See you soon</p>"
-                + "        \n" + "      </td>\n" + "      <td width=\"10\" valign=\"middle\"><br></td>\n"
-                + "    </tr>\n" + "    <tr>\n" + "      <td height=\"30\"><br></td>\n" + "    </tr>\n"
-                + "  </tbody></table><div class=\"yj6qo\"></div><div class=\"adL\">\n" + "\n" + "</div></div>";
+    public void send(String to, EmailTemplateType type, Locale locale, Map<String, ?> values) {
+        var email = templates.render(type, locale, values);
+        send(to, email.subject(), email.body());
     }
 
 }
@@ -0,0 +1,90 @@
+package ir.darkdeveloper.anbarinoo.util.email;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A template split into its literal and placeholder segments once, so rendering only appends them to a buffer.
+ * Placeholders are written as {@code {{name}}}
+ */
+public final class EmailTemplate {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{\\{\\s*([\\w.]+)\\s*}}");
+
+    // literals[i] comes before placeholders[i], and the last literal comes after all of them
+    private final String[] literals;
+    private final String[] placeholders;
+    private final boolean html;
+    private final int literalsLength;
+
+    private EmailTemplate(String[] literals, String[] placeholders, boolean html) {
+        this.literals = literals;
+        this.placeholders = placeholders;
+        this.html = html;
+        var length = 0;
+        for (var literal : literals)
+            length += literal.length();
+        literalsLength = length;
+    }
+
+    /**
+     * @param html escapes the values if true, otherwise line breaks of the values are replaced with spaces, so
+     *             a value of a subject can't add headers to the email
+     */
+    public static EmailTemplate compile(String source, boolean html) {
+        var literals = new ArrayList<String>();
+        var placeholders = new ArrayList<String>();
+        var matcher = PLACEHOLDER.matcher(source);
+        var from = 0;
+        while (matcher.find()) {
+            literals.add(source.substring(from, matcher.start()));
+            placeholders.add(matcher.group(1));
+            from = matcher.end();
+        }
+        literals.add(source.substring(from));
+        return new EmailTemplate(literals.toArray(String[]::new), placeholders.toArray(String[]::new), html);
+    }
+
+    public void render(StringBuilder buffer, Map<String, ?> values) {
+        buffer.ensureCapacity(buffer.length() + literalsLength + placeholders.length * 16);
+        for (int i = 0; i < placeholders.length; i++) {
+            buffer.append(literals[i]);
+            if (!values.containsKey(placeholders[i]))
+                throw new IllegalArgumentException("No value for placeholder " + placeholders[i]);
+            var value = String.valueOf(values.get(placeholders[i]));
+            if (html)
+                escapeHtml(buffer, value);
+            else
+                appendSingleLine(buffer, value);
+        }
+        buffer.append(literals[placeholders.length]);
+    }
+
+    public String render(Map<String, ?> values) {
+        var buffer = new StringBuilder();
+        render(buffer, values);
+        return buffer.toString();
+    }
+
+    private static void appendSingleLine(StringBuilder buffer, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            buffer.append(c == '\r' || c == '\n' ? ' ' : c);
+        }
+    }
+
+    private static void escapeHtml(StringBuilder buffer, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            switch (c) {
+                case '&' -> buffer.append("&amp;");
+                case '<' -> buffer.append("&lt;");
+                case '>' -> buffer.append("&gt;");
+                case '"' -> buffer.append("&quot;");
+                case '\'' -> buffer.append("&#39;");
+                default -> buffer.append(c);
+            }
+        }
+    }
+}
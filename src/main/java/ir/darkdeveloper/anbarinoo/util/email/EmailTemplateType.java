@@ -0,0 +1,21 @@
+package ir.darkdeveloper.anbarinoo.util.email;
+
+/**
+ * Templates of emails, loaded from {@code templates/email/<fileName>.html} and their localized variants
+ * {@code <fileName>_<language>.html}
+ */
+public enum EmailTemplateType {
+    VERIFICATION("verification"),
+    CHEQUE_DUE("cheque-due"),
+    LOW_STOCK("low-stock");
+
+    private final String fileName;
+
+    EmailTemplateType(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+}
@@ -0,0 +1,103 @@
+package ir.darkdeveloper.anbarinoo.util.email;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Compiles all of the email templates on startup. The first line of a template file is its subject, as
+ * {@code Subject: ...}, and the rest after a blank line is its html body
+ */
+@Component
+@Slf4j
+public class EmailTemplates {
+
+    private static final String LOCATION = "classpath*:templates/email/*.html";
+    private static final String SUBJECT = "Subject:";
+    // bigger buffers are not kept for the next emails of thread
+    private static final int MAX_BUFFER_CAPACITY = 64 * 1024;
+
+    private final Map<EmailTemplateType, Map<Locale, Compiled>> templates = new EnumMap<>(EmailTemplateType.class);
+    private final ThreadLocal<StringBuilder> buffers = ThreadLocal.withInitial(() -> new StringBuilder(4096));
+
+    public EmailTemplates(ResourcePatternResolver resolver) throws IOException {
+        var types = Arrays.stream(EmailTemplateType.values())
+                .collect(Collectors.toMap(EmailTemplateType::getFileName, type -> type));
+        for (var resource : resolver.getResources(LOCATION)) {
+            var name = resource.getFilename();
+            if (name == null)
+                continue;
+            name = name.substring(0, name.length() - ".html".length());
+            var separator = name.indexOf('_');
+            var type = types.get(separator == -1 ? name : name.substring(0, separator));
+            if (type == null) {
+                log.warn("Email template {} has no type", resource.getFilename());
+                continue;
+            }
+            var locale = separator == -1 ? Locale.ROOT
+                    : Locale.forLanguageTag(name.substring(separator + 1).replace('_', '-'));
+            templates.computeIfAbsent(type, t -> new HashMap<>()).put(locale, compile(resource));
+        }
+        for (var type : EmailTemplateType.values())
+            if (!templates.getOrDefault(type, Map.of()).containsKey(Locale.ROOT))
+                throw new IllegalStateException("Email template " + type.getFileName() + ".html not found");
+    }
+
+    /**
+     * Renders the variant of template for the locale, or for its language, or the default one
+     *
+     * @param values of the placeholders, escaped in the body
+     */
+    public Email render(EmailTemplateType type, Locale locale, Map<String, ?> values) {
+        var template = find(type, locale);
+        var buffer = buffers.get();
+        try {
+            template.subject().render(buffer, values);
+            var subject = buffer.toString();
+            buffer.setLength(0);
+            template.body().render(buffer, values);
+            return new Email(subject, buffer.toString());
+        } finally {
+            buffer.setLength(0);
+            if (buffer.capacity() > MAX_BUFFER_CAPACITY)
+                buffers.remove();
+        }
+    }
+
+    private Compiled find(EmailTemplateType type, Locale locale) {
+        var variants = templates.get(type);
+        var template = variants.get(locale);
+        if (template == null && !locale.getLanguage().isEmpty())
+            template = variants.get(Locale.forLanguageTag(locale.getLanguage()));
+        return template != null ? template : variants.get(Locale.ROOT);
+    }
+
+    private static Compiled compile(Resource resource) throws IOException {
+        String source;
+        try (var in = resource.getInputStream()) {
+            source = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        var lineEnd = source.indexOf('\n');
+        if (!source.startsWith(SUBJECT) || lineEnd == -1)
+            throw new IllegalStateException("Email template " + resource.getFilename() + " has no subject");
+        var subject = source.substring(SUBJECT.length(), lineEnd).strip();
+        var body = source.substring(lineEnd + 1).stripLeading();
+        return new Compiled(EmailTemplate.compile(subject, false), EmailTemplate.compile(body, true));
+    }
+
+    public record Email(String subject, String body) {
+    }
+
+    private record Compiled(EmailTemplate subject, EmailTemplate body) {
+    }
+}
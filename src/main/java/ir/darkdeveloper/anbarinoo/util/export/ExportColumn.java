@@ -0,0 +1,11 @@
+package ir.darkdeveloper.anbarinoo.util.export;
+
+import java.util.function.Function;
+
+/**
+ * @param header title of the column in xlsx files
+ * @param field  name of the column in csv and ndjson files
+ * @param value  value of the column in a row, null values are written as empty cells
+ */
+public record ExportColumn<T>(String header, String field, Function<T, Object> value) {
+}
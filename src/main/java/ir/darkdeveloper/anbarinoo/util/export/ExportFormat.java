@@ -0,0 +1,53 @@
+package ir.darkdeveloper.anbarinoo.util.export;
+
+import ir.darkdeveloper.anbarinoo.exception.BadRequestException;
+import lombok.Getter;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+import java.util.Locale;
+
+@Getter
+public enum ExportFormat {
+    XLSX(MediaType.APPLICATION_OCTET_STREAM, "xlsx"),
+    CSV(new MediaType("text", "csv"), "csv"),
+    NDJSON(new MediaType("application", "x-ndjson"), "ndjson");
+
+    private final MediaType mediaType;
+    private final String extension;
+
+    ExportFormat(MediaType mediaType, String extension) {
+        this.mediaType = mediaType;
+        this.extension = extension;
+    }
+
+    /**
+     * @param format name of the format from the query, it wins over the accept header
+     * @param accept accept header of the request, xlsx is used when it doesn't name csv or ndjson
+     */
+    public static ExportFormat of(String format, String accept) {
+        if (format != null) {
+            try {
+                return valueOf(format.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("Export format must be one of xlsx, csv or ndjson");
+            }
+        }
+        if (accept != null) {
+            try {
+                for (var mediaType : MediaType.parseMediaTypes(accept)) {
+                    if (mediaType.equalsTypeAndSubtype(CSV.mediaType))
+                        return CSV;
+                    if (mediaType.equalsTypeAndSubtype(NDJSON.mediaType))
+                        return NDJSON;
+                }
+            } catch (InvalidMediaTypeException ignored) {
+            }
+        }
+        return XLSX;
+    }
+
+    public String fileName(String name, boolean gzip) {
+        return name + "." + extension + (gzip ? ".gz" : "");
+    }
+}
@@ -0,0 +1,63 @@
+package ir.darkdeveloper.anbarinoo.util.export;
+
+import lombok.Getter;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * State of an export that is written in the background. Rows are counted while the file is written, so the
+ * progress can be polled
+ */
+@Getter
+public class ExportJob {
+
+    public enum Status {
+        QUEUED, RUNNING, DONE, FAILED
+    }
+
+    private final String id;
+    private final Long userId;
+    private final ExportType type;
+    private final ExportFormat format;
+    private final boolean gzip;
+    private final Path file;
+    private final LocalDateTime createdAt = LocalDateTime.now();
+    private final AtomicLong rows = new AtomicLong();
+    private volatile Status status = Status.QUEUED;
+    private volatile String error;
+    private volatile LocalDateTime finishedAt;
+
+    public ExportJob(String id, Long userId, ExportType type, ExportFormat format, boolean gzip, Path file) {
+        this.id = id;
+        this.userId = userId;
+        this.type = type;
+        this.format = format;
+        this.gzip = gzip;
+        this.file = file;
+    }
+
+    public boolean isFinished() {
+        return status == Status.DONE || status == Status.FAILED;
+    }
+
+    public void start() {
+        status = Status.RUNNING;
+    }
+
+    public void addRow() {
+        rows.incrementAndGet();
+    }
+
+    public void done() {
+        finishedAt = LocalDateTime.now();
+        status = Status.DONE;
+    }
+
+    public void fail(String error) {
+        this.error = error;
+        finishedAt = LocalDateTime.now();
+        status = Status.FAILED;
+    }
+}
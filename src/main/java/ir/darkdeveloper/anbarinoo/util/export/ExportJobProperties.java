@@ -0,0 +1,29 @@
+package ir.darkdeveloper.anbarinoo.util.export;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * @param threads       threads that write export files at the same time
+ * @param queueCapacity waiting exports, more are rejected until a thread is free
+ * @param perUserLimit  max waiting or running exports of a user
+ * @param ttl           time a finished export file is kept to be downloaded
+ * @param retryAfter    sent to the clients whose exports are rejected because the queue is full
+ * @param directory     directory of export files, a directory in the temp directory of the system by default
+ */
+@ConfigurationProperties(prefix = "export.jobs")
+public record ExportJobProperties(@DefaultValue("2") Integer threads,
+                                  @DefaultValue("10") Integer queueCapacity,
+                                  @DefaultValue("2") Integer perUserLimit,
+                                  @DefaultValue("1h") Duration ttl,
+                                  @DefaultValue("30s") Duration retryAfter,
+                                  Path directory) {
+
+    public ExportJobProperties {
+        if (directory == null)
+            directory = Path.of(System.getProperty("java.io.tmpdir"), "anbarinoo-exports");
+    }
+}
@@ -0,0 +1,23 @@
+package ir.darkdeveloper.anbarinoo.util.export;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Rows of an export, like buys of a user, and the columns written of every row
+ *
+ * @param name   name of the sheet or the file
+ * @param reader passes rows of the user between the dates to the action, one at a time
+ */
+public record ExportSource<T>(String name, List<ExportColumn<T>> columns, Reader<T> reader) {
+
+    public void forEach(Long userId, LocalDateTime from, LocalDateTime to, Consumer<T> action) {
+        reader.forEach(userId, from, to, action);
+    }
+
+    @FunctionalInterface
+    public interface Reader<T> {
+        void forEach(Long userId, LocalDateTime from, LocalDateTime to, Consumer<T> action);
+    }
+}
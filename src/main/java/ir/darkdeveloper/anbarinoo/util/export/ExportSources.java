@@ -0,0 +1,128 @@
+package ir.darkdeveloper.anbarinoo.util.export;
+
+import ir.darkdeveloper.anbarinoo.dto.BuyDto;
+import ir.darkdeveloper.anbarinoo.dto.ChequeDto;
+import ir.darkdeveloper.anbarinoo.dto.DebtOrDemandDto;
+import ir.darkdeveloper.anbarinoo.dto.ProductDto;
+import ir.darkdeveloper.anbarinoo.dto.SellDto;
+import ir.darkdeveloper.anbarinoo.dto.mapper.BuySellMapper;
+import ir.darkdeveloper.anbarinoo.dto.mapper.ChequeMapper;
+import ir.darkdeveloper.anbarinoo.dto.mapper.DebtOrDemandMapper;
+import ir.darkdeveloper.anbarinoo.dto.mapper.ProductMapper;
+import ir.darkdeveloper.anbarinoo.repository.Financial.BuyRepo;
+import ir.darkdeveloper.anbarinoo.repository.Financial.ChequeRepo;
+import ir.darkdeveloper.anbarinoo.repository.Financial.DebtOrDemandRepo;
+import ir.darkdeveloper.anbarinoo.repository.Financial.SellRepo;
+import ir.darkdeveloper.anbarinoo.repository.ProductRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Exportable rows of every {@link ExportType}. Rows are streamed from the database in a read only transaction
+ * and mapped to their dtos one at a time, so an export never holds all rows of a user in memory
+ */
+@Component
+public class ExportSources {
+
+    private final Map<ExportType, ExportSource<?>> sources = new EnumMap<>(ExportType.class);
+    private final TransactionTemplate readOnlyTransaction;
+
+    public ExportSources(ProductRepository productRepo, BuyRepo buyRepo, SellRepo sellRepo,
+                         DebtOrDemandRepo dodRepo, ChequeRepo chequeRepo, ProductMapper productMapper,
+                         BuySellMapper buySellMapper, DebtOrDemandMapper dodMapper, ChequeMapper chequeMapper,
+                         PlatformTransactionManager transactionManager) {
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+
+        // products are not in a date range
+        sources.put(ExportType.PRODUCTS, new ExportSource<>("products", List.of(
+                new ExportColumn<ProductDto>("نام", "name", ProductDto::name),
+                new ExportColumn<>("توضیحات", "description", ProductDto::description),
+                new ExportColumn<>("قیمت", "price", ProductDto::price),
+                new ExportColumn<>("تعداد", "totalCount", ProductDto::totalCount),
+                new ExportColumn<>("مالیات", "tax", ProductDto::tax),
+                new ExportColumn<>("تاریخ خرید", "createdAt", ProductDto::createdAt),
+                new ExportColumn<>("تاریخ ویرایش", "updatedAt", ProductDto::updatedAt)),
+                (userId, from, to, action) -> read(() -> productRepo.streamAllByUserId(userId),
+                        productMapper::productToDto, action)));
+
+        sources.put(ExportType.BUYS, new ExportSource<>("buys", List.of(
+                new ExportColumn<BuyDto>("شناسه", "id", BuyDto::id),
+                new ExportColumn<>("شناسه محصول", "productId", BuyDto::productId),
+                new ExportColumn<>("تعداد", "count", BuyDto::count),
+                new ExportColumn<>("قیمت", "price", BuyDto::price),
+                new ExportColumn<>("مالیات", "tax", BuyDto::tax),
+                new ExportColumn<>("تاریخ خرید", "createdAt", BuyDto::createdAt),
+                new ExportColumn<>("تاریخ ویرایش", "updatedAt", BuyDto::updatedAt)),
+                (userId, from, to, action) -> read(() -> buyRepo.streamAllOfUserFromDateTo(userId, from, to),
+                        buySellMapper::buyToDto, action)));
+
+        sources.put(ExportType.SELLS, new ExportSource<>("sells", List.of(
+                new ExportColumn<SellDto>("شناسه", "id", SellDto::id),
+                new ExportColumn<>("شناسه محصول", "productId", SellDto::productId),
+                new ExportColumn<>("تعداد", "count", SellDto::count),
+                new ExportColumn<>("قیمت", "price", SellDto::price),
+                new ExportColumn<>("مالیات", "tax", SellDto::tax),
+                new ExportColumn<>("تاریخ فروش", "createdAt", SellDto::createdAt),
+                new ExportColumn<>("تاریخ ویرایش", "updatedAt", SellDto::updatedAt)),
+                (userId, from, to, action) -> read(() -> sellRepo.streamAllOfUserFromDateTo(userId, from, to),
+                        buySellMapper::sellToDto, action)));
+
+        sources.put(ExportType.DODS, new ExportSource<>("debts and demands", List.of(
+                new ExportColumn<DebtOrDemandDto>("شناسه", "id", DebtOrDemandDto::id),
+                new ExportColumn<>("نام", "nameOf", DebtOrDemandDto::nameOf),
+                new ExportColumn<>("پرداخت به", "payTo", DebtOrDemandDto::payTo),
+                new ExportColumn<>("بدهی", "isDebt", DebtOrDemandDto::isDebt),
+                new ExportColumn<>("تسویه شده", "isCheckedOut", DebtOrDemandDto::isCheckedOut),
+                new ExportColumn<>("مبلغ", "amount", DebtOrDemandDto::amount),
+                new ExportColumn<>("شناسه چک", "chequeId", DebtOrDemandDto::chequeId),
+                new ExportColumn<>("تاریخ صدور", "issuedAt", DebtOrDemandDto::issuedAt),
+                new ExportColumn<>("تاریخ سررسید", "validTill", DebtOrDemandDto::validTill),
+                new ExportColumn<>("تاریخ ثبت", "createdAt", DebtOrDemandDto::createdAt),
+                new ExportColumn<>("تاریخ ویرایش", "updatedAt", DebtOrDemandDto::updatedAt)),
+                (userId, from, to, action) -> read(() -> dodRepo.streamAllOfUserFromDateTo(userId, from, to),
+                        dodMapper::dodToDto, action)));
+
+        sources.put(ExportType.CHEQUES, new ExportSource<>("cheques", List.of(
+                new ExportColumn<ChequeDto>("شناسه", "id", ChequeDto::id),
+                new ExportColumn<>("نام", "nameOf", ChequeDto::nameOf),
+                new ExportColumn<>("پرداخت به", "payTo", ChequeDto::payTo),
+                new ExportColumn<>("مبلغ", "amount", ChequeDto::amount),
+                new ExportColumn<>("بدهی", "isDebt", ChequeDto::isDebt),
+                new ExportColumn<>("تسویه شده", "isCheckedOut", ChequeDto::isCheckedOut),
+                new ExportColumn<>("تاریخ صدور", "issuedAt", ChequeDto::issuedAt),
+                new ExportColumn<>("تاریخ سررسید", "validTill", ChequeDto::validTill),
+                new ExportColumn<>("تاریخ ثبت", "createdAt", ChequeDto::createdAt),
+                new ExportColumn<>("تاریخ ویرایش", "updatedAt", ChequeDto::updatedAt)),
+                (userId, from, to, action) -> read(() -> chequeRepo.streamAllOfUserFromDateTo(userId, from, to),
+                        chequeMapper::chequeToDto, action)));
+    }
+
+    /**
+     * @return sources of the type in the order they are exported
+     */
+    public List<ExportSource<?>> of(ExportType type) {
+        if (type == ExportType.LEDGER)
+            return List.of(sources.get(ExportType.BUYS), sources.get(ExportType.SELLS),
+                    sources.get(ExportType.DODS), sources.get(ExportType.CHEQUES));
+        return List.of(sources.get(type));
+    }
+
+    private <M, D> void read(Supplier<Stream<M>> query, Function<M, D> mapper,
+                             Consumer<D> action) {
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try (var rows = query.get()) {
+                rows.map(mapper).forEach(action);
+            }
+        });
+    }
+}
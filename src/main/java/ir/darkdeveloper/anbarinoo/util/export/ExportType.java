@@ -0,0 +1,9 @@
+package ir.darkdeveloper.anbarinoo.util.export;
+
+public enum ExportType {
+    PRODUCTS, BUYS, SELLS, DODS, CHEQUES,
+    /**
+     * buys, sells, debts and demands and cheques, each one on its own sheet
+     */
+    LEDGER
+}
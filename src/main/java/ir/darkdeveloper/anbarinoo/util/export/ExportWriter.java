@@ -0,0 +1,210 @@
+package ir.darkdeveloper.anbarinoo.util.export;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import ir.darkdeveloper.anbarinoo.exception.BadRequestException;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+public class ExportWriter {
+
+    // rows out of the window are flushed to a temp file, so memory doesn't grow with the count of rows
+    private static final int ROW_ACCESS_WINDOW = 100;
+    private static final int MAX_ROWS = SpreadsheetVersion.EXCEL2007.getMaxRows();
+    private static final String ROW_NUMBER_HEADER = "ردیف";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * Should be called before anything is written, so the response can still be an error
+     *
+     * @throws BadRequestException when the format can't hold all of the sources
+     */
+    public static void checkFormat(ExportFormat format, List<ExportSource<?>> sources) {
+        if (format != ExportFormat.XLSX && sources.size() > 1)
+            throw new BadRequestException("This export has more than one sheet and can only be exported as xlsx");
+    }
+
+    /**
+     * Writes rows of the sources in the format while they are read from the database
+     *
+     * @param gzip  compresses the output with gzip
+     * @param onRow is called after every written row
+     */
+    public static void write(ExportFormat format, boolean gzip, OutputStream out, List<ExportSource<?>> sources,
+                             Long userId, LocalDateTime from, LocalDateTime to, Runnable onRow)
+            throws IOException {
+        checkFormat(format, sources);
+        if (!gzip) {
+            write(format, out, sources, userId, from, to, onRow);
+            return;
+        }
+        var gzipOut = new GZIPOutputStream(out, BUFFER_SIZE);
+        write(format, gzipOut, sources, userId, from, to, onRow);
+        gzipOut.finish();
+    }
+
+    private static void write(ExportFormat format, OutputStream out, List<ExportSource<?>> sources, Long userId,
+                              LocalDateTime from, LocalDateTime to, Runnable onRow) throws IOException {
+        try {
+            switch (format) {
+                case XLSX -> writeXlsx(out, sources, userId, from, to, onRow);
+                case CSV -> writeCsv(out, sources.get(0), userId, from, to, onRow);
+                case NDJSON -> writeNdjson(out, sources.get(0), userId, from, to, onRow);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Writes every source as a sheet of an xlsx workbook. First column of a sheet is the row number, a source
+     * with more rows than a sheet can have continues on the next sheets
+     */
+    private static void writeXlsx(OutputStream out, List<ExportSource<?>> sources, Long userId,
+                                  LocalDateTime from, LocalDateTime to, Runnable onRow) throws IOException {
+        var workbook = new SXSSFWorkbook(ROW_ACCESS_WINDOW);
+        workbook.setCompressTempFiles(true);
+        try {
+            for (var source : sources)
+                writeSheets(workbook, source, userId, from, to, onRow);
+            workbook.write(out);
+        } finally {
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+
+    private static <T> void writeSheets(SXSSFWorkbook workbook, ExportSource<T> source, Long userId,
+                                        LocalDateTime from, LocalDateTime to, Runnable onRow) {
+        var sheet = new Object() {
+            SXSSFSheet current = createSheet(workbook, source, source.name());
+            int rowNum = 1;
+            int count = 1;
+        };
+        var columns = source.columns();
+        source.forEach(userId, from, to, row -> {
+            if (sheet.rowNum == MAX_ROWS) {
+                sheet.current = createSheet(workbook, source, source.name() + " " + ++sheet.count);
+                sheet.rowNum = 1;
+            }
+            var sheetRow = sheet.current.createRow(sheet.rowNum);
+            sheetRow.createCell(0).setCellValue(sheet.rowNum++);
+            for (int i = 0; i < columns.size(); i++) {
+                var value = columns.get(i).value().apply(row);
+                if (value != null)
+                    sheetRow.createCell(i + 1).setCellValue(toText(value));
+            }
+            onRow.run();
+        });
+    }
+
+    private static SXSSFSheet createSheet(SXSSFWorkbook workbook, ExportSource<?> source, String name) {
+        var sheet = workbook.createSheet(name);
+        var header = sheet.createRow(0);
+        header.createCell(0).setCellValue(ROW_NUMBER_HEADER);
+        var columns = source.columns();
+        for (int i = 0; i < columns.size(); i++)
+            header.createCell(i + 1).setCellValue(columns.get(i).header());
+        return sheet;
+    }
+
+    /**
+     * First line has field names of the columns. Values are written straight to a buffered writer, without
+     * building a string for every line
+     */
+    private static <T> void writeCsv(OutputStream out, ExportSource<T> source, Long userId,
+                                     LocalDateTime from, LocalDateTime to, Runnable onRow) throws IOException {
+        var writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        var columns = source.columns();
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0)
+                writer.write(',');
+            writeCsvValue(writer, columns.get(i).field());
+        }
+        writer.write("\r\n");
+        source.forEach(userId, from, to, row -> {
+            try {
+                for (int i = 0; i < columns.size(); i++) {
+                    if (i > 0)
+                        writer.write(',');
+                    var value = columns.get(i).value().apply(row);
+                    if (value != null)
+                        writeCsvValue(writer, toText(value));
+                }
+                writer.write("\r\n");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            onRow.run();
+        });
+        writer.flush();
+    }
+
+    private static void writeCsvValue(Writer writer, String value) throws IOException {
+        var quoted = false;
+        for (int i = 0; i < value.length() && !quoted; i++) {
+            var c = value.charAt(i);
+            quoted = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (!quoted) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            if (c == '"')
+                writer.write('"');
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+
+    /**
+     * A json object per line with field names of the columns, null values are left out
+     */
+    private static <T> void writeNdjson(OutputStream out, ExportSource<T> source, Long userId,
+                                        LocalDateTime from, LocalDateTime to, Runnable onRow) throws IOException {
+        var columns = source.columns();
+        try (var generator = JSON_FACTORY.createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            source.forEach(userId, from, to, row -> {
+                try {
+                    generator.writeStartObject();
+                    for (var column : columns) {
+                        var value = column.value().apply(row);
+                        if (value != null) {
+                            generator.writeFieldName(column.field());
+                            generator.writeObject(value);
+                        }
+                    }
+                    generator.writeEndObject();
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                onRow.run();
+            });
+        }
+    }
+
+    private static String toText(Object value) {
+        return value instanceof BigDecimal decimal ? decimal.toPlainString() : value.toString();
+    }
+
+}
@@ -1,6 +1,8 @@
 package ir.darkdeveloper.anbarinoo.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import ir.darkdeveloper.anbarinoo.TestUtils;
+import ir.darkdeveloper.anbarinoo.dto.FinancialDto;
 import ir.darkdeveloper.anbarinoo.extentions.DatabaseSetup;
 import ir.darkdeveloper.anbarinoo.model.CategoryModel;
 import ir.darkdeveloper.anbarinoo.model.ProductModel;
@@ -9,6 +11,7 @@ import ir.darkdeveloper.anbarinoo.service.CategoryService;
 import ir.darkdeveloper.anbarinoo.service.ProductService;
 import ir.darkdeveloper.anbarinoo.service.UserService;
 import ir.darkdeveloper.anbarinoo.util.JwtUtils;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -26,15 +29,22 @@ import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
 import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayInputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.Optional;
+import java.util.zip.GZIPInputStream;
 
+import static ir.darkdeveloper.anbarinoo.TestUtils.mapToJson;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.document;
 import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.documentationConfiguration;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
-import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
@@ -129,9 +139,100 @@ record ExportExcelControllerTest(WebApplicationContext webApplicationContext,
                         .headers(authHeaders)
                         .accept(MediaType.APPLICATION_OCTET_STREAM)
                 )
-                .andDo(print())
-                .andExpect(status().isOk())
+                .andExpect(request().asyncStarted())
                 .andReturn();
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk());
         assertThat(mvcResult.getResponse().getContentType()).isEqualTo("application/octet-stream");
+        try (var workbook = new XSSFWorkbook(new ByteArrayInputStream(
+                mvcResult.getResponse().getContentAsByteArray()))) {
+            var sheet = workbook.getSheet("products");
+            assertThat(sheet.getLastRowNum()).isEqualTo(1);
+            assertThat(sheet.getRow(1).getCell(1).getStringCellValue()).isEqualTo("name");
+        }
+    }
+
+    @Test
+    @Order(5)
+    @WithMockUser(authorities = "OP_ACCESS_USER")
+    void getLedgerExcel() throws Exception {
+        var financial = new FinancialDto(LocalDateTime.now().minusDays(1), LocalDateTime.now().plusMinutes(1));
+        var mvcResult = mockMvc.perform(post("/api/export/excel/ledger")
+                        .headers(authHeaders)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(mapToJson(financial))
+                        .accept(MediaType.APPLICATION_OCTET_STREAM)
+                )
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk());
+        try (var workbook = new XSSFWorkbook(new ByteArrayInputStream(
+                mvcResult.getResponse().getContentAsByteArray()))) {
+            assertThat(workbook.getNumberOfSheets()).isEqualTo(4);
+            // saving the product has saved its first buy
+            var buys = workbook.getSheet("buys");
+            assertThat(buys.getLastRowNum()).isEqualTo(1);
+            assertThat(new BigDecimal(buys.getRow(1).getCell(3).getStringCellValue()))
+                    .isEqualByComparingTo(BigDecimal.valueOf(50));
+            assertThat(workbook.getSheet("sells").getLastRowNum()).isEqualTo(0);
+            assertThat(workbook.getSheet("debts and demands").getLastRowNum()).isEqualTo(0);
+            assertThat(workbook.getSheet("cheques").getLastRowNum()).isEqualTo(0);
+        }
+    }
+
+    @Test
+    @Order(6)
+    @WithMockUser(authorities = "OP_ACCESS_USER")
+    void getProductsCsv() throws Exception {
+        var mvcResult = mockMvc.perform(get("/api/export/excel/products")
+                        .headers(authHeaders)
+                        .param("format", "csv")
+                )
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk());
+        assertThat(mvcResult.getResponse().getContentType()).isEqualTo("text/csv");
+        var lines = mvcResult.getResponse().getContentAsString(StandardCharsets.UTF_8).split("\r\n");
+        assertThat(lines).hasSize(2);
+        assertThat(lines[0]).isEqualTo("name,description,price,totalCount,tax,createdAt,updatedAt");
+        assertThat(lines[1]).startsWith("name,description,500.0000,50.0000,9,");
+    }
+
+    @Test
+    @Order(7)
+    @WithMockUser(authorities = "OP_ACCESS_USER")
+    void getProductsNdjsonGzip() throws Exception {
+        var mvcResult = mockMvc.perform(get("/api/export/excel/products")
+                        .headers(authHeaders)
+                        .param("gzip", "true")
+                        .accept("application/x-ndjson")
+                )
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk());
+        assertThat(mvcResult.getResponse().getHeader("Content-disposition"))
+                .isEqualTo("attachment; filename=ProductsReport.ndjson.gz");
+        try (var in = new GZIPInputStream(new ByteArrayInputStream(
+                mvcResult.getResponse().getContentAsByteArray()))) {
+            var lines = new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\n");
+            assertThat(lines).hasSize(1);
+            var product = new ObjectMapper().readTree(lines[0]);
+            assertThat(product.get("name").asText()).isEqualTo("name");
+            assertThat(product.get("totalCount").decimalValue()).isEqualByComparingTo(BigDecimal.valueOf(50));
+        }
+    }
+
+    @Test
+    @Order(8)
+    @WithMockUser(authorities = "OP_ACCESS_USER")
+    void getLedgerCsvIsRejected() throws Exception {
+        mockMvc.perform(post("/api/export/jobs/{type}/", "LEDGER")
+                        .headers(authHeaders)
+                        .param("format", "csv")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
     }
 }
\ No newline at end of file
@@ -0,0 +1,198 @@
+package ir.darkdeveloper.anbarinoo.controller;
+
+import com.jayway.jsonpath.JsonPath;
+import ir.darkdeveloper.anbarinoo.TestUtils;
+import ir.darkdeveloper.anbarinoo.extentions.DatabaseSetup;
+import ir.darkdeveloper.anbarinoo.model.CategoryModel;
+import ir.darkdeveloper.anbarinoo.model.ProductModel;
+import ir.darkdeveloper.anbarinoo.model.UserModel;
+import ir.darkdeveloper.anbarinoo.service.CategoryService;
+import ir.darkdeveloper.anbarinoo.service.ProductService;
+import ir.darkdeveloper.anbarinoo.service.UserService;
+import ir.darkdeveloper.anbarinoo.util.JwtUtils;
+import ir.darkdeveloper.anbarinoo.util.export.ExportType;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.restdocs.AutoConfigureRestDocs;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.restdocs.RestDocumentationContextProvider;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.document;
+import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.documentationConfiguration;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@AutoConfigureRestDocs(outputDir = "docs/export-jobs")
+@DirtiesContext
+@ExtendWith(DatabaseSetup.class)
+record ExportJobControllerTest(WebApplicationContext webApplicationContext,
+                               CategoryService categoryService,
+                               UserService userService,
+                               ProductService productService,
+                               RestDocumentationContextProvider restDocumentation,
+                               JwtUtils jwtUtils, TestUtils testUtils) {
+
+
+    private static HttpServletRequest request;
+    private static HttpHeaders authHeaders;
+    private static Long catId;
+    private static Long productId;
+    private static MockMvc mockMvc;
+    private static String jobId;
+
+
+    @Autowired
+    public ExportJobControllerTest {
+    }
+
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(webApplicationContext)
+                .apply(documentationConfiguration(restDocumentation))
+                .alwaysDo(document("{method-name}"))
+                .build();
+    }
+
+    @Test
+    @Order(1)
+    @WithMockUser(username = "anonymousUser")
+    void saveUser() {
+        var response = new MockHttpServletResponse();
+        var user = UserModel.builder()
+                .email("email@mail.com")
+                .address("address")
+                .description("desc")
+                .userName("user n")
+                .password("pass12P+")
+                .passwordRepeat("pass12P+")
+                .build();
+        userService.signUpUser(Optional.of(user), response);
+        request = testUtils.setUpHeaderAndGetReqWithRes(response);
+        authHeaders = testUtils.getAuthHeaders(response);
+    }
+
+
+    @Test
+    @Order(2)
+    void saveCategory() {
+        var electronics = new CategoryModel("Electronics");
+        categoryService.saveCategory(Optional.of(electronics), request);
+        catId = electronics.getId();
+    }
+
+
+    @Test
+    @Order(3)
+    @WithMockUser(authorities = "OP_ACCESS_USER")
+    void saveProduct() {
+        var product = ProductModel.builder()
+                .name("name")
+                .description("description")
+                .totalCount(BigDecimal.valueOf(50))
+                .price(BigDecimal.valueOf(500))
+                .category(new CategoryModel(catId))
+                .tax(9)
+                .build();
+        var file3 = new MockMultipartFile("file", "hello.jpg", MediaType.IMAGE_JPEG_VALUE,
+                "Hello, World!".getBytes());
+        var file4 = new MockMultipartFile("file", "hello.jpg", MediaType.IMAGE_JPEG_VALUE,
+                "Hello, World!".getBytes());
+        product.setFiles(Arrays.asList(file3, file4));
+        product.setCategory(new CategoryModel(catId));
+        productService.saveProduct(Optional.of(product), request);
+        productId = product.getId();
+    }
+
+
+    @Test
+    @Order(4)
+    @WithMockUser(authorities = "OP_ACCESS_USER")
+    void submitJob() throws Exception {
+        var result = mockMvc.perform(post("/api/export/jobs/{type}/", ExportType.BUYS)
+                        .headers(authHeaders)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.type").value(is("BUYS")))
+                .andExpect(jsonPath("$.id").isString())
+                .andReturn();
+        jobId = JsonPath.read(result.getResponse().getContentAsString(), "$.id");
+    }
+
+    @Test
+    @Order(5)
+    @WithMockUser(authorities = "OP_ACCESS_USER")
+    void getJobUntilDone() throws Exception {
+        var status = "";
+        for (int i = 0; i < 100 && !status.equals("DONE"); i++) {
+            var result = mockMvc.perform(get("/api/export/jobs/{id}/", jobId)
+                            .headers(authHeaders)
+                            .accept(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isOk())
+                    .andReturn();
+            status = JsonPath.read(result.getResponse().getContentAsString(), "$.status");
+            assertThat(status).isNotEqualTo("FAILED");
+            Thread.sleep(100);
+        }
+        mockMvc.perform(get("/api/export/jobs/{id}/", jobId)
+                        .headers(authHeaders)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value(is("DONE")))
+                .andExpect(jsonPath("$.rows").value(is(1)));
+    }
+
+    @Test
+    @Order(6)
+    @WithMockUser(authorities = "OP_ACCESS_USER")
+    void downloadJobFile() throws Exception {
+        var result = mockMvc.perform(get("/api/export/jobs/{id}/file/", jobId)
+                        .headers(authHeaders)
+                        .accept(MediaType.APPLICATION_OCTET_STREAM))
+                .andExpect(status().isOk())
+                .andReturn();
+        try (var workbook = new XSSFWorkbook(new ByteArrayInputStream(
+                result.getResponse().getContentAsByteArray()))) {
+            var sheet = workbook.getSheet("buys");
+            assertThat(sheet.getLastRowNum()).isEqualTo(1);
+            assertThat(sheet.getRow(1).getCell(2).getStringCellValue()).isEqualTo(productId.toString());
+        }
+    }
+
+    @Test
+    @Order(7)
+    @WithMockUser(authorities = "OP_ACCESS_USER")
+    void getNotExistingJob() throws Exception {
+        mockMvc.perform(get("/api/export/jobs/{id}/", "not-a-job")
+                        .headers(authHeaders)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isNoContent());
+    }
+}
@@ -1,5 +1,6 @@
 package ir.darkdeveloper.anbarinoo.controller.Financial;
 
+import com.jayway.jsonpath.JsonPath;
 import ir.darkdeveloper.anbarinoo.TestUtils;
 import ir.darkdeveloper.anbarinoo.dto.FinancialDto;
 import ir.darkdeveloper.anbarinoo.extentions.DatabaseSetup;
@@ -35,6 +36,8 @@ import java.util.Optional;
 
 import static ir.darkdeveloper.anbarinoo.TestUtils.mapToJson;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
 import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.document;
 import static org.springframework.restdocs.mockmvc.MockMvcRestDocumentation.documentationConfiguration;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -215,6 +218,74 @@ public record BuyControllerTest(UserService userService,
     @Test
     @Order(8)
     @WithMockUser(authorities = "OP_ACCESS_USER")
+    void getBuyRecordsAfterCursor() throws Exception {
+        var firstPage = mockMvc.perform(get("/api/category/products/buy/get-by-product/{id}/cursor/?size={size}",
+                        productId, 1)
+                        .headers(authHeaders)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(is(1)))
+                .andExpect(jsonPath("$.next").isString())
+                .andExpect(jsonPath("$.totalElements").doesNotExist())
+                .andReturn().getResponse().getContentAsString();
+        var firstId = JsonPath.parse(firstPage).read("$.content[0].id", Long.class);
+        String next = JsonPath.read(firstPage, "$.next");
+
+        mockMvc.perform(get("/api/category/products/buy/get-by-product/{id}/cursor/?size={size}&cursor={cursor}",
+                        productId, 1, next)
+                        .headers(authHeaders)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(is(1)))
+                .andExpect(jsonPath("$.content[0].id").value(not(firstId), Long.class))
+                .andExpect(jsonPath("$.next").value(nullValue()));
+
+        mockMvc.perform(get("/api/category/products/buy/get-by-user/{id}/cursor/?size={size}", userId, 2)
+                        .headers(authHeaders)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(is(2)))
+                .andExpect(jsonPath("$.content[0].id").value(is(firstId), Long.class))
+                .andExpect(jsonPath("$.next").value(nullValue()));
+
+        mockMvc.perform(get("/api/category/products/buy/get-by-user/{id}/cursor/?cursor={cursor}", userId, "bad")
+                        .headers(authHeaders)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Order(9)
+    @WithMockUser(authorities = "OP_ACCESS_USER")
+    void getAllBuyRecordsOfUserWithoutCount() throws Exception {
+        mockMvc.perform(get("/api/category/products/buy/get-by-user/{id}/?page={page}&size={size}&count={count}",
+                        userId, 0, 1, false)
+                        .headers(authHeaders)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(is(1)))
+                .andExpect(jsonPath("$.last").value(is(false)))
+                .andExpect(jsonPath("$.totalElements").doesNotExist());
+
+        mockMvc.perform(get("/api/category/products/buy/get-by-user/{id}/?page={page}&size={size}&count={count}",
+                        userId, 1, 1, false)
+                        .headers(authHeaders)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(is(1)))
+                .andExpect(jsonPath("$.last").value(is(true)))
+                .andExpect(jsonPath("$.totalElements").doesNotExist());
+    }
+
+    @Test
+    @Order(10)
+    @WithMockUser(authorities = "OP_ACCESS_USER")
     void getAllSellRecordsOfProductFromDateTo() throws Exception {
         to = LocalDateTime.now().plusMinutes(1);
         var financial = new FinancialDto(from, to);
@@ -234,7 +305,7 @@ public record BuyControllerTest(UserService userService,
     }
 
     @Test
-    @Order(9)
+    @Order(11)
     @WithMockUser(authorities = "OP_ACCESS_USER")
     void getAllSellRecordsOfUserFromDateTo() throws Exception {
         to = LocalDateTime.now().plusMinutes(1);
@@ -257,7 +328,7 @@ public record BuyControllerTest(UserService userService,
     }
 
     @Test
-    @Order(10)
+    @Order(12)
     @WithMockUser(authorities = "OP_ACCESS_USER")
     void getBuy() throws Exception {
         mockMvc.perform(get("/api/category/products/buy/{id}/",
@@ -274,7 +345,7 @@ public record BuyControllerTest(UserService userService,
     }
 
     @Test
-    @Order(11)
+    @Order(13)
     @WithMockUser(authorities = "OP_ACCESS_USER")
     void deleteBuy() throws Exception {
 
@@ -287,7 +358,7 @@ public record BuyControllerTest(UserService userService,
     }
 
     @Test
-    @Order(12)
+    @Order(14)
     @WithMockUser(authorities = "OP_ACCESS_USER")
     void getAllBuyRecordsOfProductAfterBuyDelete() throws Exception {
 
@@ -306,7 +377,7 @@ public record BuyControllerTest(UserService userService,
     }
 
     @Test
-    @Order(13)
+    @Order(15)
     @WithMockUser(authorities = "OP_ACCESS_USER")
     void getBuyRecordOfAProductAfterProductDelete() throws Exception {
 
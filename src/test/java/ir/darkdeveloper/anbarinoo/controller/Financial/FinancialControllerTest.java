@@ -12,6 +12,7 @@ import ir.darkdeveloper.anbarinoo.service.Financial.SellService;
 import ir.darkdeveloper.anbarinoo.service.ProductService;
 import ir.darkdeveloper.anbarinoo.service.UserService;
 import ir.darkdeveloper.anbarinoo.util.JwtUtils;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -409,4 +410,60 @@ public record FinancialControllerTest(UserService userService,
         ;
     }
 
-}
\ No newline at end of file
+    @Test
+    @Order(18)
+    @WithMockUser(authorities = "OP_ACCESS_USER")
+    void getSeries() throws Exception {
+        var financial = new FinancialDto(fromDate, toDate);
+        var costs = new JSONObject(mockMvc.perform(post("/api/user/financial/costs/")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .headers(authHeaders)
+                        .content(mapToJson(financial)))
+                .andReturn().getResponse().getContentAsString()).getDouble("costs");
+        var incomes = new JSONObject(mockMvc.perform(post("/api/user/financial/incomes/")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .headers(authHeaders)
+                        .content(mapToJson(financial)))
+                .andReturn().getResponse().getContentAsString()).getDouble("incomes");
+
+        mockMvc.perform(post("/api/user/financial/series/")
+                        .param("bucket", "DAY")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .headers(authHeaders)
+                        .content(mapToJson(financial))
+                )
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(result -> {
+                    var series = new JSONArray(result.getResponse().getContentAsString());
+                    var seriesCosts = BigDecimal.ZERO;
+                    var seriesIncomes = BigDecimal.ZERO;
+                    for (int i = 0; i < series.length(); i++) {
+                        seriesCosts = seriesCosts.add(BigDecimal.valueOf(series.getJSONObject(i).getDouble("costs")));
+                        seriesIncomes = seriesIncomes.add(BigDecimal.valueOf(series.getJSONObject(i).getDouble("incomes")));
+                    }
+                    assertThat(series.length()).isBetween(1, 2);
+                    assertThat(seriesCosts).isEqualByComparingTo(BigDecimal.valueOf(costs));
+                    assertThat(seriesIncomes).isEqualByComparingTo(BigDecimal.valueOf(incomes));
+                })
+        ;
+    }
+
+    @Test
+    @Order(19)
+    @WithMockUser(authorities = "OP_ACCESS_USER")
+    void getSeriesOfTooManyBuckets() throws Exception {
+        var financial = new FinancialDto(toDate.minusDays(1001), toDate);
+        mockMvc.perform(post("/api/user/financial/series/")
+                        .param("bucket", "DAY")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .headers(authHeaders)
+                        .content(mapToJson(financial))
+                )
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+    }
+
+}
@@ -105,4 +105,16 @@ class ProductRepositoryTest {
         assertThat(fetched.getContent()).hasSizeGreaterThan(0);
         System.out.println(fetched.getContent());
     }
+
+    @Test
+    @Order(6)
+    @Transactional(readOnly = true)
+    void streamAllByUserId() {
+        try (var products = productRepo.streamAllByUserId(userId)) {
+            var streamed = products.toList();
+            assertThat(streamed).hasSizeGreaterThan(0);
+            assertThat(streamed.get(0).getName()).isNotNull();
+            assertThat(streamed.get(0).getCategory()).isNull();
+        }
+    }
 }
\ No newline at end of file
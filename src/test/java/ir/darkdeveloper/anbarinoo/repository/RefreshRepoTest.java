@@ -3,6 +3,8 @@ package ir.darkdeveloper.anbarinoo.repository;
 import ir.darkdeveloper.anbarinoo.extentions.DatabaseSetup;
 import ir.darkdeveloper.anbarinoo.model.RefreshModel;
 import ir.darkdeveloper.anbarinoo.model.UserModel;
+import ir.darkdeveloper.anbarinoo.security.jwt.JwtCodec;
+import ir.darkdeveloper.anbarinoo.security.jwt.JwtProperties;
 import ir.darkdeveloper.anbarinoo.util.JwtUtils;
 import org.junit.jupiter.api.MethodOrderer;
 import org.junit.jupiter.api.Order;
@@ -11,12 +13,14 @@ import org.junit.jupiter.api.TestMethodOrder;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
+import java.util.Map;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 @DataJpaTest
@@ -37,8 +41,7 @@ class RefreshRepoTest {
     RefreshRepoTest(UserRepo userRepo, RefreshRepo refreshRepo) {
         this.userRepo = userRepo;
         this.refreshRepo = refreshRepo;
-        jwtUtils = new JwtUtils(new BCryptPasswordEncoder(12));
-        jwtUtils.setSecret("SOME SECRET");
+        jwtUtils = new JwtUtils(new JwtCodec(new JwtProperties("some secret of the tokens of the tests", null, Map.of(), true)));
     }
 
     @Test
@@ -64,7 +67,8 @@ class RefreshRepoTest {
     void saveRefresh() {
         var refresh = RefreshModel.builder()
                 .userId(userId)
-                .accessToken(jwtUtils.generateAccessToken(username))
+                .accessToken(jwtUtils.generateAccessToken(username, userId, List.of()))
+                .refreshToken(jwtUtils.generateRefreshToken(username, userId))
                 .build();
         refreshRepo.save(refresh);
         System.out.println(refresh);
@@ -90,6 +94,15 @@ class RefreshRepoTest {
         assertThat(id).isEqualTo(refreshId);
     }
 
+    @Test
+    @Order(4)
+    void findByRefreshTokenHash() {
+        var refresh = refreshRepo.getRefreshByUserId(userId);
+        var found = refreshRepo.findByRefreshTokenHash(RefreshModel.hashToken(refresh.getRefreshToken()));
+        assertThat(found).map(RefreshModel::getId).contains(refreshId);
+        assertThat(refreshRepo.findAllByRefreshTokenHashIsNullAndRefreshTokenIsNotNull()).isEmpty();
+    }
+
     @Test
     @Order(5)
     void deleteTokenByUserId() {
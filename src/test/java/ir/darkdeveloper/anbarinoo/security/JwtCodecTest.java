@@ -0,0 +1,61 @@
+package ir.darkdeveloper.anbarinoo.security;
+
+import io.jsonwebtoken.SignatureException;
+import ir.darkdeveloper.anbarinoo.security.jwt.JwtCodec;
+import ir.darkdeveloper.anbarinoo.security.jwt.JwtProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JwtCodecTest {
+
+    private static final String SECRET = "secret of the tokens of the tests";
+    private static final String FIRST = "first secret of the tokens of the tests";
+    private static final String SECOND = "second secret of the tokens of the tests";
+
+    @Test
+    void tokensStayValidAfterRestart() {
+        var token = new JwtCodec(new JwtProperties(SECRET, null, Map.of(), true))
+                .builder().setSubject("user").compact();
+        var restarted = new JwtCodec(new JwtProperties(SECRET, null, Map.of(), true));
+        assertThat(restarted.parse(token).getSubject()).isEqualTo("user");
+        var otherSecret = new JwtCodec(new JwtProperties("other secret of the tokens of the tests", null, Map.of(), true));
+        assertThrows(SignatureException.class, () -> otherSecret.parse(token));
+    }
+
+    @Test
+    void rotatesKeysByKid() {
+        var oldCodec = new JwtCodec(new JwtProperties(SECRET, "k1", Map.of("k1", FIRST), true));
+        var oldToken = oldCodec.builder().setSubject("old").compact();
+        var legacyToken = new JwtCodec(new JwtProperties(SECRET, null, Map.of(), true))
+                .builder().setSubject("legacy").compact();
+
+        var rotated = new JwtCodec(new JwtProperties(SECRET, "k2", Map.of("k1", FIRST, "k2", SECOND), true));
+        var newToken = rotated.builder().setSubject("new").compact();
+        assertThat(rotated.parse(oldToken).getSubject()).isEqualTo("old");
+        assertThat(rotated.parse(legacyToken).getSubject()).isEqualTo("legacy");
+        assertThat(rotated.parse(newToken).getSubject()).isEqualTo("new");
+        assertThrows(SignatureException.class, () -> oldCodec.parse(newToken));
+    }
+
+    @Test
+    void activeKeyShouldExist() {
+        assertThrows(IllegalStateException.class,
+                () -> new JwtCodec(new JwtProperties(null, "k2", Map.of("k1", FIRST), true)));
+    }
+
+    @Test
+    void rejectsWeakSecrets() {
+        assertThrows(IllegalStateException.class,
+                () -> new JwtCodec(new JwtProperties("RandomSecret", null, Map.of(), true)));
+        assertThrows(IllegalStateException.class,
+                () -> new JwtCodec(new JwtProperties("short secret", null, Map.of(), true)));
+        assertThrows(IllegalStateException.class,
+                () -> new JwtCodec(new JwtProperties(SECRET, "k1", Map.of("k1", "short"), true)));
+        // a missing secret fails the startup
+        assertThrows(IllegalStateException.class, () -> new JwtCodec(new JwtProperties("", null, Map.of(), true)));
+    }
+}
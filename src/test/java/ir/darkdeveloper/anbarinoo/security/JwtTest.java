@@ -2,6 +2,7 @@ package ir.darkdeveloper.anbarinoo.security;
 
 import ir.darkdeveloper.anbarinoo.extentions.DatabaseSetup;
 import ir.darkdeveloper.anbarinoo.security.jwt.JwtFilter;
+import ir.darkdeveloper.anbarinoo.security.jwt.RequestPrincipal;
 import ir.darkdeveloper.anbarinoo.util.JwtUtils;
 import org.json.JSONObject;
 import org.junit.jupiter.api.*;
@@ -21,6 +22,7 @@ import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 
 import javax.servlet.http.Part;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.is;
@@ -96,6 +98,12 @@ public record JwtTest(WebApplicationContext webApplicationContext,
                 .andExpect(jsonPath("$").isMap())
                 .andExpect(jsonPath("$.id").isNotEmpty());
 
+        // a valid access token authenticates the user with its claims
+        var claims = jwtUtils.getValidClaims(accessToken).orElseThrow();
+        assertThat(claims.get(JwtUtils.USER_ID_CLAIM, Long.class)).isEqualTo(userId);
+        var authorities = (List<?>) claims.get(JwtUtils.AUTHORITIES_CLAIM);
+        assertThat(authorities.stream().map(String::valueOf)).contains("OP_ACCESS_USER");
+
     }
 
 
@@ -112,6 +120,12 @@ public record JwtTest(WebApplicationContext webApplicationContext,
                 .andDo(print())
                 .andExpect(status().isOk())
                 .andExpect(header().exists("access_token"))
+                .andDo(result -> {
+                    // the filter has verified the token and compared it with the stored one for the request
+                    var principal = (RequestPrincipal) result.getRequest().getAttribute(RequestPrincipal.ATTRIBUTE);
+                    assertThat(principal.userId()).isEqualTo(userId);
+                    assertThat(principal.tokenBound()).isTrue();
+                })
                 .andExpect(jsonPath("$").isMap())
                 .andExpect(jsonPath("$.shopImage").value(is("noImage.png")))
                 .andExpect(jsonPath("$.profileImage").value(is("noProfile.jpeg")))
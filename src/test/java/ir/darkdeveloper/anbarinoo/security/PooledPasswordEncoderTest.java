@@ -0,0 +1,109 @@
+package ir.darkdeveloper.anbarinoo.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ir.darkdeveloper.anbarinoo.exception.ServiceUnavailableException;
+import ir.darkdeveloper.anbarinoo.security.password.PasswordHashingProperties;
+import ir.darkdeveloper.anbarinoo.security.password.PooledPasswordEncoder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PooledPasswordEncoderTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private PooledPasswordEncoder encoder;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        encoder.destroy();
+    }
+
+    private PooledPasswordEncoder encoder(int queueCapacity, int strength) {
+        var properties = new PasswordHashingProperties(1, queueCapacity, strength, Duration.ofSeconds(3));
+        return new PooledPasswordEncoder(properties, meterRegistry);
+    }
+
+    @Test
+    void encodesAndMatchesOnPool() {
+        encoder = encoder(10, 4);
+        var hash = encoder.encode("Pass!12");
+        assertThat(hash).startsWith("$2a$04$");
+        assertThat(encoder.matches("Pass!12", hash)).isTrue();
+        assertThat(encoder.matches("Pass!13", hash)).isFalse();
+        assertThat(meterRegistry.get("password.hashing").tag("operation", "matches").timer().count())
+                .isEqualTo(2);
+        assertThat(meterRegistry.get("password.hashing.queue.wait").timer().count()).isEqualTo(3);
+    }
+
+    @Test
+    void upgradesHashesOfAnotherCost() {
+        encoder = encoder(10, 5);
+        assertThat(encoder.upgradeEncoding(encoder.encode("Pass!12"))).isFalse();
+        var otherCost = encoder(10, 4);
+        try {
+            assertThat(encoder.upgradeEncoding(otherCost.encode("Pass!12"))).isTrue();
+        } finally {
+            otherCost.destroy();
+        }
+        assertThat(encoder.upgradeEncoding("not a hash")).isFalse();
+    }
+
+    @Test
+    void rejectsWhenPoolIsFull() {
+        encoder = encoder(0, 4);
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        // bcrypt reads the password with toString, so it holds the only thread until it is released
+        var blockingPassword = new CharSequence() {
+            @Override
+            public String toString() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "Pass!12";
+            }
+
+            @Override
+            public int length() {
+                return toString().length();
+            }
+
+            @Override
+            public char charAt(int index) {
+                return toString().charAt(index);
+            }
+
+            @Override
+            public CharSequence subSequence(int start, int end) {
+                return toString().subSequence(start, end);
+            }
+        };
+        var blocked = CompletableFuture.supplyAsync(() -> encoder.encode(blockingPassword));
+        try {
+            started.await();
+            var e = assertThrows(ServiceUnavailableException.class, () -> encoder.encode("Pass!12"));
+            assertThat(e.getRetryAfter()).isEqualTo(Duration.ofSeconds(3));
+            assertThat(meterRegistry.get("password.hashing.rejections").counter().count()).isEqualTo(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            release.countDown();
+        }
+        assertThat(blocked.join()).startsWith("$2a$04$");
+    }
+}
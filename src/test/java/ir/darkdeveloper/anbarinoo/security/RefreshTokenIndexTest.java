@@ -0,0 +1,85 @@
+package ir.darkdeveloper.anbarinoo.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ir.darkdeveloper.anbarinoo.model.RefreshModel;
+import ir.darkdeveloper.anbarinoo.security.jwt.RefreshTokenIndex;
+import ir.darkdeveloper.anbarinoo.security.jwt.RefreshTokenIndexProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RefreshTokenIndexTest {
+
+    private AtomicInteger loads;
+    private RefreshTokenIndex index;
+
+    @BeforeEach
+    void setUp() {
+        loads = new AtomicInteger();
+        index = new RefreshTokenIndex(new RefreshTokenIndexProperties(2, Duration.ofMinutes(1)),
+                new SimpleMeterRegistry());
+    }
+
+    private static RefreshModel token(Long userId, String refreshToken) {
+        return new RefreshModel(userId * 10, userId, "access" + userId, refreshToken, null);
+    }
+
+    private Optional<RefreshModel> load(RefreshModel token) {
+        loads.incrementAndGet();
+        return Optional.ofNullable(token);
+    }
+
+    @Test
+    void findsByUserIdAndHash() {
+        index.put(token(1L, "refresh1"));
+        var byUserId = index.getByUserId(1L, () -> load(null));
+        var byHash = index.getByHash(RefreshModel.hashToken("refresh1"), () -> load(null));
+        assertThat(byUserId).map(RefreshModel::getRefreshToken).contains("refresh1");
+        assertThat(byHash).map(RefreshModel::getUserId).contains(1L);
+        assertThat(loads.get()).isZero();
+
+        // copies are returned
+        byUserId.get().setRefreshToken("changed");
+        assertThat(index.getByUserId(1L, () -> load(null))).map(RefreshModel::getRefreshToken).contains("refresh1");
+    }
+
+    @Test
+    void writesReplaceOldTokens() {
+        index.put(token(1L, "refresh1"));
+        index.put(token(1L, "refresh2"));
+        var oldHash = RefreshModel.hashToken("refresh1");
+        assertThat(index.getByHash(oldHash, () -> load(null))).isEmpty();
+        assertThat(loads.get()).isEqualTo(1);
+
+        index.evictUser(1L);
+        assertThat(index.getByUserId(1L, () -> load(null))).isEmpty();
+        assertThat(index.size()).isZero();
+    }
+
+    @Test
+    void loadedTokensAreCachedUnlessWrittenMeanwhile() {
+        index.getByUserId(1L, () -> load(token(1L, "refresh1")));
+        index.getByHash(RefreshModel.hashToken("refresh1"), () -> load(null));
+        assertThat(loads.get()).isEqualTo(1);
+
+        index.getByUserId(2L, () -> {
+            index.evictUser(2L);
+            return load(token(2L, "refresh2"));
+        });
+        assertThat(index.getByUserId(2L, () -> load(null))).isEmpty();
+    }
+
+    @Test
+    void boundedBySize() {
+        index.put(token(1L, "refresh1"));
+        index.put(token(2L, "refresh2"));
+        index.put(token(3L, "refresh3"));
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.getByHash(RefreshModel.hashToken("refresh1"), () -> load(null))).isEmpty();
+    }
+}
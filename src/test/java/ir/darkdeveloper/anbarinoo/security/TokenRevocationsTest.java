@@ -0,0 +1,51 @@
+package ir.darkdeveloper.anbarinoo.security;
+
+import ir.darkdeveloper.anbarinoo.security.jwt.JwtCodec;
+import ir.darkdeveloper.anbarinoo.security.jwt.JwtProperties;
+import ir.darkdeveloper.anbarinoo.security.jwt.TokenRevocations;
+import ir.darkdeveloper.anbarinoo.util.JwtUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenRevocationsTest {
+
+    private static final String SECRET = "secret of the tokens of the tests";
+
+    private JwtUtils jwtUtils;
+    private TokenRevocations revocations;
+
+    @BeforeEach
+    void setUp() {
+        jwtUtils = new JwtUtils(new JwtCodec(new JwtProperties(SECRET, null, Map.of(), true)));
+        revocations = new TokenRevocations(jwtUtils);
+    }
+
+    @Test
+    void revokesTokensIssuedBeforeRevocation() {
+        var issuedBefore = new Date(System.currentTimeMillis() - 5000);
+        assertThat(revocations.isRevoked(1L, issuedBefore)).isFalse();
+        revocations.revokeUser(1L);
+        assertThat(revocations.isRevoked(1L, issuedBefore)).isTrue();
+        assertThat(revocations.isRevoked(2L, issuedBefore)).isFalse();
+        assertThat(revocations.isRevoked(1L, new Date(System.currentTimeMillis() + 5000))).isFalse();
+
+        revocations.revokeAll();
+        assertThat(revocations.isRevoked(2L, issuedBefore)).isTrue();
+    }
+
+    @Test
+    void keepsRevocationsWhileTokensCanBeValid() {
+        revocations.revokeUser(1L);
+        revocations.deleteExpiredRevocations();
+        assertThat(revocations.size()).isEqualTo(1);
+
+        jwtUtils.setAccessExpire(-2000L);
+        revocations.deleteExpiredRevocations();
+        assertThat(revocations.size()).isZero();
+    }
+}
@@ -0,0 +1,98 @@
+package ir.darkdeveloper.anbarinoo.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ir.darkdeveloper.anbarinoo.model.Authority;
+import ir.darkdeveloper.anbarinoo.security.jwt.UserPrincipal;
+import ir.darkdeveloper.anbarinoo.security.jwt.UserPrincipalCache;
+import ir.darkdeveloper.anbarinoo.security.jwt.UserPrincipalCacheProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserPrincipalCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        loads = new AtomicInteger();
+    }
+
+    private UserPrincipalCache cache(int size, Duration ttl) {
+        return new UserPrincipalCache(new UserPrincipalCacheProperties(size, ttl), meterRegistry);
+    }
+
+    private Optional<UserPrincipal> load(Long userId) {
+        loads.incrementAndGet();
+        return Optional.of(new UserPrincipal(userId, "user" + userId + "@mail.com", "user" + userId,
+                List.<GrantedAuthority>of(Authority.OP_ACCESS_USER), true));
+    }
+
+    @Test
+    void cachesByUserId() {
+        var cache = cache(10, Duration.ofMinutes(1));
+        var first = cache.get(1L, () -> load(1L));
+        assertThat(cache.get(1L, () -> load(1L))).containsSame(first.get());
+        cache.get(2L, () -> load(2L));
+        assertThat(loads.get()).isEqualTo(2);
+        assertThat(first.get().hasName("user1")).isTrue();
+        assertThat(first.get().hasName("user1@mail.com")).isTrue();
+        assertThat(first.get().hasName("user2")).isFalse();
+        assertThat(meterRegistry.get("user.principal.cache").tag("result", "hit").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void missingUsersAreNotCached() {
+        var cache = cache(10, Duration.ofMinutes(1));
+        assertThat(cache.get(1L, Optional::empty)).isEmpty();
+        cache.get(1L, () -> load(1L));
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    void evictUserAndEvictAll() {
+        var cache = cache(10, Duration.ofMinutes(1));
+        cache.get(1L, () -> load(1L));
+        cache.get(2L, () -> load(2L));
+        cache.evictUser(1L);
+        cache.get(1L, () -> load(1L));
+        cache.get(2L, () -> load(2L));
+        assertThat(loads.get()).isEqualTo(3);
+        cache.evictAll();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void principalLoadedDuringEvictionIsNotCached() {
+        var cache = cache(10, Duration.ofMinutes(1));
+        cache.get(1L, () -> {
+            cache.evictUser(1L);
+            return load(1L);
+        });
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void boundedBySizeAndTime() {
+        var cache = cache(2, Duration.ofMinutes(1));
+        cache.get(1L, () -> load(1L));
+        cache.get(2L, () -> load(2L));
+        cache.get(3L, () -> load(3L));
+        assertThat(cache.size()).isEqualTo(2);
+
+        var expiringCache = cache(10, Duration.ZERO);
+        expiringCache.get(1L, () -> load(1L));
+        expiringCache.get(1L, () -> load(1L));
+        assertThat(loads.get()).isEqualTo(5);
+    }
+}
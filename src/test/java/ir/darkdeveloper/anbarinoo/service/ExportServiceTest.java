@@ -0,0 +1,129 @@
+package ir.darkdeveloper.anbarinoo.service;
+
+import ir.darkdeveloper.anbarinoo.exception.BadRequestException;
+import ir.darkdeveloper.anbarinoo.exception.NoContentException;
+import ir.darkdeveloper.anbarinoo.exception.ServiceUnavailableException;
+import ir.darkdeveloper.anbarinoo.util.JwtUtils;
+import ir.darkdeveloper.anbarinoo.util.export.ExportColumn;
+import ir.darkdeveloper.anbarinoo.util.export.ExportFormat;
+import ir.darkdeveloper.anbarinoo.util.export.ExportJob;
+import ir.darkdeveloper.anbarinoo.util.export.ExportJobProperties;
+import ir.darkdeveloper.anbarinoo.util.export.ExportSource;
+import ir.darkdeveloper.anbarinoo.util.export.ExportSources;
+import ir.darkdeveloper.anbarinoo.util.export.ExportType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ExportServiceTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final JwtUtils jwtUtils = mock(JwtUtils.class);
+    private final HttpServletRequest firstUser = mock(HttpServletRequest.class);
+    private final HttpServletRequest secondUser = mock(HttpServletRequest.class);
+
+    @TempDir
+    Path directory;
+    private ExportService service;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        if (service != null)
+            service.destroy();
+    }
+
+    @Test
+    void rejectsJobsOverLimitOfUser() throws Exception {
+        service = createService(2, 10, Duration.ofHours(1));
+        var first = service.submitJob(ExportType.BUYS, ExportFormat.CSV, false, Optional.empty(), firstUser);
+        service.submitJob(ExportType.BUYS, ExportFormat.CSV, false, Optional.empty(), firstUser);
+
+        assertThatThrownBy(() -> service.submitJob(ExportType.BUYS, ExportFormat.CSV, false, Optional.empty(),
+                firstUser))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessageContaining("2 exports running");
+        // the limit is of every user
+        service.submitJob(ExportType.BUYS, ExportFormat.CSV, false, Optional.empty(), secondUser);
+
+        release.countDown();
+        awaitDone(first.id(), firstUser);
+        service.submitJob(ExportType.BUYS, ExportFormat.CSV, false, Optional.empty(), firstUser);
+    }
+
+    @Test
+    void rejectsJobsWhenQueueIsFull() throws IOException {
+        // one job runs and one waits
+        service = createService(2, 1, Duration.ofHours(1));
+        service.submitJob(ExportType.BUYS, ExportFormat.CSV, false, Optional.empty(), firstUser);
+        service.submitJob(ExportType.BUYS, ExportFormat.CSV, false, Optional.empty(), firstUser);
+
+        assertThatThrownBy(() -> service.submitJob(ExportType.BUYS, ExportFormat.CSV, false, Optional.empty(),
+                secondUser))
+                .isInstanceOf(ServiceUnavailableException.class)
+                .extracting(e -> ((ServiceUnavailableException) e).getRetryAfter())
+                .isEqualTo(Duration.ofSeconds(30));
+    }
+
+    @Test
+    void deletesFinishedJobsAfterTtl() throws Exception {
+        service = createService(2, 10, Duration.ofMillis(500));
+        release.countDown();
+        var id = service.submitJob(ExportType.BUYS, ExportFormat.CSV, false, Optional.empty(), firstUser).id();
+        awaitDone(id, firstUser);
+        var file = service.getDoneJob(id, firstUser).getFile();
+        assertThat(file).exists();
+
+        service.deleteExpiredJobs();
+        assertThat(service.getJob(id, firstUser).status()).isEqualTo(ExportJob.Status.DONE.name());
+
+        Thread.sleep(600);
+        service.deleteExpiredJobs();
+        assertThatThrownBy(() -> service.getJob(id, firstUser)).isInstanceOf(NoContentException.class);
+        assertThat(Files.exists(file)).isFalse();
+    }
+
+    private ExportService createService(Integer perUserLimit, Integer queueCapacity, Duration ttl)
+            throws IOException {
+        when(jwtUtils.getUserId(firstUser)).thenReturn(1L);
+        when(jwtUtils.getUserId(secondUser)).thenReturn(2L);
+        // rows are read after the test releases them, so the jobs stay running until then
+        var source = new ExportSource<>("buys", List.of(new ExportColumn<String>("نام", "name", name -> name)),
+                (userId, from, to, action) -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    action.accept("row");
+                });
+        var sources = mock(ExportSources.class);
+        when(sources.of(ExportType.BUYS)).thenReturn(List.of(source));
+        return new ExportService(sources, jwtUtils,
+                new ExportJobProperties(1, queueCapacity, perUserLimit, ttl, Duration.ofSeconds(30), directory));
+    }
+
+    private void awaitDone(String id, HttpServletRequest req) throws InterruptedException {
+        var done = ExportJob.Status.DONE.name();
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!service.getJob(id, req).status().equals(done) && System.nanoTime() < deadline)
+            Thread.sleep(20);
+        assertThat(service.getJob(id, req).status()).isEqualTo(done);
+    }
+}
@@ -1,7 +1,9 @@
 package ir.darkdeveloper.anbarinoo.service.Financial;
 
 import ir.darkdeveloper.anbarinoo.TestUtils;
+import ir.darkdeveloper.anbarinoo.dto.LineErrorDto;
 import ir.darkdeveloper.anbarinoo.exception.BadRequestException;
+import ir.darkdeveloper.anbarinoo.exception.LinesException;
 import ir.darkdeveloper.anbarinoo.exception.NoContentException;
 import ir.darkdeveloper.anbarinoo.extentions.DatabaseSetup;
 import ir.darkdeveloper.anbarinoo.model.BuyModel;
@@ -12,6 +14,7 @@ import ir.darkdeveloper.anbarinoo.service.CategoryService;
 import ir.darkdeveloper.anbarinoo.service.ProductService;
 import ir.darkdeveloper.anbarinoo.service.UserService;
 import ir.darkdeveloper.anbarinoo.util.JwtUtils;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,11 +22,15 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.annotation.DirtiesContext;
 
 import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -183,5 +190,66 @@ public record BuyServiceTest(UserService userService,
         assertThat(product.getId()).isEqualTo(productId);
     }
 
+    @Test
+    @Order(10)
+    @WithMockUser(authorities = {"OP_ACCESS_USER"})
+    void importBuys() throws IOException {
+        var file = xlsxOf(new Object[]{"product", "count", "price", "tax"},
+                new Object[]{productId, 10, 20, 9},
+                new Object[]{productId, 5.5, 30});
+        assertThat(buyService.importBuys(file, request)).isEqualTo(2);
+        var product = productService.getProduct(productId, request);
+        assertThat(product.getTotalCount()).isEqualTo(BigDecimal.valueOf(655000, 4));
+    }
+
+    @Test
+    @Order(11)
+    @WithMockUser(authorities = {"OP_ACCESS_USER"})
+    void importBuysWithBadRows() throws IOException {
+        var file = xlsxOf(new Object[]{"product", "count", "price", "tax"},
+                new Object[]{productId, 10, 20, 9},
+                new Object[]{productId, "ten", 20, 9},
+                new Object[]{productId + 1000, 10, 20, 9});
+        var e = assertThrows(LinesException.class, () -> buyService.importBuys(file, request));
+        assertThat(e.getLines()).extracting(LineErrorDto::index).containsExactly(3, 4);
+        var product = productService.getProduct(productId, request);
+        assertThat(product.getTotalCount()).isEqualTo(BigDecimal.valueOf(655000, 4));
+    }
+
+    @Test
+    @Order(12)
+    @WithMockUser(authorities = {"OP_ACCESS_USER"})
+    void importBuysWithBadRowsInManyBatches() throws IOException {
+        var rows = new ArrayList<Object[]>();
+        rows.add(new Object[]{"product", "count", "price", "tax"});
+        rows.add(new Object[]{productId, "ten", 20, 9});
+        for (int i = 0; i < 500; i++)
+            rows.add(new Object[]{productId, 1, 20, 9});
+        rows.add(new Object[]{productId + 1000, 1, 20, 9});
+        // stocks of the batches after a failed row are not changed, but their products are still checked
+        var e = assertThrows(LinesException.class, () -> buyService.importBuys(xlsxOf(rows.toArray(Object[][]::new)),
+                request));
+        assertThat(e.getLines()).extracting(LineErrorDto::index).containsExactly(2, 503);
+        var product = productService.getProduct(productId, request);
+        assertThat(product.getTotalCount()).isEqualTo(BigDecimal.valueOf(655000, 4));
+    }
+
+    private static MockMultipartFile xlsxOf(Object[]... rows) throws IOException {
+        try (var workbook = new XSSFWorkbook(); var out = new ByteArrayOutputStream()) {
+            var sheet = workbook.createSheet();
+            for (int i = 0; i < rows.length; i++) {
+                var row = sheet.createRow(i);
+                for (int j = 0; j < rows[i].length; j++) {
+                    if (rows[i][j] instanceof Number number)
+                        row.createCell(j).setCellValue(number.doubleValue());
+                    else
+                        row.createCell(j).setCellValue(rows[i][j].toString());
+                }
+            }
+            workbook.write(out);
+            return new MockMultipartFile("file", "buys.xlsx", null, out.toByteArray());
+        }
+    }
+
 
 }
@@ -0,0 +1,253 @@
+package ir.darkdeveloper.anbarinoo.service.Financial;
+
+import ir.darkdeveloper.anbarinoo.TestUtils;
+import ir.darkdeveloper.anbarinoo.model.CategoryModel;
+import ir.darkdeveloper.anbarinoo.model.DebtOrDemandModel;
+import ir.darkdeveloper.anbarinoo.model.ProductModel;
+import ir.darkdeveloper.anbarinoo.model.SellModel;
+import ir.darkdeveloper.anbarinoo.model.UserModel;
+import ir.darkdeveloper.anbarinoo.repository.Financial.DailyFinancialSummaryRepo;
+import ir.darkdeveloper.anbarinoo.service.CategoryService;
+import ir.darkdeveloper.anbarinoo.service.ProductService;
+import ir.darkdeveloper.anbarinoo.service.UserService;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.annotation.DirtiesContext;
+
+import javax.servlet.http.HttpServletRequest;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@DirtiesContext
+public record DailyFinancialSummaryServiceTest(UserService userService,
+                                               ProductService productService,
+                                               SellService sellService,
+                                               DebtOrDemandService dodService,
+                                               CategoryService categoryService,
+                                               DailyFinancialSummaryService summaryService,
+                                               DailyFinancialSummaryRepo summaryRepo,
+                                               TestUtils testUtils) {
+
+    private static HttpServletRequest request;
+    private static Long userId;
+    private static Long catId;
+    private static Long productId;
+    private static Long sellId;
+
+    @Autowired
+    public DailyFinancialSummaryServiceTest {
+    }
+
+    @Test
+    @Order(1)
+    @WithMockUser(username = "anonymousUser")
+    void saveUser() {
+        var response = new MockHttpServletResponse();
+        var user = UserModel.builder()
+                .email("email@mail.com")
+                .address("address")
+                .description("desc")
+                .userName("user n")
+                .enabled(true)
+                .password("pass12B~")
+                .passwordRepeat("pass12B~")
+                .build();
+        userService.signUpUser(Optional.of(user), response);
+        userId = user.getId();
+        request = testUtils.setUpHeaderAndGetReqWithRes(response);
+    }
+
+    @Test
+    @Order(2)
+    @WithMockUser(authorities = {"OP_ACCESS_USER"})
+    void saveProductAddsFirstBuyCost() {
+        var electronics = new CategoryModel("Electronics");
+        categoryService.saveCategory(Optional.of(electronics), request);
+        catId = electronics.getId();
+        var product = ProductModel.builder()
+                .name("name")
+                .description("description")
+                .totalCount(BigDecimal.valueOf(50))
+                .price(BigDecimal.valueOf(56))
+                .category(new CategoryModel(catId))
+                .tax(9)
+                .build();
+        productService.saveProduct(Optional.of(product), request);
+        productId = product.getId();
+
+        var summary = summaryRepo.findByUserIdAndDay(userId, LocalDate.now()).orElseThrow();
+        assertThat(summary.getBuyCost()).isEqualByComparingTo("3052");
+        assertThat(summary.getBuyTax()).isEqualByComparingTo("252");
+    }
+
+    @Test
+    @Order(3)
+    @WithMockUser(authorities = {"OP_ACCESS_USER"})
+    void saveAndUpdateSell() {
+        var sell = SellModel.builder()
+                .product(new ProductModel(productId))
+                .price(BigDecimal.valueOf(50))
+                .count(BigDecimal.valueOf(20))
+                .tax(9)
+                .build();
+        sellService.saveSell(Optional.of(sell), request);
+        sellId = sell.getId();
+        var summary = summaryRepo.findByUserIdAndDay(userId, LocalDate.now()).orElseThrow();
+        assertThat(summary.getSellIncome()).isEqualByComparingTo("910");
+        assertThat(summary.getSellTax()).isEqualByComparingTo("90");
+
+        var update = SellModel.builder()
+                .product(new ProductModel(productId))
+                .price(BigDecimal.valueOf(50))
+                .count(BigDecimal.valueOf(10))
+                .build();
+        sellService.updateSell(Optional.of(update), sellId, request);
+        summary = summaryRepo.findByUserIdAndDay(userId, LocalDate.now()).orElseThrow();
+        assertThat(summary.getSellIncome()).isEqualByComparingTo("455");
+        assertThat(summary.getSellTax()).isEqualByComparingTo("45");
+    }
+
+    @Test
+    @Order(4)
+    @WithMockUser(authorities = {"OP_ACCESS_USER"})
+    void saveCheckedOutDOD() {
+        var debt = DebtOrDemandModel.builder()
+                .nameOf("Me")
+                .payTo("Someone")
+                .amount(BigDecimal.valueOf(1000))
+                .isDebt(true)
+                .isCheckedOut(true)
+                .issuedAt(LocalDateTime.now())
+                .validTill(LocalDateTime.now().plusDays(5))
+                .build();
+        var notCheckedOutDemand = DebtOrDemandModel.builder()
+                .nameOf("Someone")
+                .payTo("Me")
+                .amount(BigDecimal.valueOf(2000))
+                .isDebt(false)
+                .isCheckedOut(false)
+                .issuedAt(LocalDateTime.now())
+                .validTill(LocalDateTime.now().plusDays(5))
+                .build();
+        dodService.saveDOD(Optional.of(debt), request);
+        dodService.saveDOD(Optional.of(notCheckedOutDemand), request);
+        var summary = summaryRepo.findByUserIdAndDay(userId, LocalDate.now()).orElseThrow();
+        assertThat(summary.getDodDebt()).isEqualByComparingTo("1000");
+        assertThat(summary.getDodDemand()).isEqualByComparingTo("0");
+    }
+
+    @Test
+    @Order(5)
+    @WithMockUser(authorities = {"OP_ACCESS_USER"})
+    void rebuildGivesSameSummary() {
+        // income of each is 0.00005, rounded per record they add 0.0002, rounded per day only 0.0001
+        var tinySells = new ArrayList<Long>();
+        for (int i = 0; i < 2; i++) {
+            var sell = SellModel.builder()
+                    .product(new ProductModel(productId))
+                    .price(new BigDecimal("0.0001"))
+                    .count(new BigDecimal("0.5"))
+                    .tax(0)
+                    .build();
+            sellService.saveSell(Optional.of(sell), request);
+            tinySells.add(sell.getId());
+        }
+        var summary = summaryRepo.findByUserIdAndDay(userId, LocalDate.now()).orElseThrow();
+        assertThat(summary.getSellIncome()).isEqualByComparingTo("455.0002");
+
+        summaryService.rebuildAll();
+        var rebuilt = summaryRepo.findByUserIdAndDay(userId, LocalDate.now()).orElseThrow();
+        assertThat(rebuilt.getBuyCost()).isEqualByComparingTo(summary.getBuyCost());
+        assertThat(rebuilt.getBuyTax()).isEqualByComparingTo(summary.getBuyTax());
+        assertThat(rebuilt.getSellIncome()).isEqualByComparingTo(summary.getSellIncome());
+        assertThat(rebuilt.getSellTax()).isEqualByComparingTo(summary.getSellTax());
+        assertThat(rebuilt.getDodDebt()).isEqualByComparingTo(summary.getDodDebt());
+        assertThat(rebuilt.getDodDemand()).isEqualByComparingTo(summary.getDodDemand());
+
+        tinySells.forEach(id -> sellService.deleteSell(id, request));
+    }
+
+    @Test
+    @Order(6)
+    @WithMockUser(authorities = {"OP_ACCESS_USER"})
+    void deleteSellAndProduct() {
+        sellService.deleteSell(sellId, request);
+        var summary = summaryRepo.findByUserIdAndDay(userId, LocalDate.now()).orElseThrow();
+        assertThat(summary.getSellIncome()).isEqualByComparingTo("0");
+
+        productService.deleteProduct(productId, request);
+        summary = summaryRepo.findByUserIdAndDay(userId, LocalDate.now()).orElseThrow();
+        assertThat(summary.getBuyCost()).isEqualByComparingTo("0");
+        assertThat(summary.getDodDebt()).isEqualByComparingTo("1000");
+    }
+
+    @Test
+    @Order(7)
+    void sumFromDateToSplitsPartialAndFullDays() {
+        var from = LocalDateTime.of(2022, 1, 1, 10, 0);
+        var to = LocalDateTime.of(2022, 1, 4, 10, 0);
+        var rawRanges = new ArrayList<List<LocalDateTime>>();
+        var dayRanges = new ArrayList<List<LocalDate>>();
+        var sum = summaryService.sumFromDateTo(from, to,
+                (fromDay, toDay) -> {
+                    dayRanges.add(List.of(fromDay, toDay));
+                    return BigDecimal.TEN;
+                },
+                (f, t) -> {
+                    rawRanges.add(List.of(f, t));
+                    return BigDecimal.ONE;
+                });
+        assertThat(sum).isEqualByComparingTo("12");
+        assertThat(dayRanges).containsExactly(List.of(LocalDate.of(2022, 1, 2), LocalDate.of(2022, 1, 3)));
+        assertThat(rawRanges.get(0)).containsExactly(from, LocalDateTime.of(2022, 1, 2, 0, 0));
+        assertThat(rawRanges.get(1).get(1)).isEqualTo(to);
+
+        var sameDay = summaryService.sumFromDateTo(from, from.plusHours(5),
+                (fromDay, toDay) -> BigDecimal.TEN, (f, t) -> BigDecimal.ONE);
+        assertThat(sameDay).isEqualByComparingTo("1");
+    }
+
+    @Test
+    @Order(8)
+    @WithMockUser(authorities = {"OP_ACCESS_USER"})
+    void deleteCategoryWithSubCategory() {
+        var phones = new CategoryModel("Phones");
+        categoryService.saveSubCategory(Optional.of(phones), catId, request);
+        var product = ProductModel.builder()
+                .name("phone")
+                .description("description")
+                .totalCount(BigDecimal.valueOf(10))
+                .price(BigDecimal.valueOf(10))
+                .category(new CategoryModel(phones.getId()))
+                .tax(0)
+                .build();
+        productService.saveProduct(Optional.of(product), request);
+        var sell = SellModel.builder()
+                .product(new ProductModel(product.getId()))
+                .price(BigDecimal.valueOf(20))
+                .count(BigDecimal.valueOf(5))
+                .tax(0)
+                .build();
+        sellService.saveSell(Optional.of(sell), request);
+        var summary = summaryRepo.findByUserIdAndDay(userId, LocalDate.now()).orElseThrow();
+        assertThat(summary.getBuyCost()).isEqualByComparingTo("100");
+        assertThat(summary.getSellIncome()).isEqualByComparingTo("100");
+
+        categoryService.deleteCategory(catId, request);
+        summary = summaryRepo.findByUserIdAndDay(userId, LocalDate.now()).orElseThrow();
+        assertThat(summary.getBuyCost()).isEqualByComparingTo("0");
+        assertThat(summary.getSellIncome()).isEqualByComparingTo("0");
+        assertThat(summary.getDodDebt()).isEqualByComparingTo("1000");
+    }
+}
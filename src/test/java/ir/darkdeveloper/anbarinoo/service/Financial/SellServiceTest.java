@@ -1,7 +1,9 @@
 package ir.darkdeveloper.anbarinoo.service.Financial;
 
 import ir.darkdeveloper.anbarinoo.TestUtils;
+import ir.darkdeveloper.anbarinoo.dto.LineErrorDto;
 import ir.darkdeveloper.anbarinoo.exception.BadRequestException;
+import ir.darkdeveloper.anbarinoo.exception.LinesException;
 import ir.darkdeveloper.anbarinoo.exception.NoContentException;
 import ir.darkdeveloper.anbarinoo.model.CategoryModel;
 import ir.darkdeveloper.anbarinoo.model.ProductModel;
@@ -22,6 +24,7 @@ import org.springframework.test.annotation.DirtiesContext;
 
 import javax.servlet.http.HttpServletRequest;
 import java.math.BigDecimal;
+import java.util.List;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -174,6 +177,61 @@ public record SellServiceTest(UserService userService,
         assertThrows(NoContentException.class, () -> sellService.getSell(sellId, request));
         var product = productService.getProduct(productId, request);
         assertThat(product.getId()).isEqualTo(productId);
+        assertThat(product.getTotalCount()).isEqualTo(BigDecimal.valueOf(500000, 4));
+    }
+
+    @Test
+    @Order(10)
+    @WithMockUser(authorities = {"OP_ACCESS_USER"})
+    void saveSellMoreThanStock() {
+        var sellRecord = SellModel.builder()
+                .product(new ProductModel(productId))
+                .price(BigDecimal.valueOf(50))
+                .count(BigDecimal.valueOf(50.0001))
+                .tax(9)
+                .build();
+        assertThrows(BadRequestException.class, () -> sellService.saveSell(Optional.of(sellRecord), request));
+        var product = productService.getProduct(productId, request);
+        assertThat(product.getTotalCount()).isEqualTo(BigDecimal.valueOf(500000, 4));
+    }
+
+    @Test
+    @Order(11)
+    @WithMockUser(authorities = {"OP_ACCESS_USER"})
+    void saveAllSells() {
+        var sells = List.of(
+                SellModel.builder().product(new ProductModel(productId)).price(BigDecimal.valueOf(50))
+                        .count(BigDecimal.valueOf(10)).tax(9).build(),
+                SellModel.builder().product(new ProductModel(productId)).price(BigDecimal.valueOf(55))
+                        .count(BigDecimal.valueOf(5)).tax(9).build());
+        var savedSells = sellService.saveAllSells(sells, request);
+        assertThat(savedSells).hasSize(2).allMatch(sell -> sell.getId() != null);
+        var product = productService.getProduct(productId, request);
+        assertThat(product.getTotalCount()).isEqualTo(BigDecimal.valueOf(350000, 4));
+    }
+
+    @Test
+    @Order(12)
+    @WithMockUser(authorities = {"OP_ACCESS_USER"})
+    void saveAllSellsWithBadLines() {
+        var invalidSells = List.of(
+                SellModel.builder().product(new ProductModel(productId)).price(BigDecimal.valueOf(50))
+                        .count(BigDecimal.valueOf(5)).tax(9).build(),
+                SellModel.builder().product(new ProductModel(productId)).price(BigDecimal.valueOf(50))
+                        .count(null).tax(9).build());
+        var invalid = assertThrows(LinesException.class, () -> sellService.saveAllSells(invalidSells, request));
+        assertThat(invalid.getLines()).extracting(LineErrorDto::index).containsExactly(1);
+
+        var tooManySells = List.of(
+                SellModel.builder().product(new ProductModel(productId)).price(BigDecimal.valueOf(50))
+                        .count(BigDecimal.valueOf(30)).tax(9).build(),
+                SellModel.builder().product(new ProductModel(productId)).price(BigDecimal.valueOf(50))
+                        .count(BigDecimal.valueOf(10)).tax(9).build());
+        var tooMany = assertThrows(LinesException.class, () -> sellService.saveAllSells(tooManySells, request));
+        assertThat(tooMany.getLines()).extracting(LineErrorDto::index).containsExactly(0, 1);
+
+        var product = productService.getProduct(productId, request);
+        assertThat(product.getTotalCount()).isEqualTo(BigDecimal.valueOf(350000, 4));
     }
 
 
@@ -1,11 +1,13 @@
 package ir.darkdeveloper.anbarinoo.service;
 
 import ir.darkdeveloper.anbarinoo.TestUtils;
+import ir.darkdeveloper.anbarinoo.dto.LineErrorDto;
 import ir.darkdeveloper.anbarinoo.exception.NoContentException;
 import ir.darkdeveloper.anbarinoo.extentions.DatabaseSetup;
 import ir.darkdeveloper.anbarinoo.model.CategoryModel;
 import ir.darkdeveloper.anbarinoo.model.ProductModel;
 import ir.darkdeveloper.anbarinoo.model.UserModel;
+import ir.darkdeveloper.anbarinoo.service.Financial.BuyService;
 import ir.darkdeveloper.anbarinoo.util.JwtUtils;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -17,9 +19,13 @@ import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.persistence.EntityManager;
 import javax.servlet.http.HttpServletRequest;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Optional;
 
@@ -34,6 +40,9 @@ public record ProductServiceTest(ProductService productService,
                                  JwtUtils jwtUtils,
                                  UserService userService,
                                  CategoryService categoryService,
+                                 BuyService buyService,
+                                 PlatformTransactionManager transactionManager,
+                                 EntityManager entityManager,
                                  TestUtils testUtils) {
 
 
@@ -206,13 +215,61 @@ public record ProductServiceTest(ProductService productService,
     @Test
     @Order(10)
     @WithMockUser(username = "email@mail.com", authorities = {"OP_ACCESS_USER"})
+    void changeTotalCountOfLoadedProduct() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            var product = productService.getProduct(productId, request);
+            var category = product.getCategory();
+            productService.increaseTotalCount(productId, BigDecimal.valueOf(5), request);
+            assertThat(product.getTotalCount()).isEqualByComparingTo(BigDecimal.valueOf(15));
+            productService.decreaseTotalCount(productId, BigDecimal.valueOf(3), "Not enough", request);
+            assertThat(product.getTotalCount()).isEqualByComparingTo(BigDecimal.valueOf(12));
+            // only the product is refreshed, other loaded entities are not detached
+            assertThat(entityManager.contains(product)).isTrue();
+            assertThat(entityManager.contains(category)).isTrue();
+            status.setRollbackOnly();
+        });
+    }
+
+    @Test
+    @Order(11)
+    @WithMockUser(username = "email@mail.com", authorities = {"OP_ACCESS_USER"})
+    void importProducts() {
+        var csv = """
+                name,description,category,count,price,tax
+                Imported one,"desc, with comma",Electronics,10,"1,200",9
+                Imported two,,Electronics,5.5,300,
+                Imported three,,Books,5,300,9
+                Imported four,,Electronics,ten,300,9
+
+                ,,Electronics,5,300,9
+                """;
+        var file = new MockMultipartFile("file", "products.csv", null, csv.getBytes(StandardCharsets.UTF_8));
+        var result = productService.importProducts(file, request);
+
+        assertThat(result.imported()).isEqualTo(2);
+        assertThat(result.errors()).extracting(LineErrorDto::index).containsExactly(4, 5, 7);
+        var imported = productService.findByNameContains("Imported", PageRequest.of(0, 8), request)
+                .getContent();
+        assertThat(imported).hasSize(2);
+        var first = imported.stream().filter(p -> p.getName().equals("Imported one")).findFirst().orElseThrow();
+        assertThat(first.getDescription()).isEqualTo("desc, with comma");
+        assertThat(first.getPrice()).isEqualByComparingTo(BigDecimal.valueOf(1200));
+        assertThat(first.getCategory().getId()).isEqualTo(catId);
+        assertThat(first.getFirstBuyId()).isNotNull();
+        assertThat(buyService.getBuy(first.getFirstBuyId(), request).getCount())
+                .isEqualByComparingTo(BigDecimal.TEN);
+    }
+
+    @Test
+    @Order(12)
+    @WithMockUser(username = "email@mail.com", authorities = {"OP_ACCESS_USER"})
     @Disabled
     void deleteProduct() {
         productService.deleteProduct(productId, request);
     }
 
     @Test
-    @Order(11)
+    @Order(13)
     @WithMockUser(username = "email@mail.com", authorities = {"OP_ACCESS_USER", "OP_DELETE_USER"})
     void deleteUser() {
         // should delete all products and product images of this user
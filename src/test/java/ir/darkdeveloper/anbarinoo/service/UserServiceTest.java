@@ -3,6 +3,8 @@ package ir.darkdeveloper.anbarinoo.service;
 import ir.darkdeveloper.anbarinoo.TestUtils;
 import ir.darkdeveloper.anbarinoo.model.AuthProvider;
 import ir.darkdeveloper.anbarinoo.model.UserModel;
+import ir.darkdeveloper.anbarinoo.model.UserRole;
+import ir.darkdeveloper.anbarinoo.security.jwt.TokenRevocations;
 import ir.darkdeveloper.anbarinoo.util.JwtUtils;
 import org.junit.jupiter.api.MethodOrderer;
 import org.junit.jupiter.api.Order;
@@ -19,7 +21,9 @@ import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.annotation.DirtiesContext;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.Date;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -31,6 +35,7 @@ public record UserServiceTest(UserService service,
                               JwtUtils jwtUtils,
                               PasswordEncoder encoder,
                               UserRolesService rolesService,
+                              TokenRevocations revocations,
                               TestUtils testUtils) {
 
     private static HttpServletRequest request;
@@ -189,20 +194,45 @@ public record UserServiceTest(UserService service,
 
     @Test
     @Order(8)
+    void setRolesOfUser() {
+        // a token issued after the password change of updateUserWithKeepImagesAndNewPasswords
+        var issuedAt = new Date();
+        assertThat(revocations.isRevoked(userId, issuedAt)).isFalse();
+        var roleIds = rolesService.findAllByName("USER").stream().map(UserRole::getId).collect(Collectors.toSet());
+        rolesService.setRolesOfUser(userId, roleIds);
+        // the token has the authorities of the old roles
+        assertThat(revocations.isRevoked(userId, issuedAt)).isTrue();
+    }
+
+    @Test
+    @Order(9)
     void deleteUser() {
         service.deleteUser(userId, request);
     }
 
     @Test
-    @Order(9)
+    @Order(10)
     void getRoles() {
         var roles = rolesService.getAllRoles();
         assertThat(roles.size()).isNotEqualTo(0);
     }
 
     @Test
-    @Order(10)
+    @Order(11)
     void verifyUserEmail() {
     }
 
+    @Test
+    @Order(12)
+    void loadAdminUser() {
+        var admin = service.getAdminUser();
+        var first = service.loadUserByUsername(admin.username());
+        var second = service.loadUserByUsername(admin.username());
+        // hashed once, and erasing the password of one doesn't change the other
+        assertThat(second.getPassword()).isEqualTo(first.getPassword());
+        assertThat(second).isNotSameAs(first);
+        assertThat(encoder.matches(admin.password(), first.getPassword())).isTrue();
+        assertThat(first.getAuthorities()).hasSize(admin.authorities().size());
+    }
+
 }
@@ -0,0 +1,92 @@
+package ir.darkdeveloper.anbarinoo.util.Financial;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ir.darkdeveloper.anbarinoo.dto.FinancialDto;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static ir.darkdeveloper.anbarinoo.util.Financial.FinancialReportCache.ReportType.COSTS;
+import static ir.darkdeveloper.anbarinoo.util.Financial.FinancialReportCache.ReportType.INCOMES;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FinancialReportCacheTest {
+
+    private static final LocalDateTime FROM = LocalDateTime.of(2022, 1, 1, 0, 0);
+    private static final LocalDateTime TO = LocalDateTime.of(2022, 2, 1, 0, 0);
+
+    private SimpleMeterRegistry meterRegistry;
+    private AtomicInteger calculations;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        calculations = new AtomicInteger();
+    }
+
+    private FinancialReportCache cache(int size, Duration ttl) {
+        var properties = new FinancialReportProperties(1, 1, Duration.ofSeconds(1), size, ttl, 1000,
+                Duration.ofSeconds(2));
+        return new FinancialReportCache(properties, meterRegistry);
+    }
+
+    private FinancialDto calculate() {
+        return new FinancialDto(BigDecimal.valueOf(calculations.incrementAndGet()), null, FROM, TO);
+    }
+
+    @Test
+    void cachesByUserTypeAndRange() {
+        var cache = cache(10, Duration.ofMinutes(1));
+        var first = cache.get(1L, COSTS, FROM, TO, this::calculate);
+        assertThat(cache.get(1L, COSTS, FROM, TO, this::calculate)).isSameAs(first);
+        cache.get(1L, INCOMES, FROM, TO, this::calculate);
+        cache.get(2L, COSTS, FROM, TO, this::calculate);
+        cache.get(1L, COSTS, FROM, TO.plusDays(1), this::calculate);
+        assertThat(calculations.get()).isEqualTo(4);
+        assertThat(meterRegistry.get("financial.report.cache").tag("result", "hit").counter().count())
+                .isEqualTo(1);
+        assertThat(meterRegistry.get("financial.report.cache").tag("result", "miss").counter().count())
+                .isEqualTo(4);
+    }
+
+    @Test
+    void evictUserOnlyEvictsThatUser() {
+        var cache = cache(10, Duration.ofMinutes(1));
+        cache.get(1L, COSTS, FROM, TO, this::calculate);
+        cache.get(2L, COSTS, FROM, TO, this::calculate);
+        cache.evictUser(1L);
+        cache.get(1L, COSTS, FROM, TO, this::calculate);
+        cache.get(2L, COSTS, FROM, TO, this::calculate);
+        assertThat(calculations.get()).isEqualTo(3);
+    }
+
+    @Test
+    void usersOfSameSlotShareGeneration() {
+        // 16 slots, so users 1 and 17 share one
+        var cache = cache(10, Duration.ofMinutes(1));
+        cache.get(1L, COSTS, FROM, TO, this::calculate);
+        cache.get(17L, COSTS, FROM, TO, this::calculate);
+        cache.evictUser(1L);
+        cache.get(17L, COSTS, FROM, TO, this::calculate);
+        assertThat(calculations.get()).isEqualTo(3);
+    }
+
+    @Test
+    void boundedBySizeAndTime() {
+        var cache = cache(2, Duration.ofMinutes(1));
+        cache.get(1L, COSTS, FROM, TO, this::calculate);
+        cache.get(2L, COSTS, FROM, TO, this::calculate);
+        cache.get(3L, COSTS, FROM, TO, this::calculate);
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(meterRegistry.get("financial.report.cache.evictions").counter().count()).isEqualTo(1);
+
+        var expiringCache = cache(10, Duration.ZERO);
+        expiringCache.get(1L, COSTS, FROM, TO, this::calculate);
+        expiringCache.get(1L, COSTS, FROM, TO, this::calculate);
+        assertThat(calculations.get()).isEqualTo(5);
+    }
+}
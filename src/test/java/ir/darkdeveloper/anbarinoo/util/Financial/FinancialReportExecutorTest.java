@@ -0,0 +1,116 @@
+package ir.darkdeveloper.anbarinoo.util.Financial;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ir.darkdeveloper.anbarinoo.exception.BadRequestException;
+import ir.darkdeveloper.anbarinoo.exception.InternalServerException;
+import ir.darkdeveloper.anbarinoo.exception.ServiceUnavailableException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FinancialReportExecutorTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private FinancialReportExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        var properties = new FinancialReportProperties(2, 1, Duration.ofMillis(200), 10, Duration.ofMinutes(1),
+                1000, Duration.ofSeconds(2));
+        executor = new FinancialReportExecutor(properties, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.destroy();
+    }
+
+    @Test
+    void returnsResultsOfComponents() {
+        var first = executor.supply("first", () -> 1);
+        var second = executor.supply("second", () -> 2);
+        executor.awaitAll(first, second);
+        assertThat(executor.result(first) + executor.result(second)).isEqualTo(3);
+    }
+
+    @Test
+    void interruptsRunningComponentsOnTimeout() throws InterruptedException {
+        var interrupted = new CountDownLatch(1);
+        var slow = executor.supply("slow", () -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return 1;
+        });
+        var fast = executor.supply("fast", () -> 2);
+
+        assertThatThrownBy(() -> executor.awaitAll(fast, slow))
+                .isInstanceOf(InternalServerException.class)
+                .hasMessageContaining("took too long");
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(slow.isCancelled()).isTrue();
+        assertThat(meterRegistry.get("financial.report.timeouts").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void throwsExceptionOfComponentAsItIs() throws InterruptedException {
+        var started = new CountDownLatch(1);
+        var interrupted = new CountDownLatch(1);
+        var slow = executor.supply("slow", () -> {
+            started.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return 1;
+        });
+        // otherwise the slow one may be cancelled before it starts, and is never interrupted
+        started.await();
+        var failing = executor.supply("failing", () -> {
+            throw new BadRequestException("bad component");
+        });
+
+        assertThatThrownBy(() -> executor.awaitAll(failing, slow))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessage("bad component");
+        // the other components are not needed anymore
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(meterRegistry.get("financial.report.timeouts").counter().count()).isZero();
+    }
+
+    @Test
+    void rejectsComponentsWhenQueueIsFull() {
+        var release = new CountDownLatch(1);
+        Supplier<Integer> blocking = () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return 1;
+        };
+        try {
+            // two of them run and one waits
+            for (int i = 0; i < 3; i++)
+                executor.supply("blocking", blocking);
+            assertThatThrownBy(() -> executor.supply("rejected", () -> 2))
+                    .isInstanceOf(ServiceUnavailableException.class)
+                    .extracting(e -> ((ServiceUnavailableException) e).getRetryAfter())
+                    .isEqualTo(Duration.ofSeconds(2));
+        } finally {
+            release.countDown();
+        }
+    }
+}
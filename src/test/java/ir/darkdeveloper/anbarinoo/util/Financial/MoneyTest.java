@@ -0,0 +1,79 @@
+package ir.darkdeveloper.anbarinoo.util.Financial;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MoneyTest {
+
+    @Test
+    void addsScaledValues() {
+        var money = Money.zero()
+                .add(new BigDecimal("10.5"))
+                .add(new BigDecimal("0.0001"))
+                .add(BigDecimal.valueOf(-3));
+        assertThat(money.toBigDecimal()).isEqualTo(new BigDecimal("7.5001"));
+    }
+
+    @Test
+    void keepsValuesWithMoreFractionDigits() {
+        var money = Money.zero().add(new BigDecimal("1.00005")).add(new BigDecimal("0.00005"));
+        assertThat(money.toBigDecimal()).isEqualTo(new BigDecimal("1.00010"));
+    }
+
+    @Test
+    void sumIsSameAsBigDecimalForSumsOfDatabase() {
+        var random = new Random(7);
+        var money = Money.zero();
+        var expected = BigDecimal.ZERO;
+        for (int i = 0; i < 100_000; i++) {
+            // amounts of the buckets, count * price * (100 + tax) moved two points left
+            var amount = BigDecimal.valueOf(random.nextInt(1_000_000), 4)
+                    .multiply(BigDecimal.valueOf(random.nextInt(100_000_000), 4))
+                    .multiply(BigDecimal.valueOf(100 + random.nextInt(20)))
+                    .movePointLeft(2);
+            money.add(amount);
+            expected = expected.add(amount);
+        }
+        assertThat(money.toBigDecimal()).isEqualByComparingTo(expected);
+        assertThat(Money.zero().add(new BigDecimal("2.5000000000")).add(Money.zero().add(BigDecimal.ONE))
+                .toBigDecimal()).isEqualTo(new BigDecimal("3.5000"));
+    }
+
+    @Test
+    void percentOfIsSameAsBigDecimal() {
+        var random = new Random(7);
+        var money = Money.zero();
+        var expected = BigDecimal.ZERO;
+        for (int i = 0; i < 1_000_000; i++) {
+            var count = BigDecimal.valueOf(random.nextInt(1_000_000), 4);
+            var price = BigDecimal.valueOf(random.nextInt(100_000_000), 4);
+            var percent = random.nextInt(200) - 50;
+            money.addPercentOf(count, price, percent);
+            expected = expected.add(count.multiply(price).multiply(BigDecimal.valueOf(percent))
+                    .movePointLeft(2).setScale(Money.SCALE, RoundingMode.HALF_UP));
+        }
+        assertThat(money.toBigDecimal()).isEqualTo(expected);
+    }
+
+    @Test
+    void fallsBackToBigDecimalOnOverflow() {
+        var max = BigDecimal.valueOf(Long.MAX_VALUE, Money.SCALE);
+        var money = Money.zero().add(max).add(max).add(BigDecimal.ONE);
+        assertThat(money.toBigDecimal()).isEqualTo(max.add(max).add(BigDecimal.ONE).setScale(Money.SCALE));
+
+        var huge = new BigDecimal("100000000000");
+        assertThat(Money.percentOf(huge, huge, 109))
+                .isEqualTo(huge.multiply(huge).multiply(new BigDecimal("1.09")).setScale(Money.SCALE));
+    }
+
+    @Test
+    void negates() {
+        assertThat(Money.zero().add(BigDecimal.TEN).negate().toBigDecimal())
+                .isEqualTo(new BigDecimal("-10.0000"));
+    }
+}
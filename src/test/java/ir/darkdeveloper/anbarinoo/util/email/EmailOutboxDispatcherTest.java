@@ -0,0 +1,200 @@
+package ir.darkdeveloper.anbarinoo.util.email;
+
+import ir.darkdeveloper.anbarinoo.extentions.DatabaseSetup;
+import ir.darkdeveloper.anbarinoo.model.EmailOutboxModel;
+import ir.darkdeveloper.anbarinoo.repository.EmailOutboxRepo;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+@DirtiesContext
+@ExtendWith(DatabaseSetup.class)
+record EmailOutboxDispatcherTest(EmailService emailService,
+                                 EmailOutboxDispatcher dispatcher,
+                                 EmailOutboxRepo repo,
+                                 PlatformTransactionManager transactionManager) {
+
+    private static final SmtpStub smtp = SmtpStub.start();
+
+    @Autowired
+    public EmailOutboxDispatcherTest {
+    }
+
+    @DynamicPropertySource
+    static void mailProps(DynamicPropertyRegistry registry) {
+        registry.add("spring.mail.port", smtp::port);
+        registry.add("email.outbox.max-attempts", () -> 2);
+        registry.add("email.outbox.initial-backoff", () -> "0s");
+    }
+
+    @AfterAll
+    static void stopSmtp() throws IOException {
+        smtp.close();
+    }
+
+    @Test
+    @Order(1)
+    void sendBatchOverOneConnection() throws InterruptedException {
+        var recipients = List.of("first@mail.com", "second@mail.com", "third@mail.com");
+        // sent after the transaction commits
+        new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                recipients.forEach(to -> emailService.send(to, "subject", "<p>body</p>")));
+
+        var emails = waitFor(all -> all.stream()
+                .filter(email -> recipients.contains(email.getRecipient()))
+                .allMatch(email -> email.getStatus() == EmailOutboxModel.Status.SENT));
+        assertThat(emails).filteredOn(email -> recipients.contains(email.getRecipient()))
+                .hasSize(3)
+                .allSatisfy(email -> {
+                    assertThat(email.getSentAt()).isNotNull();
+                    assertThat(email.getAttempts()).isZero();
+                });
+        assertThat(smtp.connections).anySatisfy(sent -> assertThat(sent).containsAll(recipients));
+    }
+
+    @Test
+    @Order(2)
+    void retryAndDeadLetterRejectedEmail() throws InterruptedException {
+        emailService.send(SmtpStub.REJECTED, "subject", "<p>body</p>");
+
+        var emails = waitFor(all -> all.stream()
+                .anyMatch(email -> email.getRecipient().equals(SmtpStub.REJECTED) && email.getAttempts() > 0));
+        assertThat(emails).filteredOn(email -> email.getRecipient().equals(SmtpStub.REJECTED))
+                .singleElement()
+                .satisfies(email -> assertThat(email.getLastError()).isNotBlank());
+
+        // backoff is zero, so the next dispatch retries it
+        dispatcher.dispatch();
+        emails = waitFor(all -> all.stream()
+                .anyMatch(email -> email.getRecipient().equals(SmtpStub.REJECTED)
+                        && email.getStatus() == EmailOutboxModel.Status.DEAD));
+        assertThat(emails).filteredOn(email -> email.getRecipient().equals(SmtpStub.REJECTED))
+                .singleElement()
+                .satisfies(email -> assertThat(email.getAttempts()).isEqualTo(2));
+        assertThat(smtp.connections).noneSatisfy(sent -> assertThat(sent).contains(SmtpStub.REJECTED));
+    }
+
+    private List<EmailOutboxModel> waitFor(Predicate<List<EmailOutboxModel>> condition) throws InterruptedException {
+        var emails = repo.findAll();
+        for (int i = 0; i < 100 && !condition.test(emails); i++) {
+            Thread.sleep(100);
+            emails = repo.findAll();
+        }
+        return emails;
+    }
+
+    /**
+     * A minimal smtp server that accepts every recipient except {@link #REJECTED}, and keeps the recipients of
+     * accepted messages of each connection
+     */
+    private static final class SmtpStub implements Closeable {
+
+        static final String REJECTED = "rejected@mail.com";
+
+        private final ServerSocket server;
+        private final List<List<String>> connections = new CopyOnWriteArrayList<>();
+
+        private SmtpStub(ServerSocket server) {
+            this.server = server;
+        }
+
+        static SmtpStub start() {
+            try {
+                var stub = new SmtpStub(new ServerSocket(0));
+                var acceptor = new Thread(stub::accept, "smtp-stub");
+                acceptor.setDaemon(true);
+                acceptor.start();
+                return stub;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        int port() {
+            return server.getLocalPort();
+        }
+
+        private void accept() {
+            while (!server.isClosed()) {
+                try {
+                    var socket = server.accept();
+                    var handler = new Thread(() -> serve(socket), "smtp-stub-connection");
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void serve(Socket socket) {
+            var sent = new CopyOnWriteArrayList<String>();
+            connections.add(sent);
+            try (socket;
+                 var in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                 var out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+                reply(out, "220 stub");
+                var recipients = new ArrayList<String>();
+                String line;
+                while ((line = in.readLine()) != null) {
+                    var command = line.toUpperCase();
+                    if (command.startsWith("EHLO") || command.startsWith("HELO")) {
+                        reply(out, "250 stub");
+                    } else if (command.startsWith("MAIL FROM")) {
+                        recipients.clear();
+                        reply(out, "250 OK");
+                    } else if (command.startsWith("RCPT TO")) {
+                        var address = line.substring(line.indexOf('<') + 1, line.lastIndexOf('>'));
+                        if (address.equals(REJECTED)) {
+                            reply(out, "550 mailbox unavailable");
+                        } else {
+                            recipients.add(address);
+                            reply(out, "250 OK");
+                        }
+                    } else if (command.equals("DATA")) {
+                        reply(out, "354 end data with <CR><LF>.<CR><LF>");
+                        while ((line = in.readLine()) != null && !line.equals("."))
+                            ;
+                        sent.addAll(recipients);
+                        reply(out, "250 OK");
+                    } else if (command.equals("QUIT")) {
+                        reply(out, "221 bye");
+                        return;
+                    } else {
+                        reply(out, "250 OK");
+                    }
+                }
+            } catch (IOException ignored) {
+            }
+        }
+
+        private void reply(Writer out, String line) throws IOException {
+            out.write(line + "\r\n");
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package ir.darkdeveloper.anbarinoo.util.email;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EmailTemplatesTest {
+
+    private EmailTemplates templates;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        templates = new EmailTemplates(new PathMatchingResourcePatternResolver());
+    }
+
+    @Test
+    void rendersSegments() {
+        var template = EmailTemplate.compile("{{a}} and {{ b }}, {{a}}", false);
+        assertThat(template.render(Map.of("a", 1, "b", "two"))).isEqualTo("1 and two, 1");
+        assertThat(EmailTemplate.compile("no placeholders {{ }}", true).render(Map.of()))
+                .isEqualTo("no placeholders {{ }}");
+    }
+
+    @Test
+    void escapesValuesOfHtml() {
+        var values = Map.of("v", "<a href=\"x\">Tom & Jerry's</a>");
+        assertThat(EmailTemplate.compile("<p>{{v}}</p>", true).render(values))
+                .isEqualTo("<p>&lt;a href=&quot;x&quot;&gt;Tom &amp; Jerry&#39;s&lt;/a&gt;</p>");
+        assertThat(EmailTemplate.compile("{{v}}", false).render(values)).isEqualTo(values.get("v"));
+    }
+
+    @Test
+    void rendersVerificationEmail() {
+        var email = templates.render(EmailTemplateType.VERIFICATION, Locale.ENGLISH,
+                Map.of("name", "<user>", "link", "https://www.anbarinoo.ir/api/user/verify/?t=token"));
+        assertThat(email.subject()).isEqualTo("confirm email");
+        assertThat(email.body())
+                .startsWith("<div")
+                .contains("Hi &lt;user&gt;,")
+                .contains("<a href=\"https://www.anbarinoo.ir/api/user/verify/?t=token\">Activate Now</a>")
+                .doesNotContain("{{");
+    }
+
+    @Test
+    void rendersLocalizedVariants() {
+        var values = Map.of("name", "user", "link", "link");
+        var fa = templates.render(EmailTemplateType.VERIFICATION, Locale.forLanguageTag("fa-IR"), values);
+        assertThat(fa.subject()).isEqualTo("تایید ایمیل");
+        assertThat(fa.body()).contains("dir=\"rtl\"").contains("سلام user");
+        // no variant of the language, the default one is rendered
+        var de = templates.render(EmailTemplateType.VERIFICATION, Locale.GERMANY, values);
+        assertThat(de.subject()).isEqualTo("confirm email");
+    }
+
+    @Test
+    void rendersSubjectWithoutEscaping() {
+        var email = templates.render(EmailTemplateType.LOW_STOCK, Locale.ROOT,
+                Map.of("name", "user", "productName", "Salt & Pepper", "totalCount", 2));
+        assertThat(email.subject()).isEqualTo("Salt & Pepper is running low");
+        assertThat(email.body()).contains("Only 2 of Salt &amp; Pepper are left");
+    }
+
+    @Test
+    void removesLineBreaksOfSubjectValues() {
+        var email = templates.render(EmailTemplateType.LOW_STOCK, Locale.ROOT,
+                Map.of("name", "user\r\nBcc: x@mail.com", "productName", "Salt\r\nBcc: x@mail.com",
+                        "totalCount", 2));
+        assertThat(email.subject()).isEqualTo("Salt  Bcc: x@mail.com is running low");
+        // line breaks of the body are harmless
+        assertThat(email.body()).contains("user\r\nBcc: x@mail.com");
+    }
+
+    @Test
+    void rejectsMissingValues() {
+        assertThatThrownBy(() -> templates.render(EmailTemplateType.CHEQUE_DUE, Locale.ROOT, Map.of("name", "user")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("nameOf");
+    }
+}